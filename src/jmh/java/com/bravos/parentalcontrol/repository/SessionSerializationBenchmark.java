@@ -0,0 +1,97 @@
+package com.bravos.parentalcontrol.repository;
+
+import com.bravos.parentalcontrol.config.RedisConfig;
+import com.bravos.parentalcontrol.entity.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the values this service writes to Redis: a {@link Session} through the
+ * configured repository hash converter, and a block deadline through the JDK value serializer
+ * of the default {@code RedisTemplate}, the format older releases wrote.
+ * Nothing here opens a connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionSerializationBenchmark {
+  private MappingRedisConverter converter;
+  private RedisSerializer<Object> valueSerializer;
+  private Session session;
+  private RedisData sessionData;
+  private byte[] deadlineBytes;
+  private byte[] compactDeadlineBytes;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    RedisConfig redisConfig = new RedisConfig(new MockEnvironment());
+    converter = redisConfig.redisConverter(new RedisMappingContext(), null, new RedisCustomConversions());
+    converter.afterPropertiesSet();
+    RedisTemplate<?, ?> template = redisConfig.redisTemplate(new LettuceConnectionFactory());
+    template.afterPropertiesSet();
+    valueSerializer = (RedisSerializer<Object>) template.getValueSerializer();
+
+    long now = System.currentTimeMillis();
+    session = Session.builder()
+        .id("e0f3c2a4-5b8d-4c1e-9f7a-2d6b8e1c3a5f")
+        .deviceId("device-0001")
+        .deviceName("Living room tablet")
+        .ipAddress("192.168.1.20")
+        .nodeId("node-a")
+        .createdAt(now)
+        .lastActive(now)
+        .build();
+    sessionData = new RedisData();
+    converter.write(session, sessionData);
+    deadlineBytes = valueSerializer.serialize(now + 60_000L);
+    compactDeadlineBytes = RedisSerializer.string().serialize(Long.toString(now + 60_000L));
+  }
+
+  @Benchmark
+  public RedisData writeSession() {
+    RedisData data = new RedisData();
+    converter.write(session, data);
+    return data;
+  }
+
+  @Benchmark
+  public Session readSession() {
+    return converter.read(Session.class, sessionData);
+  }
+
+  @Benchmark
+  public byte[] serializeDeadline() {
+    return valueSerializer.serialize(System.currentTimeMillis());
+  }
+
+  @Benchmark
+  public Object deserializeDeadline() {
+    return valueSerializer.deserialize(deadlineBytes);
+  }
+
+  @Benchmark
+  public byte[] serializeDeadlineCompact() {
+    return RedisSerializer.string().serialize(Long.toString(System.currentTimeMillis()));
+  }
+
+  @Benchmark
+  public long deserializeDeadlineCompact() {
+    return Long.parseLong(RedisSerializer.string().deserialize(compactDeadlineBytes));
+  }
+}
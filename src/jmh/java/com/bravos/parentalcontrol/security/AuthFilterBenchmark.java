@@ -0,0 +1,64 @@
+package com.bravos.parentalcontrol.security;
+
+import com.bravos.parentalcontrol.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request authentication: a secret already in the verified-token cache, and a wrong secret,
+ * which is never cached and always pays for a full BCrypt check. The encoder comes from
+ * {@link AppConfig}, so the check runs at the production cost factor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthFilterBenchmark {
+  private static final String SECRET = "benchmark-secret";
+  private static final FilterChain NOOP_CHAIN = (request, response) -> {
+  };
+
+  private AuthFilter authFilter;
+
+  @Setup
+  public void setUp() throws ServletException, IOException {
+    PasswordEncoder passwordEncoder = new AppConfig().passwordEncoder();
+    MockEnvironment environment = new MockEnvironment()
+        .withProperty("PARENTAL_CONTROL_PASSWORD_HASH", passwordEncoder.encode(SECRET));
+    authFilter = new AuthFilter(passwordEncoder, new VerifiedTokenCache(environment, new SimpleMeterRegistry()),
+        environment);
+    authenticate(SECRET);
+  }
+
+  @Benchmark
+  public int cachedSecret() throws ServletException, IOException {
+    return authenticate(SECRET);
+  }
+
+  @Benchmark
+  public int wrongSecret() throws ServletException, IOException {
+    return authenticate("wrong-secret");
+  }
+
+  private int authenticate(String secret) throws ServletException, IOException {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/sessions");
+    request.addHeader("Authorization", secret);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    authFilter.doFilter(request, response, NOOP_CHAIN);
+    return response.getStatus();
+  }
+}
@@ -0,0 +1,25 @@
+package com.bravos.parentalcontrol.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading the wall clock through the helper, against the raw system call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DateTimeHelperBenchmark {
+  @Benchmark
+  public long currentTimeMillis() {
+    return DateTimeHelper.currentTimeMillis();
+  }
+
+  @Benchmark
+  public long systemCurrentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+}
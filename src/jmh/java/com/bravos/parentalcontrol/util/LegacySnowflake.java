@@ -0,0 +1,59 @@
+package com.bravos.parentalcontrol.util;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * The monitor-based generator that {@link Snowflake} replaced, including its allocating clock
+ * read, kept only as a benchmark baseline.
+ */
+final class LegacySnowflake {
+  private static final long SEQUENCE_BITS = 12;
+  private static final long TIME_STAMP_BITS = 41;
+  private static final long MACHINE_ID_SHIFT = SEQUENCE_BITS + TIME_STAMP_BITS;
+  private static final long TIMESTAMP_SHIFT = SEQUENCE_BITS;
+  private static final long EPOCH = LocalDateTime.of(2025, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+  private static final ZoneId DEFAULT_ZONE = ZoneId.systemDefault();
+  private final long machineId;
+  private long sequence = 0L;
+  private long lastTimestamp = -1L;
+
+  LegacySnowflake(long machineId) {
+    this.machineId = machineId;
+  }
+
+  private static long currentTimeMillis() {
+    return Instant.now().atZone(DEFAULT_ZONE).toInstant().toEpochMilli();
+  }
+
+  private long waitForNextMillis() {
+    long currentTimeMillis = currentTimeMillis();
+    while (currentTimeMillis <= lastTimestamp) {
+      currentTimeMillis = currentTimeMillis();
+    }
+    return currentTimeMillis;
+  }
+
+  synchronized long next() {
+    long currentTimestamp = currentTimeMillis();
+    if (currentTimestamp < lastTimestamp) {
+      throw new IllegalStateException("Clock moved backwards");
+    }
+    long timestamp = currentTimestamp - EPOCH;
+    if (currentTimestamp != lastTimestamp) {
+      sequence = 0L;
+      lastTimestamp = currentTimestamp;
+    } else if (sequence >= SEQUENCE_MASK) {
+      long nextMillis = waitForNextMillis();
+      timestamp = nextMillis - EPOCH;
+      sequence = 0L;
+      lastTimestamp = nextMillis;
+    } else {
+      ++sequence;
+    }
+    return (timestamp << TIMESTAMP_SHIFT) | (machineId << MACHINE_ID_SHIFT) | sequence;
+  }
+}
@@ -0,0 +1,57 @@
+package com.bravos.parentalcontrol.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id generation throughput with one caller and with callers contending for the generator,
+ * against the synchronized generator it replaced. Batch results count one operation per id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnowflakeBenchmark {
+  private static final int BATCH = 64;
+
+  private final Snowflake snowflake = new Snowflake(1);
+  private final LegacySnowflake legacy = new LegacySnowflake(1);
+
+  @Benchmark
+  @Threads(1)
+  public long nextUncontended() {
+    return snowflake.next();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long nextContended() {
+    return snowflake.next();
+  }
+
+  @Benchmark
+  @Threads(8)
+  @OperationsPerInvocation(BATCH)
+  public long nextBatchContended() {
+    return snowflake.nextBatch(BATCH);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public long legacyUncontended() {
+    return legacy.next();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public long legacyContended() {
+    return legacy.next();
+  }
+}
@@ -0,0 +1,188 @@
+package com.bravos.parentalcontrol.websocket;
+
+import com.bravos.parentalcontrol.service.AccessService;
+import com.bravos.parentalcontrol.service.AuditLog;
+import com.bravos.parentalcontrol.service.EnforcementScheduler;
+import com.bravos.parentalcontrol.service.SessionService;
+import com.bravos.parentalcontrol.service.UsageLedger;
+import com.bravos.parentalcontrol.websocket.handler.ControlHandler;
+import com.bravos.parentalcontrol.websocket.heartbeat.HeartbeatEngine;
+import com.bravos.parentalcontrol.websocket.interceptor.HandshakeAdmission;
+import com.bravos.parentalcontrol.websocket.protocol.BinaryProtocol;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Command dispatch in {@link ControlHandler#handleMessage} for the commands that do not touch
+ * Redis, over the text protocol and the binary sub-protocol. Replies go to a socket that discards
+ * them, so only parsing, dispatch, metrics and the reply path are measured. {@code PASSWORD} is
+ * left out because redemption is a Redis script.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ControlHandlerBenchmark {
+  @Param({"ping", "BLOCKED", "HELLO"})
+  public String command;
+
+  private ControlHandler handler;
+  private DiscardingSession textSession;
+  private DiscardingSession binarySession;
+  private TextMessage textMessage;
+  private BinaryMessage binaryMessage;
+
+  @Setup
+  public void setUp() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MockEnvironment environment = new MockEnvironment();
+    handler = new ControlHandler(
+        mock(SessionService.class),
+        mock(AccessService.class),
+        new HeartbeatEngine(environment, meterRegistry),
+        new WebSocketSessionManager(environment, meterRegistry),
+        mock(HandshakeAdmission.class),
+        mock(EnforcementScheduler.class),
+        mock(AuditLog.class),
+        mock(UsageLedger.class),
+        meterRegistry);
+    textSession = new DiscardingSession(null);
+    binarySession = new DiscardingSession(BinaryProtocol.SUBPROTOCOL);
+    textMessage = new TextMessage(command);
+    byte opcode = switch (command) {
+      case "ping" -> BinaryProtocol.PING;
+      case "BLOCKED" -> BinaryProtocol.BLOCKED;
+      default -> 0x7F;
+    };
+    binaryMessage = new BinaryMessage(ByteBuffer.wrap(new byte[]{opcode}));
+  }
+
+  @Benchmark
+  public void dispatchText(Blackhole blackhole) throws Exception {
+    handler.handleMessage(textSession, textMessage);
+    blackhole.consume(textSession.lastSent);
+  }
+
+  @Benchmark
+  public void dispatchBinary(Blackhole blackhole) throws Exception {
+    handler.handleMessage(binarySession, binaryMessage);
+    blackhole.consume(binarySession.lastSent);
+  }
+
+  private static final class DiscardingSession implements WebSocketSession {
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>(Map.of("deviceId", "bench-device"));
+    private final String protocol;
+    private WebSocketMessage<?> lastSent;
+
+    private DiscardingSession(String protocol) {
+      this.protocol = protocol;
+    }
+
+    @Override
+    public String getId() {
+      return "bench-session";
+    }
+
+    @Override
+    public URI getUri() {
+      return null;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+      return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+      return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+      return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+      return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+      return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+      return protocol;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+      return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+      return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+      return List.of();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+      lastSent = message;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+    }
+  }
+}
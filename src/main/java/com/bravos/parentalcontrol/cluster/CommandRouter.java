@@ -0,0 +1,220 @@
+package com.bravos.parentalcontrol.cluster;
+
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import com.bravos.parentalcontrol.service.UsageLedger;
+import com.bravos.parentalcontrol.util.DateTimeHelper;
+import com.bravos.parentalcontrol.websocket.WebSocketSessionManager;
+import com.bravos.parentalcontrol.websocket.protocol.ServerCommand;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Delivers commands to whichever node holds a session's socket. Sessions owned by this
+ * node are written directly; everything else is published on the owner's command channel.
+ * <p>
+ * Commands addressed to a device instead of a session are resolved and routed by one script
+ * on the device's slot, so the lookup and the publish cost a single round trip.
+ */
+@Slf4j
+@Component
+public class CommandRouter implements MessageListener {
+  private static final char SEND = 'S';
+  private static final char CLOSE = 'C';
+  private static final char SEPARATOR = '|';
+
+  /**
+   * KEYS[1] is the device pointer and KEYS[2], if present, a device-scoped key written only when
+   * the device has a session. ARGV: local node id, command text, then for KEYS[2] its value, TTL
+   * in milliseconds, and a channel on which the device id is announced after the write.
+   * Returns nil without a session or with a pointer that names no node, else
+   * {@code <receivers>|<sessionId>|<nodeId>} where receivers is -1 if the session is local and the
+   * command was not published.
+   */
+  private static final RedisScript<String> SEND_TO_DEVICE = RedisScript.of("""
+      local pointer = redis.call('GET', KEYS[1])
+      if not pointer then
+        return false
+      end
+      local separator = string.find(pointer, '%1$c', 1, true)
+      if not separator then
+        return false
+      end
+      local sessionId = string.sub(pointer, 1, separator - 1)
+      local nodeId = string.sub(pointer, separator + 1)
+      if KEYS[2] then
+        redis.call('SET', KEYS[2], ARGV[3], 'PX', ARGV[4])
+        redis.call('PUBLISH', ARGV[5], ARGV[6])
+      end
+      local receivers = -1
+      if nodeId ~= ARGV[1] then
+        receivers = redis.call('PUBLISH', '%2$s' .. nodeId .. '%3$s', '%4$c%5$c' .. sessionId .. '%5$c' .. ARGV[2])
+      end
+      return tostring(receivers) .. '%5$c' .. pointer
+      """.formatted(SessionIndexRepository.POINTER_SEPARATOR, NodeIdentity.CHANNEL_PREFIX,
+          NodeIdentity.CHANNEL_SUFFIX, SEND, SEPARATOR), String.class);
+
+  /**
+   * A device-scoped write applied together with a command, and only if the device has a session.
+   * @param key key in the device's slot
+   * @param value value to store
+   * @param ttlMillis expiry of the key
+   * @param channel channel on which the device id is published after the write
+   */
+  public record DeviceWrite(String key, String value, long ttlMillis, String channel) {
+  }
+
+  private final NodeIdentity nodeIdentity;
+  private final WebSocketSessionManager webSocketSessionManager;
+  private final UsageLedger usageLedger;
+  private final StringRedisTemplate stringRedisTemplate;
+  private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+
+  public CommandRouter(NodeIdentity nodeIdentity,
+                       WebSocketSessionManager webSocketSessionManager,
+                       UsageLedger usageLedger,
+                       StringRedisTemplate stringRedisTemplate,
+                       ReactiveStringRedisTemplate reactiveRedisTemplate,
+                       RedisMessageListenerContainer listenerContainer) {
+    this.nodeIdentity = nodeIdentity;
+    this.webSocketSessionManager = webSocketSessionManager;
+    this.usageLedger = usageLedger;
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.reactiveRedisTemplate = reactiveRedisTemplate;
+    listenerContainer.addMessageListener(this, new ChannelTopic(nodeIdentity.getCommandChannel()));
+  }
+
+  /**
+   * Send a command to the socket behind the session, wherever it lives. Routed commands
+   * travel in their text form and are encoded for the socket's protocol by the owning node.
+   * @param session session to deliver to
+   * @param command command to send
+   */
+  public void send(Session session, ServerCommand command) {
+    if (isLocal(session)) {
+      sendLocal(session.getId(), command);
+      return;
+    }
+    publish(session, SEND, command.toText());
+  }
+
+  /**
+   * Send a command to the current session of a device in one round trip, without blocking.
+   * @param deviceId device identifier
+   * @param command command to send
+   * @param write device-scoped write to apply if the device has a session, or null
+   * @return completes with true once the command is queued locally or published to the owning
+   * node, with false if the device has no session, or exceptionally with
+   * {@link IllegalStateException} if the owner cannot be reached. When a write was applied, an
+   * unreachable owner still completes with true: the write is stored, and the device picks it up
+   * when it reconnects.
+   */
+  public CompletableFuture<Boolean> sendToDevice(String deviceId, ServerCommand command, @Nullable DeviceWrite write) {
+    List<String> keys = new ArrayList<>(2);
+    keys.add(SessionIndexRepository.deviceKey(deviceId));
+    List<String> args = new ArrayList<>(6);
+    args.add(nodeIdentity.getId());
+    args.add(command.toText());
+    if (write != null) {
+      keys.add(write.key());
+      args.add(write.value());
+      args.add(Long.toString(write.ttlMillis()));
+      args.add(write.channel());
+      args.add(deviceId);
+    }
+    return reactiveRedisTemplate.execute(SEND_TO_DEVICE, keys, args)
+        .next()
+        .toFuture()
+        .thenApply(result -> result != null && deliver(result, command, write != null));
+  }
+
+  /**
+   * Close the socket behind the session, wherever it lives.
+   * @param session session to close
+   */
+  public void close(Session session) {
+    if (isLocal(session)) {
+      webSocketSessionManager.remove(session.getId());
+      return;
+    }
+    publish(session, CLOSE, "");
+  }
+
+  @Override
+  public void onMessage(@NonNull Message message, byte @Nullable [] pattern) {
+    String body = new String(message.getBody(), StandardCharsets.UTF_8);
+    int separator = body.indexOf(SEPARATOR, 2);
+    if (body.length() < 3 || body.charAt(1) != SEPARATOR || separator < 0) {
+      log.warn("Discarding malformed routed command: {}", body);
+      return;
+    }
+    String sessionId = body.substring(2, separator);
+    String payload = body.substring(separator + 1);
+    try {
+      switch (body.charAt(0)) {
+        case SEND -> sendLocal(sessionId, ServerCommand.parseText(payload));
+        case CLOSE -> webSocketSessionManager.remove(sessionId);
+        default -> log.warn("Discarding routed command of unknown type: {}", body.charAt(0));
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to deliver routed command to session {}: {}", sessionId, e.getMessage());
+    }
+  }
+
+  private boolean deliver(String result, ServerCommand command, boolean applied) {
+    int first = result.indexOf(SEPARATOR);
+    int second = result.indexOf(SEPARATOR, first + 1);
+    long receivers = Long.parseLong(result, 0, first, 10);
+    String sessionId = result.substring(first + 1, second);
+    if (receivers < 0) {
+      sendLocal(sessionId, command);
+    } else if (receivers == 0 && applied) {
+      log.info("Node {} owning session {} is not reachable, the device gets the command on reconnect",
+          result.substring(second + 1), sessionId);
+    } else if (receivers == 0) {
+      throw new IllegalStateException("Node " + result.substring(second + 1) + " owning session " +
+          sessionId + " is not reachable");
+    }
+    return true;
+  }
+
+  /**
+   * Queue a command for a socket held by this node. A grant puts a blocked session back on the
+   * usage clock.
+   */
+  private void sendLocal(String sessionId, ServerCommand command) {
+    webSocketSessionManager.sendMessage(sessionId, command);
+    if (command.getType() == ServerCommand.Type.GRANTED) {
+      usageLedger.unblock(sessionId, DateTimeHelper.currentTimeMillis());
+    }
+  }
+
+  private boolean isLocal(Session session) {
+    return session.getNodeId() == null
+        || nodeIdentity.isLocal(session.getNodeId())
+        || webSocketSessionManager.get(session.getId()) != null;
+  }
+
+  private void publish(Session session, char type, String payload) {
+    String body = type + String.valueOf(SEPARATOR) + session.getId() + SEPARATOR + payload;
+    Long receivers = stringRedisTemplate.convertAndSend(NodeIdentity.commandChannelOf(session.getNodeId()), body);
+    if (receivers == null || receivers == 0) {
+      throw new IllegalStateException("Node " + session.getNodeId() + " owning session " +
+          session.getId() + " is not reachable");
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.bravos.parentalcontrol.cluster;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Identity of this application instance within the cluster. Sessions record the node
+ * that owns their socket so other nodes can route commands to it.
+ */
+@Component
+public class NodeIdentity {
+  static final String CHANNEL_PREFIX = "node:";
+  static final String CHANNEL_SUFFIX = ":commands";
+
+  private final String id;
+
+  public NodeIdentity(Environment environment) {
+    String configured = environment.getProperty("NODE_ID");
+    this.id = (configured == null || configured.isBlank())
+        ? UUID.randomUUID().toString()
+        : configured.trim();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getCommandChannel() {
+    return commandChannelOf(id);
+  }
+
+  public boolean isLocal(String nodeId) {
+    return id.equals(nodeId);
+  }
+
+  public static String commandChannelOf(String nodeId) {
+    return CHANNEL_PREFIX + nodeId + CHANNEL_SUFFIX;
+  }
+
+  /**
+   * @param nodeId node identifier
+   * @return the key a running node keeps refreshed; its absence means the node is gone
+   */
+  public static String livenessKeyOf(String nodeId) {
+    return CHANNEL_PREFIX + nodeId + ":alive";
+  }
+}
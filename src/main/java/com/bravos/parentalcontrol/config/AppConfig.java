@@ -3,6 +3,7 @@ package com.bravos.parentalcontrol.config;
 import com.bravos.parentalcontrol.util.Snowflake;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
@@ -23,7 +24,10 @@ public class AppConfig {
   }
 
   @Bean
-  public Snowflake snowflake() {
-    return new Snowflake(1);
+  public Snowflake snowflake(Environment environment) {
+    return new Snowflake(
+        environment.getProperty("SNOWFLAKE_MACHINE_ID", Long.class, 1L),
+        Snowflake.DEFAULT_EPOCH,
+        environment.getProperty("SNOWFLAKE_CLOCK_TOLERANCE_MILLIS", Long.class, 10L));
   }
 }
@@ -1,33 +1,197 @@
 package com.bravos.parentalcontrol.config;
 
 import io.lettuce.core.ClientOptions;
-import io.lettuce.core.protocol.ProtocolVersion;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.metrics.MicrometerCommandLatencyRecorder;
+import io.lettuce.core.metrics.MicrometerOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisNode;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.DefaultRedisTypeMapper;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.convert.ReferenceResolver;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 @Configuration
 @EnableRedisRepositories("com.bravos.parentalcontrol.repository")
 public class RedisConfig {
-  @Bean
-  public RedisConnectionFactory connectionFactory() {
-    ClientOptions options = ClientOptions.builder()
-        .protocolVersion(ProtocolVersion.RESP2)
-        .pingBeforeActivateConnection(true)
+  /**
+   * Name of the {@link StringRedisTemplate} for read-only queries that may be served by replicas.
+   */
+  public static final String REPLICA_TEMPLATE = "replicaRedisTemplate";
+
+  public enum Mode { STANDALONE, SENTINEL, CLUSTER }
+
+  private final Environment environment;
+
+  public RedisConfig(Environment environment) {
+    this.environment = environment;
+  }
+
+  /**
+   * Lettuce resources that record per-command latency histograms into Micrometer.
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ClientResources lettuceClientResources(MeterRegistry meterRegistry) {
+    MicrometerOptions options = MicrometerOptions.builder()
+        .histogram(true)
         .build();
-    LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
-        .clientOptions(options)
+    return ClientResources.builder()
+        .commandLatencyRecorder(new MicrometerCommandLatencyRecorder(meterRegistry, options))
         .build();
-    RedisStandaloneConfiguration redisConfig = new RedisStandaloneConfiguration();
-    redisConfig.setHostName(System.getenv("REDIS_HOST"));
-    redisConfig.setPort(Integer.parseInt(System.getenv("REDIS_PORT")));
-    redisConfig.setPassword(System.getenv("REDIS_PASSWORD"));
-    return new LettuceConnectionFactory(redisConfig, clientConfiguration);
+  }
+
+  /**
+   * Connection factory for everything that writes or needs to read its own writes. It always
+   * talks to the primary of the topology selected by REDIS_MODE.
+   */
+  @Bean
+  @Primary
+  public LettuceConnectionFactory connectionFactory(ClientResources clientResources) {
+    return new LettuceConnectionFactory(topology(false), clientConfiguration(clientResources, null));
+  }
+
+  /**
+   * Connection factory for read-only queries that tolerate replication lag, reading from the
+   * nodes selected by REDIS_READ_FROM. With the default {@code upstream} it reads from the
+   * primary over its own connection. Not a default candidate, so it is only injected by name.
+   */
+  @Bean(defaultCandidate = false)
+  public LettuceConnectionFactory replicaConnectionFactory(ClientResources clientResources) {
+    ReadFrom readFrom = ReadFrom.valueOf(environment.getProperty("REDIS_READ_FROM", "upstream"));
+    return new LettuceConnectionFactory(topology(true), clientConfiguration(clientResources, readFrom));
+  }
+
+  @Bean(name = REPLICA_TEMPLATE, defaultCandidate = false)
+  public StringRedisTemplate replicaRedisTemplate(
+      @Qualifier("replicaConnectionFactory") RedisConnectionFactory replicaConnectionFactory) {
+    return new StringRedisTemplate(replicaConnectionFactory);
+  }
+
+  private LettuceClientConfiguration clientConfiguration(ClientResources clientResources, ReadFrom readFrom) {
+    ClientOptions options = mode() == Mode.CLUSTER
+        ? ClusterClientOptions.builder()
+            .pingBeforeActivateConnection(true)
+            .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                .enableAllAdaptiveRefreshTriggers()
+                .enablePeriodicRefresh(Duration.ofSeconds(
+                    environment.getProperty("REDIS_CLUSTER_REFRESH_SECONDS", Long.class, 60L)))
+                .build())
+            .build()
+        : ClientOptions.builder()
+            .pingBeforeActivateConnection(true)
+            .build();
+    LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder builder =
+        LettucePoolingClientConfiguration.builder()
+            .poolConfig(poolConfig())
+            .clientOptions(options)
+            .clientResources(clientResources);
+    if (readFrom != null) {
+      builder.readFrom(readFrom);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Pool of dedicated connections. Single commands share one multiplexed connection; pipelines,
+   * transactions and blocking commands borrow a connection from here instead of opening one.
+   */
+  private GenericObjectPoolConfig<?> poolConfig() {
+    GenericObjectPoolConfig<?> pool = new GenericObjectPoolConfig<>();
+    int maxActive = environment.getProperty("REDIS_POOL_MAX_ACTIVE", Integer.class, 16);
+    pool.setMaxTotal(maxActive);
+    pool.setMaxIdle(maxActive);
+    pool.setMinIdle(environment.getProperty("REDIS_POOL_MIN_IDLE", Integer.class, 2));
+    pool.setMaxWait(Duration.ofMillis(environment.getProperty("REDIS_POOL_MAX_WAIT_MILLIS", Long.class, 2000L)));
+    return pool;
+  }
+
+  /**
+   * Build the server configuration for REDIS_MODE.
+   * @param replicaReads true for the replica factory; a standalone primary then also lists the
+   *                     replicas from REDIS_REPLICA_NODES so reads can be routed to them
+   */
+  private RedisConfiguration topology(boolean replicaReads) {
+    String password = environment.getProperty("REDIS_PASSWORD");
+    return switch (mode()) {
+      case SENTINEL -> {
+        RedisSentinelConfiguration sentinel = new RedisSentinelConfiguration();
+        sentinel.setMaster(environment.getRequiredProperty("REDIS_SENTINEL_MASTER"));
+        sentinel.setSentinels(nodes("REDIS_SENTINEL_NODES"));
+        sentinel.setPassword(password);
+        sentinel.setSentinelPassword(environment.getProperty("REDIS_SENTINEL_PASSWORD"));
+        yield sentinel;
+      }
+      case CLUSTER -> {
+        RedisClusterConfiguration cluster = new RedisClusterConfiguration();
+        cluster.setClusterNodes(nodes("REDIS_CLUSTER_NODES"));
+        cluster.setMaxRedirects(environment.getProperty("REDIS_CLUSTER_MAX_REDIRECTS", Integer.class, 3));
+        cluster.setPassword(password);
+        yield cluster;
+      }
+      case STANDALONE -> {
+        String host = environment.getProperty("REDIS_HOST");
+        int port = Integer.parseInt(environment.getProperty("REDIS_PORT", "6379"));
+        List<RedisNode> replicas = nodes("REDIS_REPLICA_NODES");
+        if (replicaReads && !replicas.isEmpty()) {
+          RedisStaticMasterReplicaConfiguration masterReplica = new RedisStaticMasterReplicaConfiguration(host, port);
+          replicas.forEach(replica -> masterReplica.addNode(replica.getHost(), replica.getPort()));
+          masterReplica.setPassword(password);
+          yield masterReplica;
+        }
+        RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration();
+        standalone.setHostName(host);
+        standalone.setPort(port);
+        standalone.setPassword(password);
+        yield standalone;
+      }
+    };
+  }
+
+  private Mode mode() {
+    return Mode.valueOf(environment.getProperty("REDIS_MODE", "STANDALONE").toUpperCase(Locale.ROOT));
+  }
+
+  private List<RedisNode> nodes(String property) {
+    List<RedisNode> nodes = new ArrayList<>();
+    for (String node : environment.getProperty(property, "").split(",")) {
+      if (!node.isBlank()) {
+        nodes.add(RedisNode.fromString(node.strip()));
+      }
+    }
+    if (nodes.isEmpty() && !property.equals("REDIS_REPLICA_NODES")) {
+      throw new IllegalStateException(property + " must list at least one host:port");
+    }
+    return nodes;
   }
 
   @Bean
@@ -36,4 +200,37 @@ public class RedisConfig {
     template.setConnectionFactory(redisConnectionFactory);
     return template;
   }
+
+  /**
+   * Non-blocking template over the primary connection, for request paths that must not hold a
+   * thread while Redis answers. Commands issued back to back are written without waiting for
+   * each other's replies, so independent writes cost one round trip together.
+   */
+  @Bean
+  public ReactiveStringRedisTemplate reactiveStringRedisTemplate(
+      ReactiveRedisConnectionFactory reactiveRedisConnectionFactory) {
+    return new ReactiveStringRedisTemplate(reactiveRedisConnectionFactory);
+  }
+
+  /**
+   * Hash converter for the Redis repositories that leaves out the {@code _class} type field.
+   * Every entity is read back as its declared type, so the field only cost memory per hash.
+   * Replaces the converter the repository support would otherwise register under this name.
+   */
+  @Bean
+  public MappingRedisConverter redisConverter(RedisMappingContext keyValueMappingContext,
+                                              ReferenceResolver redisReferenceResolver,
+                                              RedisCustomConversions redisCustomConversions) {
+    MappingRedisConverter converter = new MappingRedisConverter(keyValueMappingContext, null,
+        redisReferenceResolver, new DefaultRedisTypeMapper(null, keyValueMappingContext));
+    converter.setCustomConversions(redisCustomConversions);
+    return converter;
+  }
+
+  @Bean
+  public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(redisConnectionFactory);
+    return container;
+  }
 }
@@ -2,6 +2,7 @@ package com.bravos.parentalcontrol.config;
 
 import com.bravos.parentalcontrol.security.AuthFilter;
 import com.bravos.parentalcontrol.security.BenchmarkFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -24,6 +25,7 @@ public class SecurityConfig {
   @Bean
   public SecurityFilterChain securityFilterChain(HttpSecurity http, AuthFilter authFilter, BenchmarkFilter benchmarkFilter) {
     http.authorizeHttpRequests((requests) -> requests
+        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
         .requestMatchers("/ws/**").permitAll()
         .anyRequest().authenticated());
     http.csrf(CsrfConfigurer::disable);
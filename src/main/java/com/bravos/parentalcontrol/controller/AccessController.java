@@ -5,6 +5,12 @@ import com.bravos.parentalcontrol.dto.response.ApiResponse;
 import com.bravos.parentalcontrol.service.AccessService;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Access endpoints. Each one returns as soon as its Redis work is issued; the response is
+ * written when that work completes, so no request thread waits on Redis or a socket.
+ */
 @RestController
 @RequestMapping("/access")
 public class AccessController {
@@ -15,31 +21,40 @@ public class AccessController {
   }
 
   @PostMapping("/generate-code")
-  public ApiResponse<String> grantAccess(@RequestBody TimeRequest request) {
-    String code = accessService.generateAccessCode(request.getDeviceId(), request.getSeconds());
-    return ApiResponse.ok("Access granted", code);
+  public CompletableFuture<ApiResponse<String>> grantAccess(@RequestBody TimeRequest request) {
+    return accessService.generateAccessCodeAsync(request.getDeviceId(), request.getSeconds())
+        .thenApply(code -> ApiResponse.ok("Access granted", code));
   }
 
   @PostMapping("/grant")
-  public ApiResponse<Void> grantAccessDirect(@RequestBody TimeRequest request) {
-    accessService.grantAccess(request.getDeviceId(), request.getSeconds());
-    return ApiResponse.ok("Access granted for " + request.getSeconds() + " seconds");
+  public CompletableFuture<ApiResponse<Void>> grantAccessDirect(@RequestBody TimeRequest request) {
+    int seconds = requireSeconds(request);
+    return accessService.grantAccessAsync(request.getDeviceId(), seconds)
+        .thenApply(ignored -> ApiResponse.ok("Access granted for " + seconds + " seconds"));
   }
 
   @PostMapping("/block")
-  public ApiResponse<Void> blockAfterTime(@RequestBody TimeRequest request) {
-    accessService.blockAfterTime(request.getDeviceId(), request.getSeconds());
-    return ApiResponse.ok("Device will be blocked after " + request.getSeconds() + " seconds");
+  public CompletableFuture<ApiResponse<Void>> blockAfterTime(@RequestBody TimeRequest request) {
+    int seconds = requireSeconds(request);
+    return accessService.blockAfterTimeAsync(request.getDeviceId(), seconds)
+        .thenApply(ignored -> ApiResponse.ok("Device will be blocked after " + seconds + " seconds"));
   }
 
   @GetMapping("/block-time/{deviceId}")
-  public ApiResponse<Long> getRemainingBlockTime(@PathVariable String deviceId) {
-    Long seconds = accessService.getRemainingBlockTime(deviceId);
-    if (seconds != null) {
-      return ApiResponse.ok("Remaining block time", seconds);
-    } else {
-      return ApiResponse.ok("Device is not currently blocked", null);
-    }
+  public CompletableFuture<ApiResponse<Long>> getRemainingBlockTime(@PathVariable String deviceId) {
+    return accessService.getRemainingBlockTimeAsync(deviceId).thenApply(seconds -> seconds != null
+        ? ApiResponse.ok("Remaining block time", seconds)
+        : ApiResponse.<Long>ok("Device is not currently blocked", null));
   }
 
+  /**
+   * Reject a missing or non-positive duration before any Redis work is issued.
+   */
+  private static int requireSeconds(TimeRequest request) {
+    Integer seconds = request == null ? null : request.getSeconds();
+    if (seconds == null || seconds <= 0) {
+      throw new IllegalArgumentException("seconds must be a positive number");
+    }
+    return seconds;
+  }
 }
@@ -0,0 +1,25 @@
+package com.bravos.parentalcontrol.controller;
+
+import com.bravos.parentalcontrol.dto.response.ApiResponse;
+import com.bravos.parentalcontrol.dto.response.AuditPage;
+import com.bravos.parentalcontrol.service.AuditLog;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/audit")
+public class AuditController {
+  private final AuditLog auditLog;
+
+  public AuditController(AuditLog auditLog) {
+    this.auditLog = auditLog;
+  }
+
+  @GetMapping("/{deviceId}")
+  public ApiResponse<AuditPage> listEvents(@PathVariable String deviceId,
+                                           @RequestParam(required = false) Long from,
+                                           @RequestParam(required = false) Long to,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "100") int limit) {
+    return ApiResponse.ok(auditLog.getEvents(deviceId, from, to, cursor, limit));
+  }
+}
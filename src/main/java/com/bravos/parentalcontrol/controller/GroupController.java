@@ -0,0 +1,78 @@
+package com.bravos.parentalcontrol.controller;
+
+import com.bravos.parentalcontrol.dto.request.GroupMembersRequest;
+import com.bravos.parentalcontrol.dto.request.GroupTimeRequest;
+import com.bravos.parentalcontrol.dto.response.ApiResponse;
+import com.bravos.parentalcontrol.dto.response.DeviceDelivery;
+import com.bravos.parentalcontrol.service.AccessService;
+import com.bravos.parentalcontrol.service.GroupService;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/groups")
+public class GroupController {
+  private final GroupService groupService;
+  private final AccessService accessService;
+
+  public GroupController(GroupService groupService, AccessService accessService) {
+    this.groupService = groupService;
+    this.accessService = accessService;
+  }
+
+  @GetMapping
+  public ApiResponse<List<String>> listGroups() {
+    return ApiResponse.ok(groupService.getGroups());
+  }
+
+  @GetMapping("/{groupId}")
+  public ApiResponse<List<String>> listDevices(@PathVariable String groupId) {
+    return ApiResponse.ok(groupService.getDevices(groupId));
+  }
+
+  @PostMapping("/{groupId}/devices")
+  public ApiResponse<Long> addDevices(@PathVariable String groupId, @RequestBody GroupMembersRequest request) {
+    long added = groupService.addDevices(groupId, request.getDeviceIds());
+    return ApiResponse.ok("Devices added to group", added);
+  }
+
+  @DeleteMapping("/{groupId}/devices/{deviceId}")
+  public ApiResponse<Void> removeDevice(@PathVariable String groupId, @PathVariable String deviceId) {
+    groupService.removeDevice(groupId, deviceId);
+    return ApiResponse.ok("Device removed from group");
+  }
+
+  @DeleteMapping("/{groupId}")
+  public ApiResponse<Void> deleteGroup(@PathVariable String groupId) {
+    groupService.deleteGroup(groupId);
+    return ApiResponse.ok("Group deleted successfully");
+  }
+
+  @PostMapping("/{groupId}/grant")
+  public ApiResponse<List<DeviceDelivery>> grantGroup(@PathVariable String groupId,
+                                                      @RequestBody GroupTimeRequest request) {
+    int seconds = requireSeconds(request);
+    List<DeviceDelivery> deliveries = accessService.grantGroup(groupId, seconds);
+    return ApiResponse.ok("Access granted for " + seconds + " seconds", deliveries);
+  }
+
+  @PostMapping("/{groupId}/block")
+  public ApiResponse<List<DeviceDelivery>> blockGroup(@PathVariable String groupId,
+                                                      @RequestBody GroupTimeRequest request) {
+    int seconds = requireSeconds(request);
+    List<DeviceDelivery> deliveries = accessService.blockGroup(groupId, seconds);
+    return ApiResponse.ok("Devices will be blocked after " + seconds + " seconds", deliveries);
+  }
+
+  /**
+   * Reject a missing or non-positive duration before it fans out to a whole group.
+   */
+  private static int requireSeconds(GroupTimeRequest request) {
+    Integer seconds = request == null ? null : request.getSeconds();
+    if (seconds == null || seconds <= 0) {
+      throw new IllegalArgumentException("seconds must be a positive number");
+    }
+    return seconds;
+  }
+}
@@ -1,24 +1,56 @@
 package com.bravos.parentalcontrol.controller;
 
 import com.bravos.parentalcontrol.dto.response.ApiResponse;
+import com.bravos.parentalcontrol.dto.response.BulkDeleteResult;
+import com.bravos.parentalcontrol.dto.response.SessionPage;
 import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.service.SessionFeed;
 import com.bravos.parentalcontrol.service.SessionService;
+import lombok.NonNull;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.json.JsonMapper;
 
-import java.util.List;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 @RestController
 @RequestMapping("/sessions")
 public class SessionController {
+  private static final int STREAM_PAGE_SIZE = 200;
+
   private final SessionService sessionService;
+  private final SessionFeed sessionFeed;
+  private final JsonMapper jsonMapper;
 
-  public SessionController(SessionService sessionService) {
+  public SessionController(SessionService sessionService, SessionFeed sessionFeed, JsonMapper jsonMapper) {
     this.sessionService = sessionService;
+    this.sessionFeed = sessionFeed;
+    this.jsonMapper = jsonMapper;
   }
 
   @GetMapping
-  public ApiResponse<List<Session>> listDevices() {
-    return ApiResponse.ok(sessionService.getAllSessions());
+  public ResponseEntity<@NonNull StreamingResponseBody> listDevices() {
+    StreamingResponseBody body = out ->
+        jsonMapper.writeValue(StreamUtils.nonClosing(out), ApiResponse.ok(new SessionCursor()));
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(body);
+  }
+
+  @GetMapping(params = "limit")
+  public ApiResponse<SessionPage> listDevicesPage(@RequestParam int limit,
+                                                  @RequestParam(required = false) String cursor) {
+    return ApiResponse.ok(sessionService.getSessionsPage(cursor, limit));
+  }
+
+  @GetMapping(path = "/feed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter feed() {
+    return sessionFeed.subscribe();
   }
 
   @DeleteMapping("/{id}")
@@ -28,8 +60,37 @@ public class SessionController {
   }
 
   @DeleteMapping
-  public ApiResponse<Void> deleteAllSessions() {
-    sessionService.deleteAllSessions();
-    return ApiResponse.ok("All sessions deleted successfully");
+  public ApiResponse<BulkDeleteResult> deleteAllSessions() {
+    BulkDeleteResult result = sessionService.deleteAllSessions();
+    return ApiResponse.ok("All sessions deleted successfully", result);
+  }
+
+  /**
+   * All sessions, read one page at a time as the serializer advances, so the full list is never
+   * held in memory.
+   */
+  private final class SessionCursor implements Iterator<Session> {
+    private SessionPage page;
+    private int position;
+
+    @Override
+    public boolean hasNext() {
+      if (page == null) {
+        page = sessionService.getSessionsPage(null, STREAM_PAGE_SIZE);
+      }
+      while (position == page.getItems().size() && page.getNextCursor() != null) {
+        page = sessionService.getSessionsPage(page.getNextCursor(), STREAM_PAGE_SIZE);
+        position = 0;
+      }
+      return position < page.getItems().size();
+    }
+
+    @Override
+    public Session next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return page.getItems().get(position++);
+    }
   }
 }
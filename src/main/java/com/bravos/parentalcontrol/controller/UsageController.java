@@ -0,0 +1,25 @@
+package com.bravos.parentalcontrol.controller;
+
+import com.bravos.parentalcontrol.dto.response.ApiResponse;
+import com.bravos.parentalcontrol.dto.response.DeviceUsage;
+import com.bravos.parentalcontrol.service.UsageLedger;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/usage")
+public class UsageController {
+  private final UsageLedger usageLedger;
+
+  public UsageController(UsageLedger usageLedger) {
+    this.usageLedger = usageLedger;
+  }
+
+  @GetMapping
+  public ApiResponse<List<DeviceUsage>> getUsage(@RequestParam List<String> deviceId,
+                                                 @RequestParam(defaultValue = "DAY") String period,
+                                                 @RequestParam(required = false) String date) {
+    return ApiResponse.ok(usageLedger.getUsage(deviceId, period, date));
+  }
+}
@@ -0,0 +1,16 @@
+package com.bravos.parentalcontrol.dto.request;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = PRIVATE)
+public class GroupTimeRequest {
+  Integer seconds;
+}
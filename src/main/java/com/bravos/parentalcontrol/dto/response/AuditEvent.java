@@ -0,0 +1,33 @@
+package com.bravos.parentalcontrol.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = PRIVATE)
+public class AuditEvent {
+  String id;
+  Type type;
+  String deviceId;
+  String sessionId;
+  String nodeId;
+  String detail;
+  long at;
+
+  public enum Type {
+    GRANT,
+    BLOCK,
+    CODE_GENERATED,
+    CODE_REDEEMED,
+    CODE_REJECTED,
+    CONNECT,
+    DISCONNECT,
+    SESSION_DELETED
+  }
+}
@@ -0,0 +1,19 @@
+package com.bravos.parentalcontrol.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = PRIVATE)
+public class AuditPage {
+  List<AuditEvent> items;
+  String nextCursor;
+}
@@ -0,0 +1,21 @@
+package com.bravos.parentalcontrol.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = PRIVATE)
+public class BulkDeleteResult {
+  int removed;
+  int failed;
+
+  public BulkDeleteResult plus(BulkDeleteResult other) {
+    return new BulkDeleteResult(removed + other.removed, failed + other.failed);
+  }
+}
@@ -0,0 +1,24 @@
+package com.bravos.parentalcontrol.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = PRIVATE)
+public class DeviceDelivery {
+  String deviceId;
+  Status status;
+  String error;
+
+  public enum Status {
+    DELIVERED,
+    NO_SESSION,
+    FAILED
+  }
+}
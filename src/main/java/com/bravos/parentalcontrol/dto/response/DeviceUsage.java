@@ -0,0 +1,20 @@
+package com.bravos.parentalcontrol.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = PRIVATE)
+public class DeviceUsage {
+  String deviceId;
+  String from;
+  String to;
+  long activeMinutes;
+  long grantedMinutes;
+}
@@ -0,0 +1,30 @@
+package com.bravos.parentalcontrol.dto.response;
+
+import com.bravos.parentalcontrol.entity.Session;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@FieldDefaults(level = PRIVATE)
+public class SessionDelta {
+  Type type;
+  String sessionId;
+  String deviceId;
+  Session session;
+  Long lastActive;
+  Integer seconds;
+
+  public enum Type {
+    CREATED,
+    CLOSED,
+    LAST_ACTIVE,
+    GRANTED,
+    BLOCKED
+  }
+}
@@ -0,0 +1,20 @@
+package com.bravos.parentalcontrol.dto.response;
+
+import com.bravos.parentalcontrol.entity.Session;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+import static lombok.AccessLevel.PRIVATE;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = PRIVATE)
+public class SessionPage {
+  List<Session> items;
+  String nextCursor;
+}
@@ -22,6 +22,7 @@ public class Session {
   @Indexed
   String deviceId;
   String ipAddress;
+  String nodeId;
   Long createdAt;
   Long lastActive;
 }
@@ -0,0 +1,173 @@
+package com.bravos.parentalcontrol.repository;
+
+import com.bravos.parentalcontrol.config.RedisConfig;
+import com.bravos.parentalcontrol.dto.response.AuditEvent;
+import com.bravos.parentalcontrol.dto.response.AuditPage;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Audit events in one Redis Stream per device, {@code audit:{<deviceId>}}, with ids taken from
+ * each event's {@code at} rather than the time of the write, so a time range maps onto XRANGE
+ * bounds and an id doubles as a paging cursor. An event older than the stream's newest entry takes
+ * that entry's time with the next sequence number, since stream ids only ever grow. Streams are
+ * trimmed to about AUDIT_MAX_LENGTH entries as they are written.
+ * <p>
+ * Queries read from the replica template and may trail a write by the replication lag.
+ */
+@Repository
+public class AuditRepository {
+  private static final RedisScript<String> APPEND = RedisScript.of("""
+      local ms = tonumber(ARGV[1])
+      local seq = 0
+      local newest = redis.call('XREVRANGE', KEYS[1], '+', '-', 'COUNT', 1)[1]
+      if newest then
+        local separator = string.find(newest[1], '-', 1, true)
+        local newestMs = tonumber(string.sub(newest[1], 1, separator - 1))
+        if newestMs >= ms then
+          ms = newestMs
+          seq = tonumber(string.sub(newest[1], separator + 1)) + 1
+        end
+      end
+      local id = string.format('%d-%d', ms, seq)
+      if tonumber(ARGV[2]) > 0 then
+        return redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[2], id, unpack(ARGV, 3))
+      end
+      return redis.call('XADD', KEYS[1], id, unpack(ARGV, 3))
+      """, String.class);
+  private static final String KEY_PREFIX = "audit:";
+  private static final String TYPE = "type";
+  private static final String SESSION = "session";
+  private static final String NODE = "node";
+  private static final String DETAIL = "detail";
+  private static final String AT = "at";
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final StringRedisTemplate replicaRedisTemplate;
+  private final byte[] maxLength;
+  private volatile boolean scriptLoaded;
+
+  public AuditRepository(StringRedisTemplate stringRedisTemplate,
+                         @Qualifier(RedisConfig.REPLICA_TEMPLATE) StringRedisTemplate replicaRedisTemplate,
+                         Environment environment) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.replicaRedisTemplate = replicaRedisTemplate;
+    this.maxLength = Long.toString(environment.getProperty("AUDIT_MAX_LENGTH", Long.class, 10_000L))
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Append events in one round trip, one script call each. The script is sent once with SCRIPT
+   * LOAD and then called by its SHA.
+   * @param events events to append, in order
+   */
+  public void appendAll(List<AuditEvent> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+    try {
+      loadScript();
+      String sha = APPEND.getSha1();
+      stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        for (AuditEvent event : events) {
+          connection.scriptingCommands().evalSha(sha, ReturnType.VALUE, 1, keysAndArgs(event));
+        }
+        return null;
+      });
+    } catch (RuntimeException e) {
+      scriptLoaded = false;
+      throw e;
+    }
+  }
+
+  /**
+   * Read one page of a device's events, oldest first.
+   * @param deviceId device identifier
+   * @param from start of the range in epoch milliseconds, inclusive
+   * @param to end of the range in epoch milliseconds, inclusive
+   * @param cursor id of the first event of the page, or null to start at {@code from}
+   * @param limit page size
+   * @return the page, with the id of the next event as cursor if there are more
+   */
+  public AuditPage findPage(String deviceId, long from, long to, String cursor, int limit) {
+    String start = cursor != null ? cursor : Long.toString(from);
+    List<MapRecord<String, Object, Object>> records = replicaRedisTemplate.opsForStream()
+        .range(key(deviceId), Range.closed(start, Long.toString(to)), Limit.limit().count(limit + 1));
+    List<AuditEvent> items = new ArrayList<>(Math.min(records.size(), limit));
+    String nextCursor = null;
+    for (MapRecord<String, Object, Object> record : records) {
+      if (items.size() == limit) {
+        nextCursor = record.getId().getValue();
+        break;
+      }
+      items.add(toEvent(deviceId, record));
+    }
+    return new AuditPage(items, nextCursor);
+  }
+
+  /**
+   * @param deviceId device identifier
+   * @return the stream holding the device's audit events
+   */
+  public static String key(String deviceId) {
+    return KEY_PREFIX + "{" + deviceId + "}";
+  }
+
+  private void loadScript() {
+    if (!scriptLoaded) {
+      stringRedisTemplate.execute((RedisCallback<String>) connection ->
+          connection.scriptingCommands().scriptLoad(APPEND.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+      scriptLoaded = true;
+    }
+  }
+
+  /**
+   * The stream key, then the event time, the trimming length and the event's field-value pairs.
+   */
+  private byte[][] keysAndArgs(AuditEvent event) {
+    List<byte[]> keysAndArgs = new ArrayList<>(13);
+    keysAndArgs.add(key(event.getDeviceId()).getBytes(StandardCharsets.UTF_8));
+    keysAndArgs.add(Long.toString(event.getAt()).getBytes(StandardCharsets.UTF_8));
+    keysAndArgs.add(maxLength);
+    put(keysAndArgs, TYPE, event.getType().name());
+    put(keysAndArgs, SESSION, event.getSessionId());
+    put(keysAndArgs, NODE, event.getNodeId());
+    put(keysAndArgs, DETAIL, event.getDetail());
+    put(keysAndArgs, AT, Long.toString(event.getAt()));
+    return keysAndArgs.toArray(new byte[0][]);
+  }
+
+  private static void put(List<byte[]> keysAndArgs, String field, String value) {
+    if (value != null) {
+      keysAndArgs.add(field.getBytes(StandardCharsets.UTF_8));
+      keysAndArgs.add(value.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static AuditEvent toEvent(String deviceId, MapRecord<String, Object, Object> record) {
+    Map<Object, Object> fields = record.getValue();
+    Object at = fields.get(AT);
+    return AuditEvent.builder()
+        .id(record.getId().getValue())
+        .type(AuditEvent.Type.valueOf((String) fields.get(TYPE)))
+        .deviceId(deviceId)
+        .sessionId((String) fields.get(SESSION))
+        .nodeId((String) fields.get(NODE))
+        .detail((String) fields.get(DETAIL))
+        .at(at != null ? Long.parseLong((String) at) : record.getId().getTimestamp())
+        .build();
+  }
+}
@@ -0,0 +1,165 @@
+package com.bravos.parentalcontrol.repository;
+
+import com.bravos.parentalcontrol.util.DateTimeHelper;
+import org.jspecify.annotations.Nullable;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Repository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Block deadlines under {@code block_device:{<deviceId>}}, stored as decimal integers that Redis
+ * keeps in its integer encoding and Lua scripts read with {@code tonumber}.
+ * <p>
+ * Lookups read from the primary: a block decides whether a device keeps access, and the near
+ * cache would hold on to a miss read from a lagging replica.
+ * <p>
+ * Older releases wrote JDK-serialized keys and values; {@link #migrateLegacy} moves those to the
+ * current format. The old encoding of a String key and a Long value is fixed, so it is decoded by
+ * hand and nothing read from Redis is ever deserialized.
+ */
+@Repository
+public class BlockDeadlineRepository {
+  private static final String KEY_PREFIX = "block_device:";
+  private static final byte[] JDK_STREAM_HEADER = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+  private static final byte TC_STRING = 0x74;
+  private static final byte[] JDK_LONG_PREFIX = concat(JDK_STREAM_HEADER,
+      new byte[]{0x73, 0x72, 0x00, 0x0E}, "java.lang.Long".getBytes(StandardCharsets.US_ASCII));
+  private static final byte[] LEGACY_KEY_PATTERN = concat(JDK_STREAM_HEADER,
+      new byte[]{TC_STRING, '?', '?'}, (KEY_PREFIX + "*").getBytes(StandardCharsets.US_ASCII));
+
+  private final StringRedisTemplate stringRedisTemplate;
+
+  public BlockDeadlineRepository(StringRedisTemplate stringRedisTemplate) {
+    this.stringRedisTemplate = stringRedisTemplate;
+  }
+
+  /**
+   * Store the same deadline for several devices in one round trip.
+   */
+  public void saveAll(Collection<String> deviceIds, long deadline, Duration ttl) {
+    if (deviceIds.isEmpty()) {
+      return;
+    }
+    String value = Long.toString(deadline);
+    stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <K, V> Object execute(RedisOperations<K, V> operations) {
+        RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+        for (String deviceId : deviceIds) {
+          ops.opsForValue().set(key(deviceId), value, ttl);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @param deviceId device identifier
+   * @return the deadline in epoch milliseconds, or null if the device has none
+   */
+  public Long find(String deviceId) {
+    String value = stringRedisTemplate.opsForValue().get(key(deviceId));
+    return value == null ? null : Long.parseLong(value);
+  }
+
+  /**
+   * Move JDK-serialized deadline keys to the current format. An existing current-format deadline
+   * wins, and expired deadlines are only deleted.
+   * @param keys keys matching {@link #legacyKeyPattern()}
+   * @return number of keys moved
+   */
+  public int migrateLegacy(List<byte[]> keys) {
+    if (keys.isEmpty()) {
+      return 0;
+    }
+    List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (byte[] key : keys) {
+        connection.stringCommands().get(key);
+      }
+      return null;
+    }, RedisSerializer.byteArray());
+    long now = DateTimeHelper.currentTimeMillis();
+    int[] migrated = {0};
+    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (int i = 0; i < keys.size(); i++) {
+        String deviceId = legacyDeviceId(keys.get(i));
+        Long deadline = values.get(i) instanceof byte[] value ? legacyDeadline(value) : null;
+        if (deviceId == null || deadline == null) {
+          continue;
+        }
+        if (deadline > now) {
+          connection.stringCommands().set(key(deviceId).getBytes(StandardCharsets.UTF_8),
+              Long.toString(deadline).getBytes(StandardCharsets.UTF_8),
+              Expiration.milliseconds(deadline - now), SetOption.ifAbsent());
+        }
+        connection.keyCommands().del(keys.get(i));
+        migrated[0]++;
+      }
+      return null;
+    });
+    return migrated[0];
+  }
+
+  /**
+   * @param deviceId device identifier
+   * @return the key holding the device's block deadline
+   */
+  public static String key(String deviceId) {
+    return KEY_PREFIX + "{" + deviceId + "}";
+  }
+
+  /**
+   * @return SCAN pattern that matches the JDK-serialized keys older releases wrote
+   */
+  public static byte[] legacyKeyPattern() {
+    return LEGACY_KEY_PATTERN.clone();
+  }
+
+  /**
+   * Decode a JDK-serialized String key: the stream header, TC_STRING, a two-byte length and the
+   * characters.
+   */
+  private static @Nullable String legacyDeviceId(byte[] key) {
+    int offset = JDK_STREAM_HEADER.length + 3;
+    if (key.length < offset || key[JDK_STREAM_HEADER.length] != TC_STRING
+        || ((key[offset - 2] & 0xFF) << 8 | key[offset - 1] & 0xFF) != key.length - offset) {
+      return null;
+    }
+    String name = new String(key, offset, key.length - offset, StandardCharsets.UTF_8);
+    return name.startsWith(KEY_PREFIX) ? name.substring(KEY_PREFIX.length()) : null;
+  }
+
+  /**
+   * Decode a JDK-serialized Long. Its class description is fixed and the value is the last eight
+   * bytes of the stream.
+   */
+  private static @Nullable Long legacyDeadline(byte[] value) {
+    if (value.length < JDK_LONG_PREFIX.length + Long.BYTES
+        || !Arrays.equals(value, 0, JDK_LONG_PREFIX.length, JDK_LONG_PREFIX, 0, JDK_LONG_PREFIX.length)) {
+      return null;
+    }
+    return ByteBuffer.wrap(value, value.length - Long.BYTES, Long.BYTES).getLong();
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      out.writeBytes(part);
+    }
+    return out.toByteArray();
+  }
+}
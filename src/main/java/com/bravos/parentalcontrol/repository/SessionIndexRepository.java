@@ -0,0 +1,548 @@
+package com.bravos.parentalcontrol.repository;
+
+import com.bravos.parentalcontrol.config.RedisConfig;
+import com.bravos.parentalcontrol.dto.response.SessionPage;
+import com.bravos.parentalcontrol.entity.Session;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands.ZAddArgs;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Secondary indexes over {@link Session} that Spring Data's repository support cannot express.
+ * Sessions are kept in a sorted set scored by createdAt so listings can be paged newest-first
+ * without loading the whole keyspace. Listing pages are read through the replica template and
+ * may trail recent writes by the replication lag.
+ * <p>
+ * Device pointers under {@code device_session:{<deviceId>}} hold {@code <sessionId>|<nodeId>}, so
+ * a script can route a command to the device without reading the session hash.
+ * <p>
+ * Session hashes expire after SESSION_TTL_SECONDS unless the heartbeat refreshes them. Expiry
+ * leaves the member set and Spring Data's indexes behind; those are walked with cursor scans
+ * and cleaned up by {@code SessionReaper}.
+ */
+@Repository
+public class SessionIndexRepository {
+  public static final String CREATED_INDEX_KEY = "session:by_created";
+  private static final String SESSION_SET_KEY = "session";
+  private static final int TIE_OVERFETCH = 16;
+  public static final char POINTER_SEPARATOR = '|';
+  private static final String DEVICE_KEY_PREFIX = "device_session:";
+  private static final String DEVICE_INDEX_PREFIX = "session:deviceId:";
+  private static final long SCAN_TIMEOUT_SECONDS = 10;
+  private static final String UNBIND_DEVICE_SCRIPT = """
+      local pointer = redis.call('GET', KEYS[1])
+      if pointer and string.sub(pointer, 1, #ARGV[1] + 1) == ARGV[1] .. '|' then
+        return redis.call('DEL', KEYS[1])
+      end
+      return 0
+      """;
+  private static final RedisScript<Long> UNBIND_DEVICE = RedisScript.of(UNBIND_DEVICE_SCRIPT, Long.class);
+  private static final int DELETE_COMMANDS_PER_SESSION = 6;
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final StringRedisTemplate replicaRedisTemplate;
+  private final long sessionTtlMillis;
+
+  /**
+   * Where a session stands for the reaper.
+   * @param sessionId session identifier
+   * @param deviceId device of the session, read from the index back-reference if the hash is gone
+   * @param nodeId node owning the session's socket, or null if unknown
+   * @param expired whether the session hash no longer exists
+   */
+  public record IndexEntry(String sessionId, String deviceId, String nodeId, boolean expired) {
+  }
+
+  /**
+   * One step of a cursor scan.
+   * @param items members or keys returned by this step
+   * @param next cursor to continue from, or null once the scan is complete
+   */
+  public record ScanBatch(List<String> items, @Nullable ScanCursor next) {
+  }
+
+  public SessionIndexRepository(StringRedisTemplate stringRedisTemplate,
+                                @Qualifier(RedisConfig.REPLICA_TEMPLATE) StringRedisTemplate replicaRedisTemplate,
+                                Environment environment) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.replicaRedisTemplate = replicaRedisTemplate;
+    this.sessionTtlMillis = TimeUnit.SECONDS.toMillis(
+        environment.getProperty("SESSION_TTL_SECONDS", Long.class, 900L));
+  }
+
+  /**
+   * Index a newly saved session and start its liveness TTL, in one round trip.
+   * @param session saved session
+   */
+  public void add(Session session) {
+    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      connection.zSetCommands().zAdd(CREATED_INDEX_KEY.getBytes(StandardCharsets.UTF_8),
+          session.getCreatedAt(), session.getId().getBytes(StandardCharsets.UTF_8));
+      if (sessionTtlMillis > 0) {
+        connection.keyCommands().pExpire(("session:" + session.getId()).getBytes(StandardCharsets.UTF_8),
+            sessionTtlMillis);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * @return how long a session hash lives without a heartbeat, or 0 if sessions never expire
+   */
+  public long getSessionTtlMillis() {
+    return sessionTtlMillis;
+  }
+
+  /**
+   * Point a device at its new session in one atomic swap.
+   * @param deviceId device identifier
+   * @param sessionId new session identifier
+   * @param nodeId node that holds the session's socket
+   * @return the session the device pointed at before, or null
+   */
+  public String bindDevice(String deviceId, String sessionId, String nodeId) {
+    return sessionIdOf(stringRedisTemplate.opsForValue()
+        .getAndSet(deviceKey(deviceId), sessionId + POINTER_SEPARATOR + nodeId));
+  }
+
+  /**
+   * Clear a device's session pointer if it still points at the given session.
+   * @param deviceId device identifier
+   * @param sessionId session identifier
+   */
+  public void unbindDevice(String deviceId, String sessionId) {
+    stringRedisTemplate.execute(UNBIND_DEVICE, List.of(deviceKey(deviceId)), sessionId);
+  }
+
+  public String findSessionIdByDevice(String deviceId) {
+    return sessionIdOf(stringRedisTemplate.opsForValue().get(deviceKey(deviceId)));
+  }
+
+  public void remove(String sessionId) {
+    stringRedisTemplate.opsForZSet().remove(CREATED_INDEX_KEY, sessionId);
+  }
+
+  /**
+   * Add sessions saved before the createdAt index existed to it, in two pipelines. Entries that
+   * are already indexed are left alone, and ids whose hash is gone are skipped.
+   * @param ids session identifiers
+   * @return number of sessions added to the index
+   */
+  public int addMissingToCreatedIndex(List<String> ids) {
+    if (ids.isEmpty()) {
+      return 0;
+    }
+    List<Object> createdAts = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (String id : ids) {
+        connection.hashCommands().hGet(("session:" + id).getBytes(StandardCharsets.UTF_8),
+            "createdAt".getBytes(StandardCharsets.UTF_8));
+      }
+      return null;
+    });
+    List<String> found = new ArrayList<>(ids.size());
+    List<Long> scores = new ArrayList<>(ids.size());
+    for (int i = 0; i < ids.size(); i++) {
+      if (createdAts.get(i) instanceof String createdAt) {
+        found.add(ids.get(i));
+        scores.add(Long.parseLong(createdAt));
+      }
+    }
+    if (found.isEmpty()) {
+      return 0;
+    }
+    List<Object> added = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      byte[] key = CREATED_INDEX_KEY.getBytes(StandardCharsets.UTF_8);
+      for (int i = 0; i < found.size(); i++) {
+        connection.zSetCommands().zAdd(key, scores.get(i), found.get(i).getBytes(StandardCharsets.UTF_8),
+            ZAddArgs.ifNotExists());
+      }
+      return null;
+    });
+    return (int) added.stream().filter(Boolean.TRUE::equals).count();
+  }
+
+  /**
+   * Read one page of sessions, newest first.
+   * @param cursor opaque cursor from the previous page, or null for the first page
+   * @param limit maximum number of sessions to return
+   * @return the page and the cursor of the next one, which is null on the last page
+   */
+  public SessionPage findPage(String cursor, int limit) {
+    double maxScore = Double.POSITIVE_INFINITY;
+    String afterId = null;
+    if (cursor != null && !cursor.isBlank()) {
+      String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int separator = decoded.indexOf(':');
+      if (separator < 0) {
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+      }
+      maxScore = Double.parseDouble(decoded.substring(0, separator));
+      afterId = decoded.substring(separator + 1);
+    }
+    List<String> ids = new ArrayList<>(limit + 1);
+    List<Double> scores = new ArrayList<>(limit + 1);
+    int batchSize = limit + 1 + TIE_OVERFETCH;
+    long offset = 0;
+    while (ids.size() <= limit) {
+      Set<TypedTuple<String>> tuples = replicaRedisTemplate.opsForZSet()
+          .reverseRangeByScoreWithScores(CREATED_INDEX_KEY, Double.NEGATIVE_INFINITY, maxScore, offset, batchSize);
+      if (tuples == null || tuples.isEmpty()) {
+        break;
+      }
+      for (TypedTuple<String> tuple : tuples) {
+        if (afterId != null && tuple.getScore() == maxScore && tuple.getValue().compareTo(afterId) >= 0) {
+          continue;
+        }
+        ids.add(tuple.getValue());
+        scores.add(tuple.getScore());
+        if (ids.size() > limit) {
+          break;
+        }
+      }
+      if (tuples.size() < batchSize) {
+        break;
+      }
+      offset += batchSize;
+    }
+    String nextCursor = null;
+    if (ids.size() > limit) {
+      ids = ids.subList(0, limit);
+      nextCursor = encodeCursor(scores.get(limit - 1), ids.getLast());
+    }
+    return SessionPage.builder()
+        .items(findAllById(replicaRedisTemplate, ids))
+        .nextCursor(nextCursor)
+        .build();
+  }
+
+  /**
+   * Load sessions with one pipelined HGETALL per id. Ids whose hash is gone are skipped.
+   * @param ids session identifiers
+   * @return sessions in the order of the ids
+   */
+  public List<Session> findAllById(List<String> ids) {
+    return findAllById(stringRedisTemplate, ids);
+  }
+
+  private List<Session> findAllById(StringRedisTemplate template, List<String> ids) {
+    if (ids.isEmpty()) {
+      return new ArrayList<>();
+    }
+    List<Object> hashes = template.executePipelined((RedisCallback<Object>) connection -> {
+      readAll(connection, ids);
+      return null;
+    });
+    List<Session> sessions = new ArrayList<>(ids.size());
+    for (Object hash : hashes) {
+      if (hash instanceof Map<?, ?> fields && !fields.isEmpty()) {
+        sessions.add(toSession(fields));
+      }
+    }
+    return sessions;
+  }
+
+  /**
+   * Resolve the current session of many devices. The deviceId keys are read in one pipeline
+   * and the matching hashes in a second one.
+   * @param deviceIds device identifiers
+   * @return sessions keyed by deviceId; devices without a session are absent
+   */
+  public Map<String, Session> findByDeviceIds(List<String> deviceIds) {
+    Map<String, Session> result = new HashMap<>();
+    if (deviceIds.isEmpty()) {
+      return result;
+    }
+    List<Object> members = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (String deviceId : deviceIds) {
+        connection.stringCommands().get(deviceKeyBytes(deviceId));
+      }
+      return null;
+    });
+    List<String> sessionIds = new ArrayList<>(deviceIds.size());
+    for (Object member : members) {
+      if (member instanceof String pointer) {
+        sessionIds.add(sessionIdOf(pointer));
+      }
+    }
+    for (Session session : findAllById(sessionIds)) {
+      result.put(session.getDeviceId(), session);
+    }
+    return result;
+  }
+
+  /**
+   * Walk the ids of every stored session in batches, using SSCAN over the repository's member set.
+   * @param batchSize ids per batch
+   * @param consumer receives each batch
+   */
+  public void forEachIdBatch(int batchSize, Consumer<List<String>> consumer) {
+    List<String> batch = new ArrayList<>(batchSize);
+    ScanOptions options = ScanOptions.scanOptions().count(batchSize).build();
+    try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(SESSION_SET_KEY, options)) {
+      while (cursor.hasNext()) {
+        batch.add(cursor.next());
+        if (batch.size() >= batchSize) {
+          consumer.accept(batch);
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      consumer.accept(batch);
+    }
+  }
+
+  /**
+   * Take one SSCAN step over the ids in the repository's member set.
+   * @param cursor cursor of the previous step, or null to start over
+   * @param count number of ids to ask for; Redis treats it as a hint
+   * @return the ids and the cursor of the next step
+   */
+  public ScanBatch scanIds(@Nullable ScanCursor cursor, int count) {
+    ValueScanCursor<byte[]> step = await(commands -> commands.sscan(SESSION_SET_KEY.getBytes(StandardCharsets.UTF_8),
+        cursor == null ? ScanCursor.INITIAL : cursor, ScanArgs.Builder.limit(count)));
+    return toBatch(step, step.getValues());
+  }
+
+  /**
+   * Take one SCAN step over the deviceId index sets. On a cluster, Lettuce walks every primary in
+   * turn behind the same cursor.
+   * @param cursor cursor of the previous step, or null to start over
+   * @param count number of keys to ask for; Redis treats it as a hint
+   * @return the index keys and the cursor of the next step
+   */
+  public ScanBatch scanDeviceIndexKeys(@Nullable ScanCursor cursor, int count) {
+    KeyScanCursor<byte[]> step = await(commands -> commands.scan(cursor == null ? ScanCursor.INITIAL : cursor,
+        ScanArgs.Builder.matches(DEVICE_INDEX_PREFIX + "*").limit(count)));
+    return toBatch(step, step.getKeys());
+  }
+
+  /**
+   * Read the owner of each session, and for sessions whose hash has expired, the device recorded
+   * in Spring Data's index back-reference. Costs one pipeline.
+   * @param ids session identifiers
+   * @return one entry per id, in order
+   */
+  public List<IndexEntry> findIndexEntries(List<String> ids) {
+    if (ids.isEmpty()) {
+      return new ArrayList<>();
+    }
+    List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (String id : ids) {
+        connection.hashCommands().hMGet(("session:" + id).getBytes(StandardCharsets.UTF_8),
+            "deviceId".getBytes(StandardCharsets.UTF_8), "nodeId".getBytes(StandardCharsets.UTF_8));
+        connection.setCommands().sMembers(("session:" + id + ":idx").getBytes(StandardCharsets.UTF_8));
+      }
+      return null;
+    });
+    List<IndexEntry> entries = new ArrayList<>(ids.size());
+    for (int i = 0; i < ids.size(); i++) {
+      List<?> fields = (List<?>) results.get(2 * i);
+      String deviceId = (String) fields.get(0);
+      String nodeId = (String) fields.get(1);
+      boolean expired = deviceId == null && nodeId == null;
+      if (deviceId == null && results.get(2 * i + 1) instanceof Set<?> indexKeys) {
+        for (Object indexKey : indexKeys) {
+          if (indexKey instanceof String key && key.startsWith(DEVICE_INDEX_PREFIX)) {
+            deviceId = key.substring(DEVICE_INDEX_PREFIX.length());
+          }
+        }
+      }
+      entries.add(new IndexEntry(ids.get(i), deviceId, nodeId, expired));
+    }
+    return entries;
+  }
+
+  /**
+   * Drop members of deviceId index sets whose session hash no longer exists. Costs three
+   * pipelines: the members, their hashes, and the removals.
+   * @param indexKeys deviceId index keys, as returned by {@link #scanDeviceIndexKeys}
+   * @return number of members removed
+   */
+  public int removeDanglingDeviceIndexEntries(List<String> indexKeys) {
+    if (indexKeys.isEmpty()) {
+      return 0;
+    }
+    List<Object> memberSets = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (String indexKey : indexKeys) {
+        connection.setCommands().sMembers(indexKey.getBytes(StandardCharsets.UTF_8));
+      }
+      return null;
+    });
+    List<String> keys = new ArrayList<>();
+    List<String> members = new ArrayList<>();
+    for (int i = 0; i < indexKeys.size(); i++) {
+      if (memberSets.get(i) instanceof Set<?> set) {
+        for (Object member : set) {
+          keys.add(indexKeys.get(i));
+          members.add((String) member);
+        }
+      }
+    }
+    if (members.isEmpty()) {
+      return 0;
+    }
+    List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (String member : members) {
+        connection.keyCommands().exists(("session:" + member).getBytes(StandardCharsets.UTF_8));
+      }
+      return null;
+    });
+    List<Integer> dangling = new ArrayList<>();
+    for (int i = 0; i < members.size(); i++) {
+      if (Boolean.FALSE.equals(exists.get(i))) {
+        dangling.add(i);
+      }
+    }
+    if (!dangling.isEmpty()) {
+      stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        for (int i : dangling) {
+          connection.setCommands().sRem(keys.get(i).getBytes(StandardCharsets.UTF_8),
+              members.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+        return null;
+      });
+    }
+    return dangling.size();
+  }
+
+  /**
+   * Remove sessions and every index entry that points at them in one pipeline. This mirrors
+   * what the repository's deleteById does per session: the hash, the member set, the deviceId
+   * index and its back-reference, plus the createdAt index and the device's session pointer.
+   * @param sessions sessions to remove
+   * @return number of session hashes that were actually deleted
+   */
+  public int deleteAll(List<Session> sessions) {
+    if (sessions.isEmpty()) {
+      return 0;
+    }
+    List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      deleteAll(connection, sessions);
+      return null;
+    });
+    int removed = 0;
+    int position = 0;
+    for (Session session : sessions) {
+      if (results.get(position) instanceof Long deleted && deleted > 0) {
+        removed++;
+      }
+      position += session.getDeviceId() == null ? DELETE_COMMANDS_PER_SESSION - 2 : DELETE_COMMANDS_PER_SESSION;
+    }
+    return removed;
+  }
+
+  private void deleteAll(RedisConnection connection, List<Session> sessions) {
+    byte[] setKey = SESSION_SET_KEY.getBytes(StandardCharsets.UTF_8);
+    byte[] createdKey = CREATED_INDEX_KEY.getBytes(StandardCharsets.UTF_8);
+    for (Session session : sessions) {
+      byte[] id = session.getId().getBytes(StandardCharsets.UTF_8);
+      connection.keyCommands().del(("session:" + session.getId()).getBytes(StandardCharsets.UTF_8));
+      connection.setCommands().sRem(setKey, id);
+      connection.keyCommands().del(("session:" + session.getId() + ":idx").getBytes(StandardCharsets.UTF_8));
+      connection.zSetCommands().zRem(createdKey, id);
+      if (session.getDeviceId() != null) {
+        connection.setCommands().sRem(
+            (DEVICE_INDEX_PREFIX + session.getDeviceId()).getBytes(StandardCharsets.UTF_8), id);
+        connection.scriptingCommands().eval(UNBIND_DEVICE_SCRIPT.getBytes(StandardCharsets.UTF_8),
+            ReturnType.INTEGER, 1, deviceKeyBytes(session.getDeviceId()), id);
+      }
+    }
+  }
+
+  private void readAll(RedisConnection connection, List<String> ids) {
+    for (String id : ids) {
+      connection.hashCommands().hGetAll(("session:" + id).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Run one command on the native Lettuce connection. Spring Data's scan cursors cannot be resumed
+   * from an earlier step, and its key scan does not span a cluster; Lettuce's cursors do both.
+   */
+  private <T> T await(Function<RedisClusterAsyncCommands<byte[], byte[]>, RedisFuture<T>> command) {
+    return stringRedisTemplate.execute((RedisCallback<T>) connection -> {
+      @SuppressWarnings("unchecked")
+      RedisClusterAsyncCommands<byte[], byte[]> commands =
+          (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+      return LettuceFutures.awaitOrCancel(command.apply(commands), SCAN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    });
+  }
+
+  private static ScanBatch toBatch(ScanCursor step, List<byte[]> items) {
+    List<String> strings = new ArrayList<>(items.size());
+    for (byte[] item : items) {
+      strings.add(new String(item, StandardCharsets.UTF_8));
+    }
+    return new ScanBatch(strings, step.isFinished() ? null : step);
+  }
+
+  private static Session toSession(Map<?, ?> fields) {
+    return Session.builder()
+        .id((String) fields.get("id"))
+        .deviceName((String) fields.get("deviceName"))
+        .deviceId((String) fields.get("deviceId"))
+        .ipAddress((String) fields.get("ipAddress"))
+        .nodeId((String) fields.get("nodeId"))
+        .createdAt(toLong(fields.get("createdAt")))
+        .lastActive(toLong(fields.get("lastActive")))
+        .build();
+  }
+
+  private static Long toLong(Object value) {
+    return value == null ? null : Long.valueOf((String) value);
+  }
+
+  /**
+   * @param deviceId device identifier
+   * @return the key of the device's session pointer
+   */
+  public static String deviceKey(String deviceId) {
+    return DEVICE_KEY_PREFIX + "{" + deviceId + "}";
+  }
+
+  private static byte[] deviceKeyBytes(String deviceId) {
+    return deviceKey(deviceId).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String sessionIdOf(String pointer) {
+    if (pointer == null) {
+      return null;
+    }
+    int separator = pointer.indexOf(POINTER_SEPARATOR);
+    return separator < 0 ? pointer : pointer.substring(0, separator);
+  }
+
+  private static String encodeCursor(double score, String sessionId) {
+    String raw = (long) score + ":" + sessionId;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+}
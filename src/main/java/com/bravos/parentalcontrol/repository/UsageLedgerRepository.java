@@ -0,0 +1,204 @@
+package com.bravos.parentalcontrol.repository;
+
+import com.bravos.parentalcontrol.config.RedisConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldIncrBy.Overflow;
+import org.springframework.data.redis.connection.BitFieldSubCommands.BitFieldType;
+import org.springframework.data.redis.connection.BitFieldSubCommands.Offset;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-device screen-time counters under {@code usage:{<deviceId>}:<year>}, one bitfield per year.
+ * <p>
+ * Each key is a bitfield with one 37-bit slot per day of the year: the seconds the device was
+ * active (u17, enough for a whole day) followed by the seconds granted to it (u20). Counters are
+ * bumped with {@code BITFIELD ... OVERFLOW SAT INCRBY}, so they stop at their maximum instead of
+ * wrapping. A full year takes about 1.7 KB, and a key only grows as far as the latest day written.
+ * <p>
+ * Reads fetch the bytes covering the requested days with GETRANGE, one command per device-year,
+ * pipelined through the replica template and decoded here. They may trail a write by the
+ * replication lag.
+ */
+@Repository
+public class UsageLedgerRepository {
+  private static final String KEY_PREFIX = "usage:";
+  private static final int ACTIVE_BITS = 17;
+  private static final int GRANTED_BITS = 20;
+  private static final int DAY_BITS = ACTIVE_BITS + GRANTED_BITS;
+  private static final BitFieldType ACTIVE_TYPE = BitFieldType.unsigned(ACTIVE_BITS);
+  private static final BitFieldType GRANTED_TYPE = BitFieldType.unsigned(GRANTED_BITS);
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final StringRedisTemplate replicaRedisTemplate;
+  private final long retentionSeconds;
+
+  /**
+   * One device's day.
+   * @param deviceId device identifier
+   * @param day local date the usage is counted on
+   */
+  public record DeviceDay(String deviceId, LocalDate day) {
+  }
+
+  /**
+   * Usage counted over one or more days.
+   * @param activeSeconds seconds the device was connected and answering heartbeats
+   * @param grantedSeconds seconds of access granted to the device
+   */
+  public record Usage(long activeSeconds, long grantedSeconds) {
+    public static final Usage NONE = new Usage(0, 0);
+
+    public Usage plus(Usage other) {
+      return new Usage(activeSeconds + other.activeSeconds, grantedSeconds + other.grantedSeconds);
+    }
+  }
+
+  public UsageLedgerRepository(StringRedisTemplate stringRedisTemplate,
+                               @Qualifier(RedisConfig.REPLICA_TEMPLATE) StringRedisTemplate replicaRedisTemplate,
+                               Environment environment) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.replicaRedisTemplate = replicaRedisTemplate;
+    this.retentionSeconds = TimeUnit.DAYS.toSeconds(
+        environment.getProperty("USAGE_RETENTION_DAYS", Long.class, 400L));
+  }
+
+  /**
+   * Add usage to several device-days in one round trip. Each device-year written is kept for
+   * USAGE_RETENTION_DAYS after its last write.
+   * @param increments usage to add per device-day
+   */
+  public void incrementAll(Map<DeviceDay, Usage> increments) {
+    if (increments.isEmpty()) {
+      return;
+    }
+    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      increments.forEach((deviceDay, usage) -> increment(connection, deviceDay, usage));
+      return null;
+    });
+  }
+
+  /**
+   * Sum the usage of several devices over a range of days, in one round trip.
+   * @param deviceIds device identifiers
+   * @param from first day, inclusive
+   * @param to last day, inclusive
+   * @return usage per device, in the order given
+   */
+  public Map<String, Usage> sumAll(Collection<String> deviceIds, LocalDate from, LocalDate to) {
+    List<LocalDate[]> years = splitByYear(from, to);
+    List<String> devices = new ArrayList<>(new LinkedHashSet<>(deviceIds));
+    List<Object> ranges = replicaRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (String deviceId : devices) {
+        for (LocalDate[] year : years) {
+          connection.stringCommands().getRange(key(deviceId, year[0].getYear()),
+              firstByte(year[0]), lastByte(year[1]));
+        }
+      }
+      return null;
+    }, RedisSerializer.byteArray());
+    Map<String, Usage> totals = new LinkedHashMap<>();
+    int i = 0;
+    for (String deviceId : devices) {
+      Usage total = Usage.NONE;
+      for (LocalDate[] year : years) {
+        byte[] bytes = ranges.get(i++) instanceof byte[] range ? range : new byte[0];
+        total = total.plus(sum(bytes, year[0], year[1]));
+      }
+      totals.put(deviceId, total);
+    }
+    return totals;
+  }
+
+  /**
+   * @param deviceId device identifier
+   * @param year calendar year
+   * @return the key holding the device's counters for the year
+   */
+  public static byte[] key(String deviceId, int year) {
+    return (KEY_PREFIX + "{" + deviceId + "}:" + year).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void increment(RedisConnection connection, DeviceDay deviceDay, Usage usage) {
+    long slot = slotOffset(deviceDay.day());
+    BitFieldSubCommands commands = BitFieldSubCommands.create();
+    if (usage.activeSeconds() > 0) {
+      commands = commands.incr(ACTIVE_TYPE).valueAt(Offset.offset(slot))
+          .overflow(Overflow.SAT).by(usage.activeSeconds());
+    }
+    if (usage.grantedSeconds() > 0) {
+      commands = commands.incr(GRANTED_TYPE).valueAt(Offset.offset(slot + ACTIVE_BITS))
+          .overflow(Overflow.SAT).by(usage.grantedSeconds());
+    }
+    if (commands.getSubCommands().isEmpty()) {
+      return;
+    }
+    byte[] key = key(deviceDay.deviceId(), deviceDay.day().getYear());
+    connection.stringCommands().bitField(key, commands);
+    if (retentionSeconds > 0) {
+      connection.keyCommands().expire(key, retentionSeconds);
+    }
+  }
+
+  private static Usage sum(byte[] bytes, LocalDate from, LocalDate to) {
+    long base = firstByte(from) * Byte.SIZE;
+    long active = 0;
+    long granted = 0;
+    for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+      long bit = slotOffset(day) - base;
+      active += readBits(bytes, bit, ACTIVE_BITS);
+      granted += readBits(bytes, bit + ACTIVE_BITS, GRANTED_BITS);
+    }
+    return new Usage(active, granted);
+  }
+
+  /**
+   * Read an unsigned big-endian field the way BITFIELD lays it out. Bytes past the end of the
+   * string read as zero, as they do in Redis.
+   */
+  private static long readBits(byte[] bytes, long bit, int width) {
+    long value = 0;
+    for (long b = bit; b < bit + width; b++) {
+      int index = (int) (b >>> 3);
+      int set = index < bytes.length ? (bytes[index] >> (7 - (int) (b & 7))) & 1 : 0;
+      value = (value << 1) | set;
+    }
+    return value;
+  }
+
+  private static List<LocalDate[]> splitByYear(LocalDate from, LocalDate to) {
+    List<LocalDate[]> years = new ArrayList<>();
+    for (LocalDate start = from; !start.isAfter(to); start = start.withDayOfYear(1).plusYears(1)) {
+      LocalDate yearEnd = start.withDayOfYear(start.lengthOfYear());
+      years.add(new LocalDate[]{start, yearEnd.isBefore(to) ? yearEnd : to});
+    }
+    return years;
+  }
+
+  private static long slotOffset(LocalDate day) {
+    return (long) (day.getDayOfYear() - 1) * DAY_BITS;
+  }
+
+  private static long firstByte(LocalDate day) {
+    return slotOffset(day) / Byte.SIZE;
+  }
+
+  private static long lastByte(LocalDate day) {
+    return (slotOffset(day) + DAY_BITS - 1) / Byte.SIZE;
+  }
+}
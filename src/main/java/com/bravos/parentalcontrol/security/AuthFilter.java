@@ -5,6 +5,7 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.NonNull;
+import org.springframework.core.env.Environment;
 import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -18,9 +19,15 @@ import java.io.IOException;
 @Component
 public class AuthFilter extends OncePerRequestFilter {
   private final PasswordEncoder passwordEncoder;
+  private final VerifiedTokenCache verifiedTokenCache;
+  private final String hashedPassword;
 
-  public AuthFilter(PasswordEncoder passwordEncoder) {
+  public AuthFilter(PasswordEncoder passwordEncoder,
+                    VerifiedTokenCache verifiedTokenCache,
+                    Environment environment) {
     this.passwordEncoder = passwordEncoder;
+    this.verifiedTokenCache = verifiedTokenCache;
+    this.hashedPassword = environment.getProperty("PARENTAL_CONTROL_PASSWORD_HASH");
   }
 
   @Override
@@ -51,10 +58,16 @@ public class AuthFilter extends OncePerRequestFilter {
     if (token == null || token.isEmpty()) {
       return false;
     }
-    String hashedPassword = System.getenv("PARENTAL_CONTROL_PASSWORD_HASH");
     if (hashedPassword == null || hashedPassword.isEmpty()) {
       return false;
     }
-    return passwordEncoder.matches(token, hashedPassword);
+    if (verifiedTokenCache.isVerified(token)) {
+      return true;
+    }
+    if (!passwordEncoder.matches(token, hashedPassword)) {
+      return false;
+    }
+    verifiedTokenCache.markVerified(token);
+    return true;
   }
 }
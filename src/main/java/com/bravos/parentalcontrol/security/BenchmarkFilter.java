@@ -1,32 +1,101 @@
 package com.bravos.parentalcontrol.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Records a latency histogram per route and status. Timers are registered once per method, route
+ * and status and reused. Request log lines are written at DEBUG only, for the fraction of requests
+ * given by REQUEST_LOG_SAMPLE_RATE. Asynchronous requests are recorded when they complete.
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class BenchmarkFilter extends OncePerRequestFilter {
+  private final MeterRegistry meterRegistry;
+  private final double logSampleRate;
+  private final Map<RouteKey, Timer> timers = new ConcurrentHashMap<>();
+
+  public BenchmarkFilter(MeterRegistry meterRegistry, Environment environment) {
+    this.meterRegistry = meterRegistry;
+    this.logSampleRate = environment.getProperty("REQUEST_LOG_SAMPLE_RATE", Double.class, 1.0);
+  }
+
   @Override
   protected void doFilterInternal(@NonNull HttpServletRequest request,
                                   @NonNull HttpServletResponse response,
                                   @NonNull FilterChain filterChain)
       throws ServletException, IOException {
-    long startTime = System.currentTimeMillis();
-    filterChain.doFilter(request, response);
-    long responseTime = System.currentTimeMillis() - startTime;
-    String ip = request.getHeader("X-Real-IP");
-    log.info("{} from {} executed {} in {} ms with status {}",
-        request.getMethod(), ip == null ? "undefined" : ip,
-        request.getRequestURI(), responseTime, response.getStatus());
+    long startTime = System.nanoTime();
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      if (request.isAsyncStarted()) {
+        request.getAsyncContext().addListener(new AsyncListener() {
+          @Override
+          public void onComplete(AsyncEvent event) {
+            record(request, response, startTime);
+          }
+
+          @Override
+          public void onTimeout(AsyncEvent event) {
+          }
+
+          @Override
+          public void onError(AsyncEvent event) {
+          }
+
+          @Override
+          public void onStartAsync(AsyncEvent event) {
+          }
+        });
+      } else {
+        record(request, response, startTime);
+      }
+    }
+  }
+
+  private void record(HttpServletRequest request, HttpServletResponse response, long startTime) {
+    long elapsed = System.nanoTime() - startTime;
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    String route = pattern == null ? "UNKNOWN" : pattern.toString();
+    timers.computeIfAbsent(new RouteKey(request.getMethod(), route, response.getStatus()), this::timer)
+        .record(elapsed, TimeUnit.NANOSECONDS);
+    if (log.isDebugEnabled() && logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate) {
+      String ip = request.getHeader("X-Real-IP");
+      log.debug("{} from {} executed {} in {} us with status {}",
+          request.getMethod(), ip == null ? "undefined" : ip,
+          request.getRequestURI(), TimeUnit.NANOSECONDS.toMicros(elapsed), response.getStatus());
+    }
+  }
+
+  private Timer timer(RouteKey key) {
+    return Timer.builder("http.route.latency")
+        .description("Request handling time per route and status")
+        .tag("method", key.method())
+        .tag("route", key.route())
+        .tag("status", Integer.toString(key.status()))
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+
+  private record RouteKey(String method, String route, int status) {
   }
 }
@@ -0,0 +1,93 @@
+package com.bravos.parentalcontrol.security;
+
+import com.bravos.parentalcontrol.util.ExpiringLruCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Bounded, TTL- and LRU-evicting cache of tokens that already passed BCrypt verification.
+ * Entries are keyed by an HMAC-SHA256 of the token under a per-process random key,
+ * so the raw secret is never held in memory beyond the request that carried it.
+ */
+@Component
+public class VerifiedTokenCache {
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+  private static final long DEFAULT_TTL_SECONDS = 300;
+  private static final int DEFAULT_MAX_ENTRIES = 1024;
+
+  private final ExpiringLruCache<String, Boolean> entries;
+  private final ThreadLocal<Mac> macs;
+  private final long ttlMillis;
+  private final int maxEntries;
+  private final Counter hits;
+  private final Counter misses;
+
+  public VerifiedTokenCache(Environment environment, MeterRegistry meterRegistry) {
+    byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+    this.macs = ThreadLocal.withInitial(() -> {
+      try {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(keySpec);
+        return mac;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("HMAC-SHA256 is not available", e);
+      }
+    });
+    this.ttlMillis = environment.getProperty("AUTH_CACHE_TTL_SECONDS", Long.class, DEFAULT_TTL_SECONDS) * 1000L;
+    this.maxEntries = environment.getProperty("AUTH_CACHE_MAX_ENTRIES", Integer.class, DEFAULT_MAX_ENTRIES);
+    this.entries = new ExpiringLruCache<>(maxEntries);
+    this.hits = Counter.builder("auth.token.cache")
+        .tag("result", "hit")
+        .description("Requests authenticated from the verified-token cache")
+        .register(meterRegistry);
+    this.misses = Counter.builder("auth.token.cache")
+        .tag("result", "miss")
+        .description("Requests that required a full BCrypt verification")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Check whether the token was verified recently.
+   * @param token raw token from the request
+   * @return true if a non-expired entry exists for the token
+   */
+  public boolean isVerified(String token) {
+    if (entries.get(digest(token), System.currentTimeMillis()) != null) {
+      hits.increment();
+      return true;
+    }
+    misses.increment();
+    return false;
+  }
+
+  /**
+   * Remember a token that has just passed full verification.
+   * @param token raw token from the request
+   */
+  public void markVerified(String token) {
+    if (ttlMillis <= 0 || maxEntries <= 0) {
+      return;
+    }
+    entries.put(digest(token), Boolean.TRUE, System.currentTimeMillis() + ttlMillis);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private String digest(String token) {
+    byte[] hash = macs.get().doFinal(token.getBytes(StandardCharsets.UTF_8));
+    return Base64.getEncoder().withoutPadding().encodeToString(hash);
+  }
+}
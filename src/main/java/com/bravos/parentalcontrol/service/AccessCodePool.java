@@ -0,0 +1,60 @@
+package com.bravos.parentalcontrol.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of six-digit access codes drawn from {@link SecureRandom} by a background thread,
+ * so generating a code on the request path never waits for entropy.
+ */
+@Component
+public class AccessCodePool {
+  private static final int CODE_MIN = 100_000;
+  private static final int CODE_RANGE = 900_000;
+
+  private final SecureRandom secureRandom = new SecureRandom();
+  private final BlockingQueue<String> codes;
+  private final Thread refiller;
+
+  public AccessCodePool(Environment environment) {
+    this.codes = new ArrayBlockingQueue<>(environment.getProperty("ACCESS_CODE_POOL_SIZE", Integer.class, 1024));
+    this.refiller = Thread.ofPlatform().name("access-code-refill").daemon().start(this::refill);
+  }
+
+  /**
+   * Take a code from the pool, drawing one directly only if the pool is momentarily empty.
+   * @return a six-digit code
+   */
+  public String next() {
+    String code = codes.poll();
+    return code != null ? code : draw();
+  }
+
+  public int size() {
+    return codes.size();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    refiller.interrupt();
+  }
+
+  private void refill() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        codes.put(draw());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private String draw() {
+    return String.valueOf(CODE_MIN + secureRandom.nextInt(CODE_RANGE));
+  }
+}
@@ -1,20 +1,83 @@
 package com.bravos.parentalcontrol.service;
 
+import com.bravos.parentalcontrol.cluster.CommandRouter;
+import com.bravos.parentalcontrol.dto.response.AuditEvent;
+import com.bravos.parentalcontrol.dto.response.DeviceDelivery;
 import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.BlockDeadlineRepository;
 import com.bravos.parentalcontrol.util.DateTimeHelper;
-import org.springframework.data.redis.core.RedisTemplate;
+import com.bravos.parentalcontrol.websocket.protocol.ServerCommand;
+import jakarta.annotation.PreDestroy;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service
 public class AccessService {
-  private final RedisTemplate<Object, Object> redisTemplate;
+  private static final int MAX_CODE_ATTEMPTS = 8;
+  private static final RedisScript<Long> REDEEM_CODE = RedisScript.of("""
+      local expiration = redis.call('GET', KEYS[1])
+      if not expiration then
+        return -1
+      end
+      redis.call('DEL', KEYS[1])
+      local remaining = tonumber(expiration) - tonumber(ARGV[1])
+      if remaining <= 0 then
+        return -1
+      end
+      return remaining
+      """, Long.class);
+
+  private final BlockDeadlineRepository blockDeadlineRepository;
+  private final StringRedisTemplate stringRedisTemplate;
+  private final ReactiveStringRedisTemplate reactiveRedisTemplate;
   private final SessionService sessionService;
+  private final CommandRouter commandRouter;
+  private final GroupService groupService;
+  private final AccessCodePool accessCodePool;
+  private final BlockStateCache blockStateCache;
+  private final EnforcementScheduler enforcementScheduler;
+  private final UsageLedger usageLedger;
+  private final AuditLog auditLog;
+  private final SessionFeed sessionFeed;
+  private final ExecutorService lookupExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
-  public AccessService(RedisTemplate<Object, Object> redisTemplate, SessionService sessionService) {
-    this.redisTemplate = redisTemplate;
+  public AccessService(BlockDeadlineRepository blockDeadlineRepository,
+                       StringRedisTemplate stringRedisTemplate,
+                       ReactiveStringRedisTemplate reactiveRedisTemplate,
+                       SessionService sessionService,
+                       CommandRouter commandRouter,
+                       GroupService groupService,
+                       AccessCodePool accessCodePool,
+                       BlockStateCache blockStateCache,
+                       EnforcementScheduler enforcementScheduler,
+                       UsageLedger usageLedger,
+                       AuditLog auditLog,
+                       SessionFeed sessionFeed) {
+    this.blockDeadlineRepository = blockDeadlineRepository;
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.reactiveRedisTemplate = reactiveRedisTemplate;
     this.sessionService = sessionService;
+    this.commandRouter = commandRouter;
+    this.groupService = groupService;
+    this.accessCodePool = accessCodePool;
+    this.blockStateCache = blockStateCache;
+    this.enforcementScheduler = enforcementScheduler;
+    this.usageLedger = usageLedger;
+    this.auditLog = auditLog;
+    this.sessionFeed = sessionFeed;
   }
 
   /**
@@ -23,61 +86,280 @@ public class AccessService {
    * @param seconds number of seconds to grant access
    */
   public void grantAccess(String deviceId, int seconds) {
-    Session session = sessionService.getSessionByDeviceId(deviceId);
-    sessionService.sendMessageToSession(session.getId(), "GRANTED:" + seconds);
+    join(grantAccessAsync(deviceId, seconds));
   }
 
   /**
-   * Generate a time-limited access code for the device.
+   * Grant access without blocking the caller. Routing the command and lifting an enforced block
+   * are sent together, so the common path costs one round trip. The lift does not wait for the
+   * session lookup, so an offline device is also unblocked.
+   * @param deviceId device identifier
+   * @param seconds number of seconds to grant access
+   * @return completes once the command is delivered or routed, or exceptionally with
+   * {@link IllegalArgumentException} if the device has no session
+   */
+  public CompletableFuture<Void> grantAccessAsync(String deviceId, int seconds) {
+    CompletableFuture<Void> lifted = enforcementScheduler.liftAsync(deviceId);
+    CompletableFuture<Boolean> delivered = commandRouter.sendToDevice(deviceId, ServerCommand.granted(seconds), null);
+    return delivered.thenCombine(lifted, (found, ignored) -> {
+      requireSession(found, deviceId);
+      recordGrant(AuditEvent.Type.GRANT, deviceId, seconds, "seconds=" + seconds);
+      return null;
+    });
+  }
+
+  /**
+   * Generate a time-limited access code for the device. Codes are bound to the device, not
+   * its current session, and are stored with SET NX so a code already active for the same
+   * device is never handed out twice.
    * @param deviceId device identifier
    * @param seconds validity duration in seconds
    * @return the generated access code
    */
   public String generateAccessCode(String deviceId, int seconds) {
-    Session session = sessionService.getSessionByDeviceId(deviceId);
-    if (session == null) {
-      throw new IllegalArgumentException("No active session for device: " + deviceId);
-    }
-    String code = String.valueOf((int) (Math.random() * 900000) + 100000);
-    String key = "time_grant:" + session.getId() + ":" + code;
-    Long expiration = DateTimeHelper.currentTimeMillis() + seconds * 1000L;
-    redisTemplate.opsForValue().set(key, expiration, Duration.ofSeconds(seconds));
-    return code;
+    return join(generateAccessCodeAsync(deviceId, seconds));
   }
 
   /**
-   * Block the device after a specified number of seconds.
+   * Generate an access code without blocking the caller. Each attempt is one SET NX; a retry is
+   * only needed when the drawn code is already active for the device.
+   * @param deviceId device identifier
+   * @param seconds validity duration in seconds
+   * @return completes with the generated access code
+   */
+  public CompletableFuture<String> generateAccessCodeAsync(String deviceId, int seconds) {
+    String expiration = Long.toString(DateTimeHelper.currentTimeMillis() + seconds * 1000L);
+    return storeAccessCode(deviceId, expiration, Duration.ofSeconds(seconds), 0)
+        .thenApply(code -> {
+          auditLog.publish(AuditEvent.Type.CODE_GENERATED, deviceId, null, "seconds=" + seconds);
+          return code;
+        });
+  }
+
+  /**
+   * Block the device after a specified number of seconds. The deadline is also handed to the
+   * enforcement scheduler, which pushes {@code BLOCK:0} when it passes.
    * @param deviceId device identifier
    * @param seconds number of seconds after which to block the device
    */
   public void blockAfterTime(String deviceId, int seconds) {
-    Session session = sessionService.getSessionByDeviceId(deviceId);
-    if (session == null) {
-      throw new IllegalArgumentException("No active session for device: " + deviceId);
+    join(blockAfterTimeAsync(deviceId, seconds));
+  }
+
+  /**
+   * Block the device without blocking the caller. One script on the device's slot checks for a
+   * session, stores the deadline, announces the cache invalidation and routes the command, while
+   * the deadline is handed to the enforcement scheduler in the same round trip. If the device
+   * turns out to have no session, the scheduled deadline is withdrawn again. If the node holding
+   * its socket cannot be reached, the block still stands and is sent when the device reconnects.
+   * @param deviceId device identifier
+   * @param seconds number of seconds after which to block the device
+   * @return completes once the block is stored and the command delivered or routed, or
+   * exceptionally with {@link IllegalArgumentException} if the device has no session
+   */
+  public CompletableFuture<Void> blockAfterTimeAsync(String deviceId, int seconds) {
+    long lockTimestamp = DateTimeHelper.currentTimeMillis() + seconds * 1000L;
+    CompletableFuture<Void> scheduled = enforcementScheduler.scheduleAsync(deviceId, lockTimestamp);
+    CommandRouter.DeviceWrite write = new CommandRouter.DeviceWrite(BlockDeadlineRepository.key(deviceId),
+        Long.toString(lockTimestamp), seconds * 1000L, BlockStateCache.INVALIDATION_CHANNEL);
+    CompletableFuture<Boolean> delivered = commandRouter.sendToDevice(deviceId, ServerCommand.block(seconds), write);
+    return delivered.thenCombine(scheduled, (found, ignored) -> found)
+        .thenCompose(found -> {
+          if (found) {
+            blockStateCache.evictLocal(deviceId);
+            recordBlock(deviceId, seconds, "seconds=" + seconds);
+            return CompletableFuture.<Void>completedFuture(null);
+          }
+          return enforcementScheduler.unscheduleAsync(deviceId, lockTimestamp)
+              .thenApply(ignored -> requireSession(false, deviceId));
+        });
+  }
+
+  /**
+   * Grant access to every device of a group. Enforced blocks are lifted for every member,
+   * connected or not, so a device that reconnects later is not blocked again.
+   * @param groupId group identifier
+   * @param seconds number of seconds to grant access
+   * @return delivery status per device
+   */
+  public List<DeviceDelivery> grantGroup(String groupId, int seconds) {
+    requirePositive(seconds);
+    List<String> deviceIds = groupService.getDevices(groupId);
+    Map<String, Session> sessions = sessionService.getSessionsByDeviceIds(deviceIds);
+    enforcementScheduler.liftAll(deviceIds);
+    List<DeviceDelivery> deliveries = fanOut(deviceIds, sessions, ServerCommand.granted(seconds));
+    for (DeviceDelivery delivery : deliveries) {
+      if (delivery.getStatus() == DeviceDelivery.Status.DELIVERED) {
+        recordGrant(AuditEvent.Type.GRANT, delivery.getDeviceId(), seconds, "seconds=" + seconds + " group=" + groupId);
+      }
     }
-    String key = "block_device:" + deviceId;
+    return deliveries;
+  }
+
+  /**
+   * Block every connected device of a group after a specified number of seconds.
+   * @param groupId group identifier
+   * @param seconds number of seconds after which to block the devices
+   * @return delivery status per device
+   */
+  public List<DeviceDelivery> blockGroup(String groupId, int seconds) {
+    requirePositive(seconds);
+    List<String> deviceIds = groupService.getDevices(groupId);
+    Map<String, Session> sessions = sessionService.getSessionsByDeviceIds(deviceIds);
     long lockTimestamp = DateTimeHelper.currentTimeMillis() + seconds * 1000L;
-    redisTemplate.opsForValue().set(key, lockTimestamp, Duration.ofSeconds(seconds));
-    sessionService.sendMessageToSession(session.getId(), "BLOCK:" + seconds);
+    blockDeadlineRepository.saveAll(sessions.keySet(), lockTimestamp, Duration.ofSeconds(seconds));
+    blockStateCache.invalidateAll(sessions.keySet());
+    enforcementScheduler.scheduleAll(sessions.keySet(), lockTimestamp);
+    List<DeviceDelivery> deliveries = fanOut(deviceIds, sessions, ServerCommand.block(seconds));
+    for (DeviceDelivery delivery : deliveries) {
+      if (delivery.getStatus() == DeviceDelivery.Status.DELIVERED) {
+        recordBlock(delivery.getDeviceId(), seconds, "seconds=" + seconds + " group=" + groupId);
+      }
+    }
+    return deliveries;
   }
 
+  /**
+   * Get the remaining block time of the device. Served from the near cache, which is
+   * invalidated on every node whenever a block is written.
+   * @param deviceId device identifier
+   * @return remaining seconds, or null if the device is not blocked
+   */
   public Long getRemainingBlockTime(String deviceId) {
-    var value = redisTemplate.opsForValue().get("block_device:" + deviceId);
-    if (value != null) {
-      long remainingMillis = (Long) value - DateTimeHelper.currentTimeMillis();
+    Long deadline = blockStateCache.getDeadline(deviceId, blockDeadlineRepository::find);
+    if (deadline != null) {
+      long remainingMillis = deadline - DateTimeHelper.currentTimeMillis();
       if (remainingMillis > 0) return remainingMillis / 1000;
     }
     return null;
   }
 
-  public Integer verifyAccessRequest(String sessionId, String code) {
-    var value = redisTemplate.opsForValue().get("time_grant:" + sessionId + ":" + code);
-    if (value != null) {
-      long remainingMillis = (Long) value - DateTimeHelper.currentTimeMillis();
-      if (remainingMillis > 0) {
-        return (int) (remainingMillis / 1000);
-      }
+  /**
+   * Get the remaining block time without holding the caller's thread. Cache hits complete
+   * immediately; misses read Redis on a virtual thread.
+   * @param deviceId device identifier
+   * @return completes with the remaining seconds, or null if the device is not blocked
+   */
+  public CompletableFuture<Long> getRemainingBlockTimeAsync(String deviceId) {
+    return CompletableFuture.supplyAsync(() -> getRemainingBlockTime(deviceId), lookupExecutor);
+  }
+
+  /**
+   * Redeem an access code. Checking, consuming and computing the remaining time happen in one
+   * server-side script, so a code can be used only once.
+   * @param deviceId device identifier
+   * @param code access code
+   * @return remaining granted seconds, or null if the code is unknown, used or expired
+   */
+  public Integer verifyAccessRequest(String deviceId, String code) {
+    Long remainingMillis = stringRedisTemplate.execute(REDEEM_CODE,
+        List.of(accessCodeKey(deviceId, code)),
+        Long.toString(DateTimeHelper.currentTimeMillis()));
+    if (remainingMillis == null || remainingMillis < 0) {
+      auditLog.publish(AuditEvent.Type.CODE_REJECTED, deviceId, null, null);
+      return null;
+    }
+    enforcementScheduler.lift(deviceId);
+    int seconds = (int) (remainingMillis / 1000);
+    recordGrant(AuditEvent.Type.CODE_REDEEMED, deviceId, seconds, "seconds=" + seconds);
+    return seconds;
+  }
+
+  /**
+   * Note a delivered grant in the usage ledger, the audit log and the session feed.
+   */
+  private void recordGrant(AuditEvent.Type type, String deviceId, int seconds, String detail) {
+    usageLedger.recordGranted(deviceId, seconds, DateTimeHelper.currentTimeMillis());
+    auditLog.publish(type, deviceId, null, detail);
+    sessionFeed.granted(deviceId, seconds);
+  }
+
+  /**
+   * Note a delivered block in the audit log and the session feed.
+   */
+  private void recordBlock(String deviceId, int seconds, String detail) {
+    auditLog.publish(AuditEvent.Type.BLOCK, deviceId, null, detail);
+    sessionFeed.blocked(deviceId, seconds);
+  }
+
+  private static String accessCodeKey(String deviceId, String code) {
+    return "time_grant:{" + deviceId + "}:" + code;
+  }
+
+  @PreDestroy
+  public void shutdownLookupExecutor() {
+    lookupExecutor.shutdownNow();
+  }
+
+  private CompletableFuture<String> storeAccessCode(String deviceId, String expiration, Duration ttl, int attempt) {
+    if (attempt >= MAX_CODE_ATTEMPTS) {
+      return CompletableFuture.failedFuture(
+          new IllegalStateException("Could not allocate a unique access code for device: " + deviceId));
+    }
+    String code = accessCodePool.next();
+    return reactiveRedisTemplate.opsForValue()
+        .setIfAbsent(accessCodeKey(deviceId, code), expiration, ttl)
+        .toFuture()
+        .thenCompose(stored -> Boolean.TRUE.equals(stored)
+            ? CompletableFuture.completedFuture(code)
+            : storeAccessCode(deviceId, expiration, ttl, attempt + 1));
+  }
+
+  private static Void requireSession(boolean found, String deviceId) {
+    if (!found) {
+      throw new IllegalArgumentException("No active session for device: " + deviceId);
     }
     return null;
   }
+
+  private static void requirePositive(int seconds) {
+    if (seconds <= 0) {
+      throw new IllegalArgumentException("seconds must be a positive number");
+    }
+  }
+
+  /**
+   * Wait for an asynchronous operation, rethrowing its failure as thrown by the operation.
+   */
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private List<DeviceDelivery> fanOut(List<String> deviceIds, Map<String, Session> sessions, ServerCommand command) {
+    List<Future<?>> futures = new ArrayList<>(deviceIds.size());
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (String deviceId : deviceIds) {
+        Session session = sessions.get(deviceId);
+        futures.add(session == null ? null
+            : executor.submit(() -> sessionService.sendMessageToSession(session, command)));
+      }
+    }
+    List<DeviceDelivery> deliveries = new ArrayList<>(deviceIds.size());
+    for (int i = 0; i < deviceIds.size(); i++) {
+      deliveries.add(toDelivery(deviceIds.get(i), futures.get(i)));
+    }
+    return deliveries;
+  }
+
+  private static DeviceDelivery toDelivery(String deviceId, Future<?> future) {
+    if (future == null) {
+      return new DeviceDelivery(deviceId, DeviceDelivery.Status.NO_SESSION, null);
+    }
+    try {
+      future.get();
+      return new DeviceDelivery(deviceId, DeviceDelivery.Status.DELIVERED, null);
+    } catch (ExecutionException e) {
+      return new DeviceDelivery(deviceId, DeviceDelivery.Status.FAILED, e.getCause().getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new DeviceDelivery(deviceId, DeviceDelivery.Status.FAILED, "Interrupted");
+    }
+  }
 }
@@ -0,0 +1,159 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.cluster.NodeIdentity;
+import com.bravos.parentalcontrol.dto.response.AuditEvent;
+import com.bravos.parentalcontrol.dto.response.AuditPage;
+import com.bravos.parentalcontrol.repository.AuditRepository;
+import com.bravos.parentalcontrol.util.DateTimeHelper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.Nullable;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only audit trail of grants, blocks, access codes, connects and disconnects.
+ * <p>
+ * Publishing only offers the event to a bounded ring buffer of AUDIT_BUFFER_SIZE events, so a
+ * caller never waits on Redis. When the buffer is full the event is dropped and counted. A
+ * background writer drains the buffer every AUDIT_FLUSH_MILLIS into the devices' streams, in
+ * pipelines of up to AUDIT_BATCH_SIZE XADDs; a batch that fails to write is dropped and counted
+ * too. {@code audit.lag} reports the age of the oldest event still waiting.
+ */
+@Slf4j
+@Component
+public class AuditLog {
+  public static final int MAX_PAGE_SIZE = 500;
+  private static final Pattern STREAM_ID = Pattern.compile("\\d+-\\d+");
+
+  private final AuditRepository auditRepository;
+  private final NodeIdentity nodeIdentity;
+  private final BlockingQueue<AuditEvent> buffer;
+  private final int batchSize;
+  private final WriteBehind writer;
+  private final Counter bufferFull;
+  private final Counter writeFailed;
+
+  public AuditLog(AuditRepository auditRepository,
+                  NodeIdentity nodeIdentity,
+                  Environment environment,
+                  MeterRegistry meterRegistry) {
+    this.auditRepository = auditRepository;
+    this.nodeIdentity = nodeIdentity;
+    this.buffer = new ArrayBlockingQueue<>(environment.getProperty("AUDIT_BUFFER_SIZE", Integer.class, 65_536));
+    this.batchSize = environment.getProperty("AUDIT_BATCH_SIZE", Integer.class, 500);
+    long flushMillis = environment.getProperty("AUDIT_FLUSH_MILLIS", Long.class, 200L);
+    this.bufferFull = Counter.builder("audit.dropped")
+        .description("Audit events dropped before reaching Redis")
+        .tag("reason", "buffer_full")
+        .register(meterRegistry);
+    this.writeFailed = Counter.builder("audit.dropped")
+        .description("Audit events dropped before reaching Redis")
+        .tag("reason", "write_failed")
+        .register(meterRegistry);
+    Gauge.builder("audit.pending", buffer, BlockingQueue::size)
+        .description("Audit events waiting to be written")
+        .register(meterRegistry);
+    Gauge.builder("audit.lag", this, AuditLog::lagMillis)
+        .description("Age of the oldest audit event waiting to be written")
+        .baseUnit("milliseconds")
+        .register(meterRegistry);
+    this.writer = new WriteBehind("audit events", flushMillis, this::writeBuffered);
+  }
+
+  /**
+   * Record an event without blocking. Events without a device are ignored.
+   * @param type what happened
+   * @param deviceId device the event concerns
+   * @param sessionId session involved, if any
+   * @param detail short free-form detail, such as the number of seconds granted
+   */
+  public void publish(AuditEvent.Type type, @Nullable String deviceId, @Nullable String sessionId,
+                      @Nullable String detail) {
+    if (deviceId == null) {
+      return;
+    }
+    AuditEvent event = AuditEvent.builder()
+        .type(type)
+        .deviceId(deviceId)
+        .sessionId(sessionId)
+        .nodeId(nodeIdentity.getId())
+        .detail(detail)
+        .at(DateTimeHelper.currentTimeMillis())
+        .build();
+    if (!buffer.offer(event)) {
+      bufferFull.increment();
+    }
+  }
+
+  /**
+   * Read a device's events in a time range, oldest first.
+   * @param deviceId device identifier
+   * @param from start in epoch milliseconds, or null for the oldest retained event
+   * @param to end in epoch milliseconds, or null for now
+   * @param cursor cursor returned with the previous page, or null for the first page
+   * @param limit page size
+   * @return the page of events
+   */
+  public AuditPage getEvents(String deviceId, @Nullable Long from, @Nullable Long to,
+                             @Nullable String cursor, int limit) {
+    if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    long start = from != null ? from : 0;
+    long end = to != null ? to : DateTimeHelper.currentTimeMillis();
+    if (start < 0 || end < start) {
+      throw new IllegalArgumentException("Invalid time range: " + start + " to " + end);
+    }
+    if (cursor != null && !STREAM_ID.matcher(cursor).matches()) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+    return auditRepository.findPage(deviceId, start, end, cursor, limit);
+  }
+
+  /**
+   * @return events dropped so far because the buffer was full or their write failed
+   */
+  public long droppedEvents() {
+    return (long) (bufferFull.count() + writeFailed.count());
+  }
+
+  /**
+   * Write everything buffered so far, in batches of AUDIT_BATCH_SIZE.
+   */
+  public void flush() {
+    writer.flush();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    writer.shutdown();
+  }
+
+  private void writeBuffered() {
+    List<AuditEvent> batch = new ArrayList<>(batchSize);
+    while (buffer.drainTo(batch, batchSize) > 0) {
+      try {
+        auditRepository.appendAll(batch);
+      } catch (RuntimeException e) {
+        writeFailed.increment(batch.size());
+        log.warn("Dropped {} audit events: {}", batch.size(), e.getMessage());
+      }
+      batch.clear();
+    }
+  }
+
+  private double lagMillis() {
+    AuditEvent oldest = buffer.peek();
+    return oldest == null ? 0 : Math.max(0, DateTimeHelper.currentTimeMillis() - oldest.getAt());
+  }
+}
@@ -0,0 +1,140 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.util.ExpiringLruCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-process near cache of device block deadlines. Entries expire after a TTL and the cache is
+ * bounded by size, evicting the least recently used device; every write to a block key is
+ * broadcast on a pub/sub channel so each node drops its copy. Devices that are not blocked are
+ * cached too, since that is the common answer.
+ */
+@Component
+public class BlockStateCache implements MessageListener {
+  public static final String INVALIDATION_CHANNEL = "block_state:invalidate";
+  private static final long NOT_BLOCKED = Long.MIN_VALUE;
+
+  private final ExpiringLruCache<String, Entry> entries;
+  private final AtomicLong invalidations = new AtomicLong();
+  private final StringRedisTemplate stringRedisTemplate;
+  private final long ttlMillis;
+  private final Counter hits;
+  private final Counter misses;
+  private final DistributionSummary staleness;
+
+  public BlockStateCache(StringRedisTemplate stringRedisTemplate,
+                         RedisMessageListenerContainer listenerContainer,
+                         Environment environment,
+                         MeterRegistry meterRegistry) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.ttlMillis = environment.getProperty("BLOCK_CACHE_TTL_MILLIS", Long.class, 30_000L);
+    this.entries = new ExpiringLruCache<>(environment.getProperty("BLOCK_CACHE_MAX_ENTRIES", Integer.class, 10_000));
+    this.hits = Counter.builder("block.cache").tag("result", "hit")
+        .description("Block-state reads served from the near cache")
+        .register(meterRegistry);
+    this.misses = Counter.builder("block.cache").tag("result", "miss")
+        .description("Block-state reads that went to Redis")
+        .register(meterRegistry);
+    this.staleness = DistributionSummary.builder("block.cache.staleness")
+        .baseUnit("milliseconds")
+        .description("Age of near-cache entries when served")
+        .register(meterRegistry);
+    Gauge.builder("block.cache.size", entries, ExpiringLruCache::size)
+        .description("Entries in the block-state near cache")
+        .register(meterRegistry);
+    Gauge.builder("block.cache.hit.ratio", this, BlockStateCache::hitRatio)
+        .description("Share of block-state reads served from the near cache")
+        .register(meterRegistry);
+    listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+  }
+
+  /**
+   * Get the block deadline of a device, loading it on a miss.
+   * @param deviceId device identifier
+   * @param loader reads the deadline in epoch milliseconds from Redis, or null if not blocked
+   * @return the deadline in epoch milliseconds, or null if the device is not blocked
+   */
+  public Long getDeadline(String deviceId, Function<String, Long> loader) {
+    long now = System.currentTimeMillis();
+    Entry entry = entries.get(deviceId, now);
+    if (entry != null) {
+      hits.increment();
+      staleness.record(now - entry.loadedAt);
+      return entry.deadline == NOT_BLOCKED ? null : entry.deadline;
+    }
+    misses.increment();
+    long epoch = invalidations.get();
+    Long deadline = loader.apply(deviceId);
+    if (invalidations.get() == epoch) {
+      entries.put(deviceId, new Entry(deadline == null ? NOT_BLOCKED : deadline, now), now + ttlMillis);
+    }
+    return deadline;
+  }
+
+  /**
+   * Drop a device's entry on every node, including this one.
+   * @param deviceId device identifier
+   */
+  public void invalidate(String deviceId) {
+    evictLocal(deviceId);
+    stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, deviceId);
+  }
+
+  /**
+   * Drop the entries of several devices on every node, with the announcements sent in one pipeline.
+   * @param deviceIds device identifiers
+   */
+  public void invalidateAll(Collection<String> deviceIds) {
+    if (deviceIds.isEmpty()) {
+      return;
+    }
+    deviceIds.forEach(this::evictLocal);
+    byte[] channel = INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8);
+    stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (String deviceId : deviceIds) {
+        connection.publish(channel, deviceId.getBytes(StandardCharsets.UTF_8));
+      }
+      return null;
+    });
+  }
+
+  @Override
+  public void onMessage(@NonNull Message message, byte @Nullable [] pattern) {
+    evictLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+  }
+
+  public double hitRatio() {
+    double total = hits.count() + misses.count();
+    return total == 0 ? 0 : hits.count() / total;
+  }
+
+  /**
+   * Drop a device's entry on this node only, for writers that notify the other nodes themselves.
+   * @param deviceId device identifier
+   */
+  public void evictLocal(String deviceId) {
+    invalidations.incrementAndGet();
+    entries.remove(deviceId);
+  }
+
+  private record Entry(long deadline, long loadedAt) {
+  }
+}
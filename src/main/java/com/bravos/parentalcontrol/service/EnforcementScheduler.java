@@ -0,0 +1,368 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.util.DateTimeHelper;
+import com.bravos.parentalcontrol.websocket.protocol.ServerCommand;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable scheduler that enforces block deadlines.
+ * <p>
+ * Pending deadlines live in Redis: a sorted set {@code {enforcement}:due} scored by the time a
+ * device must be blocked, plus a hash {@code {enforcement}:deadline} with the deadline itself.
+ * The keys share a hash tag so the claim and complete scripts stay in one cluster slot.
+ * Each node keeps only the deadlines inside a short horizon in an in-memory min-heap, refilled
+ * with a range query, so the cost does not grow with the number of pending deadlines.
+ * <p>
+ * A due deadline is claimed by moving its score forward by a lease, then {@code BLOCK:0} is
+ * pushed to the device and the device is moved to {@code {enforcement}:enforced_at}, a sorted set
+ * scored by the enforcement time. A node that dies after claiming leaves the lease to expire, and
+ * another node fires it again. Enforced blocks that are never lifted are trimmed after
+ * ENFORCEMENT_RETENTION_MILLIS on refill, so the set stays bounded.
+ */
+@Slf4j
+@Component
+public class EnforcementScheduler {
+  private static final String DUE_KEY = "{enforcement}:due";
+  private static final String DEADLINE_KEY = "{enforcement}:deadline";
+  private static final String ENFORCED_KEY = "{enforcement}:enforced_at";
+
+  private static final RedisScript<Long> CLAIM = RedisScript.of("""
+      local score = redis.call('ZSCORE', KEYS[1], ARGV[1])
+      if not score or tonumber(score) > tonumber(ARGV[2]) then
+        return -1
+      end
+      local deadline = redis.call('HGET', KEYS[2], ARGV[1])
+      if not deadline then
+        redis.call('ZREM', KEYS[1], ARGV[1])
+        return -1
+      end
+      redis.call('ZADD', KEYS[1], ARGV[3], ARGV[1])
+      return tonumber(deadline)
+      """, Long.class);
+
+  private static final RedisScript<Long> COMPLETE = RedisScript.of("""
+      if redis.call('HGET', KEYS[2], ARGV[1]) ~= ARGV[2] then
+        return 0
+      end
+      redis.call('HDEL', KEYS[2], ARGV[1])
+      redis.call('ZREM', KEYS[1], ARGV[1])
+      redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])
+      return 1
+      """, Long.class);
+
+  private static final RedisScript<Long> UNSCHEDULE = RedisScript.of("""
+      if redis.call('HGET', KEYS[2], ARGV[1]) ~= ARGV[2] then
+        return 0
+      end
+      redis.call('HDEL', KEYS[2], ARGV[1])
+      redis.call('ZREM', KEYS[1], ARGV[1])
+      return 1
+      """, Long.class);
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+  private final SessionService sessionService;
+  private final long horizonMillis;
+  private final long refillMillis;
+  private final long leaseMillis;
+  private final int refillBatch;
+  private final long retentionMillis;
+  private final PriorityQueue<Job> heap = new PriorityQueue<>();
+  private final Map<String, Long> heaped = new HashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final ExecutorService fireExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory());
+  private final Counter fired;
+  private final Timer lateness;
+  private final Thread ticker;
+
+  private volatile boolean running = true;
+
+  public EnforcementScheduler(StringRedisTemplate stringRedisTemplate,
+                              ReactiveStringRedisTemplate reactiveRedisTemplate,
+                              SessionService sessionService,
+                              Environment environment,
+                              MeterRegistry meterRegistry) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.reactiveRedisTemplate = reactiveRedisTemplate;
+    this.sessionService = sessionService;
+    this.horizonMillis = environment.getProperty("ENFORCEMENT_HORIZON_MILLIS", Long.class, 60_000L);
+    this.refillMillis = environment.getProperty("ENFORCEMENT_REFILL_MILLIS", Long.class, 1000L);
+    this.leaseMillis = environment.getProperty("ENFORCEMENT_LEASE_MILLIS", Long.class, 30_000L);
+    this.refillBatch = environment.getProperty("ENFORCEMENT_REFILL_BATCH", Integer.class, 10_000);
+    this.retentionMillis = environment.getProperty("ENFORCEMENT_RETENTION_MILLIS", Long.class, 2_592_000_000L);
+    this.fired = Counter.builder("enforcement.fired")
+        .description("Block deadlines enforced by this node")
+        .register(meterRegistry);
+    this.lateness = Timer.builder("enforcement.lateness")
+        .description("Delay between a block deadline and its enforcement")
+        .register(meterRegistry);
+    Gauge.builder("enforcement.heap.size", this, EnforcementScheduler::getHeapSize)
+        .description("Block deadlines held in this node's in-memory horizon")
+        .register(meterRegistry);
+    this.ticker = Thread.ofPlatform().name("enforcement-scheduler").daemon().unstarted(this::run);
+  }
+
+  @PostConstruct
+  public void start() {
+    ticker.start();
+  }
+
+  /**
+   * Schedule the same block deadline for several devices in one round trip.
+   * @param deviceIds device identifiers
+   * @param deadline epoch milliseconds at which the devices must be blocked
+   */
+  public void scheduleAll(Collection<String> deviceIds, long deadline) {
+    if (deviceIds.isEmpty()) {
+      return;
+    }
+    String value = Long.toString(deadline);
+    stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <K, V> Object execute(RedisOperations<K, V> operations) {
+        RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+        for (String deviceId : deviceIds) {
+          ops.opsForHash().put(DEADLINE_KEY, deviceId, value);
+          ops.opsForZSet().add(DUE_KEY, deviceId, deadline);
+        }
+        return null;
+      }
+    });
+    offerAll(deviceIds, deadline);
+  }
+
+  /**
+   * Schedule a block for a device without blocking the caller. Both writes are sent at once.
+   * @param deviceId device identifier
+   * @param deadline epoch milliseconds at which the device must be blocked
+   * @return completes once the deadline is stored
+   */
+  public CompletableFuture<Void> scheduleAsync(String deviceId, long deadline) {
+    CompletableFuture<Boolean> stored = reactiveRedisTemplate.<String, String>opsForHash()
+        .put(DEADLINE_KEY, deviceId, Long.toString(deadline)).toFuture();
+    CompletableFuture<Boolean> queued = reactiveRedisTemplate.opsForZSet()
+        .add(DUE_KEY, deviceId, deadline).toFuture();
+    return CompletableFuture.allOf(stored, queued).thenRun(() -> offerAll(List.of(deviceId), deadline));
+  }
+
+  /**
+   * Withdraw a pending deadline, unless it has been replaced by a different one since.
+   * @param deviceId device identifier
+   * @param deadline the deadline that was scheduled
+   * @return completes once the deadline is withdrawn
+   */
+  public CompletableFuture<Void> unscheduleAsync(String deviceId, long deadline) {
+    return reactiveRedisTemplate
+        .execute(UNSCHEDULE, List.of(DUE_KEY, DEADLINE_KEY), List.of(deviceId, Long.toString(deadline)))
+        .then()
+        .toFuture();
+  }
+
+  /**
+   * Lift an enforced block, e.g. after access was granted. A pending deadline is kept.
+   * @param deviceId device identifier
+   */
+  public void lift(String deviceId) {
+    stringRedisTemplate.opsForZSet().remove(ENFORCED_KEY, deviceId);
+  }
+
+  /**
+   * Lift an enforced block without blocking the caller.
+   * @param deviceId device identifier
+   * @return completes once the block is lifted
+   */
+  public CompletableFuture<Void> liftAsync(String deviceId) {
+    return reactiveRedisTemplate.opsForZSet().remove(ENFORCED_KEY, deviceId).then().toFuture();
+  }
+
+  /**
+   * Lift enforced blocks of several devices in one round trip.
+   * @param deviceIds device identifiers
+   */
+  public void liftAll(Collection<String> deviceIds) {
+    if (!deviceIds.isEmpty()) {
+      stringRedisTemplate.opsForZSet().remove(ENFORCED_KEY, deviceIds.toArray());
+    }
+  }
+
+  /**
+   * Get the command that brings a (re)connecting device up to date with its enforcement state.
+   * @param deviceId device identifier
+   * @return a block command for a pending or enforced block, or null if there is none
+   */
+  public ServerCommand currentCommand(String deviceId) {
+    List<Object> values = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <K, V> Object execute(RedisOperations<K, V> operations) {
+        RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+        ops.opsForHash().get(DEADLINE_KEY, deviceId);
+        ops.opsForZSet().score(ENFORCED_KEY, deviceId);
+        return null;
+      }
+    });
+    if (values.get(0) != null) {
+      long remainingMillis = Long.parseLong((String) values.get(0)) - DateTimeHelper.currentTimeMillis();
+      return ServerCommand.block((int) Math.max(0, remainingMillis / 1000));
+    }
+    return values.get(1) != null ? ServerCommand.block(0) : null;
+  }
+
+  public int getHeapSize() {
+    lock.lock();
+    try {
+      return heap.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    running = false;
+    ticker.interrupt();
+    fireExecutor.shutdownNow();
+  }
+
+  private void run() {
+    long nextRefill = 0;
+    while (running) {
+      try {
+        long now = DateTimeHelper.currentTimeMillis();
+        if (now >= nextRefill) {
+          refill(now);
+          nextRefill = now + refillMillis;
+        }
+        List<Job> due = new ArrayList<>();
+        lock.lock();
+        try {
+          Job head;
+          while ((head = heap.peek()) != null && head.dueAt <= now) {
+            heap.poll();
+            if (heaped.remove(head.deviceId, head.dueAt)) {
+              due.add(head);
+            }
+          }
+          if (due.isEmpty()) {
+            long wakeAt = head == null ? nextRefill : Math.min(head.dueAt, nextRefill);
+            changed.await(Math.max(1, wakeAt - now), TimeUnit.MILLISECONDS);
+          }
+        } finally {
+          lock.unlock();
+        }
+        for (Job job : due) {
+          fireExecutor.execute(() -> fire(job.deviceId));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.warn("Enforcement scheduler iteration failed: {}", e.getMessage());
+        nextRefill = DateTimeHelper.currentTimeMillis() + refillMillis;
+      }
+    }
+  }
+
+  private void refill(long now) {
+    if (retentionMillis > 0) {
+      stringRedisTemplate.opsForZSet()
+          .removeRangeByScore(ENFORCED_KEY, Double.NEGATIVE_INFINITY, now - retentionMillis);
+    }
+    Set<ZSetOperations.TypedTuple<String>> upcoming = stringRedisTemplate.opsForZSet()
+        .rangeByScoreWithScores(DUE_KEY, Double.NEGATIVE_INFINITY, now + horizonMillis, 0, refillBatch);
+    if (upcoming == null || upcoming.isEmpty()) {
+      return;
+    }
+    lock.lock();
+    try {
+      for (ZSetOperations.TypedTuple<String> tuple : upcoming) {
+        if (tuple.getValue() != null && tuple.getScore() != null) {
+          offer(tuple.getValue(), tuple.getScore().longValue());
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void offerAll(Collection<String> deviceIds, long deadline) {
+    if (deadline > DateTimeHelper.currentTimeMillis() + horizonMillis) {
+      return;
+    }
+    lock.lock();
+    try {
+      for (String deviceId : deviceIds) {
+        offer(deviceId, deadline);
+      }
+      changed.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void offer(String deviceId, long dueAt) {
+    Long previous = heaped.put(deviceId, dueAt);
+    if (previous == null || previous != dueAt) {
+      heap.add(new Job(deviceId, dueAt));
+    }
+  }
+
+  private void fire(String deviceId) {
+    long now = DateTimeHelper.currentTimeMillis();
+    Long deadline = stringRedisTemplate.execute(CLAIM, List.of(DUE_KEY, DEADLINE_KEY),
+        deviceId, Long.toString(now), Long.toString(now + leaseMillis));
+    if (deadline == null || deadline < 0) {
+      return;
+    }
+    Session session = sessionService.getSessionByDeviceId(deviceId);
+    if (session != null) {
+      try {
+        sessionService.sendMessageToSession(session, ServerCommand.block(0));
+      } catch (RuntimeException e) {
+        log.info("Could not deliver block to device {}, it will be sent on reconnect: {}", deviceId, e.getMessage());
+      }
+    }
+    stringRedisTemplate.execute(COMPLETE, List.of(DUE_KEY, DEADLINE_KEY, ENFORCED_KEY),
+        deviceId, Long.toString(deadline), Long.toString(DateTimeHelper.currentTimeMillis()));
+    fired.increment();
+    lateness.record(Math.max(0, DateTimeHelper.currentTimeMillis() - deadline), TimeUnit.MILLISECONDS);
+  }
+
+  private record Job(String deviceId, long dueAt) implements Comparable<Job> {
+    @Override
+    public int compareTo(Job other) {
+      return Long.compare(dueAt, other.dueAt);
+    }
+  }
+}
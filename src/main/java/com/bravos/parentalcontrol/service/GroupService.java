@@ -0,0 +1,70 @@
+package com.bravos.parentalcontrol.service;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Named groups of devices, stored as Redis sets so one request can target a whole classroom
+ * or household.
+ */
+@Service
+public class GroupService {
+  private static final String GROUP_KEY_PREFIX = "device_group:";
+  private static final String GROUPS_KEY = "device_groups";
+
+  private final StringRedisTemplate stringRedisTemplate;
+
+  public GroupService(StringRedisTemplate stringRedisTemplate) {
+    this.stringRedisTemplate = stringRedisTemplate;
+  }
+
+  /**
+   * Add devices to a group, creating it if needed.
+   * @param groupId group identifier
+   * @param deviceIds devices to add
+   * @return number of devices that were not already members
+   */
+  public long addDevices(String groupId, List<String> deviceIds) {
+    if (deviceIds == null || deviceIds.isEmpty()) {
+      throw new IllegalArgumentException("At least one deviceId is required");
+    }
+    Long added = stringRedisTemplate.opsForSet().add(groupKey(groupId), deviceIds.toArray(String[]::new));
+    stringRedisTemplate.opsForSet().add(GROUPS_KEY, groupId);
+    return added == null ? 0 : added;
+  }
+
+  public void removeDevice(String groupId, String deviceId) {
+    stringRedisTemplate.opsForSet().remove(groupKey(groupId), deviceId);
+  }
+
+  public void deleteGroup(String groupId) {
+    stringRedisTemplate.delete(groupKey(groupId));
+    stringRedisTemplate.opsForSet().remove(GROUPS_KEY, groupId);
+  }
+
+  public List<String> getGroups() {
+    Set<String> groups = stringRedisTemplate.opsForSet().members(GROUPS_KEY);
+    return groups == null ? List.of() : new ArrayList<>(groups);
+  }
+
+  /**
+   * Get the devices of a group.
+   * @param groupId group identifier
+   * @return member deviceIds
+   */
+  public List<String> getDevices(String groupId) {
+    Set<String> members = stringRedisTemplate.opsForSet().members(groupKey(groupId));
+    if (members == null || members.isEmpty()) {
+      throw new IllegalArgumentException("Group not found or empty: " + groupId);
+    }
+    return new ArrayList<>(members);
+  }
+
+  private static String groupKey(String groupId) {
+    return GROUP_KEY_PREFIX + groupId;
+  }
+}
@@ -0,0 +1,129 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-behind buffer for session lastActive timestamps. Only the latest timestamp per
+ * session is kept, and the buffer is flushed periodically as one pipeline of single-field
+ * HSETs so heartbeat write load follows the flush rate instead of the pong rate. The same
+ * script renews the session's liveness TTL, so a session stays alive while its device answers pings.
+ * <p>
+ * Buffering, early flushes at LAST_ACTIVE_MAX_PENDING and dropping what a failed flush cannot put
+ * back are left to {@link WriteBehindBuffer}, so a Redis outage never stalls or fails heartbeats.
+ * The script is sent once with SCRIPT LOAD and then called by its SHA.
+ */
+@Component
+public class LastActiveWriter {
+  private static final RedisScript<Long> UPDATE_IF_EXISTS = RedisScript.of("""
+      if redis.call('EXISTS', KEYS[1]) == 1 then
+        if tonumber(ARGV[2]) > 0 then
+          redis.call('PEXPIRE', KEYS[1], ARGV[2])
+        end
+        return redis.call('HSET', KEYS[1], 'lastActive', ARGV[1])
+      end
+      return 0
+      """, Long.class);
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final WriteBehindBuffer<String, Long> pending;
+  private final byte[] ttlMillis;
+  private volatile boolean scriptLoaded;
+
+  public LastActiveWriter(StringRedisTemplate stringRedisTemplate,
+                          SessionIndexRepository sessionIndexRepository,
+                          Environment environment,
+                          MeterRegistry meterRegistry) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.ttlMillis = Long.toString(sessionIndexRepository.getSessionTtlMillis()).getBytes(StandardCharsets.UTF_8);
+    Counter dropped = Counter.builder("session.last_active.dropped")
+        .description("lastActive updates dropped after a failed flush")
+        .register(meterRegistry);
+    this.pending = new WriteBehindBuffer<>("lastActive updates", this::writeAll, Math::max,
+        environment.getProperty("LAST_ACTIVE_MAX_PENDING", Integer.class, 100_000),
+        environment.getProperty("LAST_ACTIVE_FLUSH_MILLIS", Long.class, 5000L),
+        dropped);
+    Gauge.builder("session.last_active.pending", pending, WriteBehindBuffer::size)
+        .description("lastActive updates waiting to be flushed")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Record the latest activity of a session without blocking. Older pending values are overwritten.
+   * @param sessionId session identifier
+   * @param lastActive activity timestamp in epoch milliseconds
+   */
+  public void record(String sessionId, long lastActive) {
+    pending.add(sessionId, lastActive);
+  }
+
+  /**
+   * Drop any pending update for a session that is being deleted.
+   * @param sessionId session identifier
+   */
+  public void discard(String sessionId) {
+    pending.remove(sessionId);
+  }
+
+  /**
+   * Write all pending timestamps in one pipeline. Sessions whose hash no longer exists are skipped.
+   */
+  public void flush() {
+    pending.flush();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    pending.shutdown();
+  }
+
+  private void writeAll(Map<String, Long> batch) {
+    List<byte[]> keys = new ArrayList<>(batch.size());
+    List<byte[]> values = new ArrayList<>(batch.size());
+    batch.forEach((sessionId, lastActive) -> {
+      keys.add(("session:" + sessionId).getBytes(StandardCharsets.UTF_8));
+      values.add(Long.toString(lastActive).getBytes(StandardCharsets.UTF_8));
+    });
+    try {
+      loadScript();
+      stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+        evalAll(connection, keys, values);
+        return null;
+      });
+    } catch (RuntimeException e) {
+      scriptLoaded = false;
+      throw e;
+    }
+  }
+
+  private void loadScript() {
+    if (!scriptLoaded) {
+      byte[] script = UPDATE_IF_EXISTS.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+      stringRedisTemplate.execute((RedisCallback<String>) connection ->
+          connection.scriptingCommands().scriptLoad(script));
+      scriptLoaded = true;
+    }
+  }
+
+  private void evalAll(RedisConnection connection, List<byte[]> keys, List<byte[]> values) {
+    String sha = UPDATE_IF_EXISTS.getSha1();
+    for (int i = 0; i < keys.size(); i++) {
+      connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1, keys.get(i), values.get(i), ttlMillis);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.cluster.NodeIdentity;
+import com.bravos.parentalcontrol.repository.BlockDeadlineRepository;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * One-time migration of the JDK-serialized block deadlines written by older releases.
+ * <p>
+ * Runs in the background once the application is ready, unless LEGACY_KEY_MIGRATION is off. The
+ * keyspace is walked with SCAN for the old key pattern and every old key found is moved; a key
+ * already written under its new name wins. A lease makes sure only one node runs it at a time,
+ * and is only released by the node holding it, so a run that outlives the lease never frees
+ * another node's. A marker written on completion stops later starts from scanning again. A node
+ * that dies mid-run leaves no marker, so the next start picks the work up again.
+ */
+@Slf4j
+@Component
+public class LegacyKeyMigration {
+  static final String DONE_KEY = "migration:legacy_keys:done";
+  private static final String LEASE_KEY = "migration:legacy_keys:lease";
+  private static final Duration LEASE = Duration.ofMinutes(10);
+  private static final int BATCH_SIZE = 500;
+  private static final long SCAN_TIMEOUT_SECONDS = 10;
+
+  private static final RedisScript<Long> RELEASE = RedisScript.of("""
+      if redis.call('GET', KEYS[1]) == ARGV[1] then
+        return redis.call('DEL', KEYS[1])
+      end
+      return 0
+      """, Long.class);
+
+  private final BlockDeadlineRepository blockDeadlineRepository;
+  private final StringRedisTemplate stringRedisTemplate;
+  private final NodeIdentity nodeIdentity;
+  private final boolean enabled;
+
+  public LegacyKeyMigration(BlockDeadlineRepository blockDeadlineRepository,
+                            StringRedisTemplate stringRedisTemplate,
+                            NodeIdentity nodeIdentity,
+                            Environment environment) {
+    this.blockDeadlineRepository = blockDeadlineRepository;
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.nodeIdentity = nodeIdentity;
+    this.enabled = environment.getProperty("LEGACY_KEY_MIGRATION", Boolean.class, true);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (enabled) {
+      Thread.ofVirtual().name("legacy-key-migration").start(this::runQuietly);
+    }
+  }
+
+  /**
+   * Migrate old keys unless it has been done already or another node is doing it.
+   * @return number of keys migrated
+   */
+  public int run() {
+    if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(DONE_KEY))
+        || !Boolean.TRUE.equals(
+            stringRedisTemplate.opsForValue().setIfAbsent(LEASE_KEY, nodeIdentity.getId(), LEASE))) {
+      return 0;
+    }
+    int migrated = 0;
+    try {
+      migrated += forEachKeyBatch(new ScanArgs().match(BlockDeadlineRepository.legacyKeyPattern()),
+          blockDeadlineRepository::migrateLegacy);
+      stringRedisTemplate.opsForValue().set(DONE_KEY, Long.toString(System.currentTimeMillis()));
+    } finally {
+      stringRedisTemplate.execute(RELEASE, List.of(LEASE_KEY), nodeIdentity.getId());
+    }
+    return migrated;
+  }
+
+  private void runQuietly() {
+    try {
+      int migrated = run();
+      if (migrated > 0) {
+        log.info("Migrated {} keys from the legacy format", migrated);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to migrate legacy keys: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * SCAN the keyspace and hand every step's keys to {@code migrate}. On a cluster, Lettuce walks
+   * every primary in turn behind the same cursor.
+   */
+  private int forEachKeyBatch(ScanArgs args, ToIntFunction<List<byte[]>> migrate) {
+    args.limit(BATCH_SIZE);
+    int migrated = 0;
+    ScanCursor cursor = ScanCursor.INITIAL;
+    do {
+      ScanCursor from = cursor;
+      KeyScanCursor<byte[]> step = stringRedisTemplate.execute((RedisCallback<KeyScanCursor<byte[]>>) connection -> {
+        @SuppressWarnings("unchecked")
+        RedisClusterAsyncCommands<byte[], byte[]> commands =
+            (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+        return LettuceFutures.awaitOrCancel(commands.scan(from, args), SCAN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      });
+      migrated += migrate.applyAsInt(step.getKeys());
+      cursor = step;
+    } while (!cursor.isFinished());
+    return migrated;
+  }
+}
@@ -0,0 +1,318 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.dto.response.SessionDelta;
+import com.bravos.parentalcontrol.dto.response.SessionPage;
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live feed of session changes for parent dashboards, served as server-sent events.
+ * <p>
+ * Each node coalesces its own changes for FEED_COALESCE_MILLIS, keeping only the latest change
+ * per session and per device, and publishes the batch as one JSON array on a pub/sub channel.
+ * Every node relays what it receives to its own subscribers, so a dashboard sees changes made on
+ * any node. A subscriber first receives the current sessions as {@code snapshot} pages read from
+ * the listing index, then {@code ready}, then one {@code delta} event per batch.
+ * <p>
+ * lastActive changes come with every pong, so they are only collected while some node has a
+ * subscriber: such a node keeps a short-lived watch key alive, and every node checks for it once
+ * per batch. The other changes are rare and always published.
+ * <p>
+ * Each subscriber has its own queue of FEED_CLIENT_QUEUE_LIMIT batches and its own virtual-thread
+ * writer, so a slow dashboard only delays itself. One whose queue overflows is marked closed, and
+ * its writer disconnects it; it can reconnect for a fresh snapshot. Only the writer ever touches
+ * the emitter.
+ */
+@Slf4j
+@Component
+public class SessionFeed implements MessageListener {
+  public static final String CHANNEL = "session_feed";
+  static final String WATCH_KEY = "session_feed:watched";
+  private static final String WAKE_UP = "";
+  private static final int SNAPSHOT_PAGE_SIZE = 200;
+
+  private record Pending(long sequence, SessionDelta delta) {
+  }
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final SessionIndexRepository sessionIndexRepository;
+  private final JsonMapper jsonMapper;
+  private final long timeoutMillis;
+  private final long keepaliveMillis;
+  private final int queueLimit;
+  private final Duration watchTtl;
+  private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+  private final AtomicLong sequence = new AtomicLong();
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService publishScheduler = Executors.newSingleThreadScheduledExecutor();
+  private final Counter slowDisconnects;
+  private volatile boolean watched;
+
+  public SessionFeed(StringRedisTemplate stringRedisTemplate,
+                     SessionIndexRepository sessionIndexRepository,
+                     JsonMapper jsonMapper,
+                     RedisMessageListenerContainer listenerContainer,
+                     Environment environment,
+                     MeterRegistry meterRegistry) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.sessionIndexRepository = sessionIndexRepository;
+    this.jsonMapper = jsonMapper;
+    this.timeoutMillis = environment.getProperty("FEED_TIMEOUT_MILLIS", Long.class, 1_800_000L);
+    this.keepaliveMillis = environment.getProperty("FEED_KEEPALIVE_MILLIS", Long.class, 15_000L);
+    this.queueLimit = environment.getProperty("FEED_CLIENT_QUEUE_LIMIT", Integer.class, 256);
+    long coalesceMillis = environment.getProperty("FEED_COALESCE_MILLIS", Long.class, 500L);
+    this.watchTtl = Duration.ofMillis(Math.max(1000L, 4 * coalesceMillis));
+    this.slowDisconnects = Counter.builder("session.feed.slow_disconnects")
+        .description("Feed subscribers disconnected because they fell behind")
+        .register(meterRegistry);
+    Gauge.builder("session.feed.subscribers", subscribers, Set::size)
+        .description("Feed subscribers connected to this node")
+        .register(meterRegistry);
+    listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    publishScheduler.scheduleWithFixedDelay(this::publishQuietly, coalesceMillis, coalesceMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  public void created(Session session) {
+    add("s:" + session.getId(), SessionDelta.builder()
+        .type(SessionDelta.Type.CREATED)
+        .sessionId(session.getId())
+        .deviceId(session.getDeviceId())
+        .session(session)
+        .build());
+  }
+
+  public void closed(String sessionId, @Nullable String deviceId) {
+    add("s:" + sessionId, SessionDelta.builder()
+        .type(SessionDelta.Type.CLOSED)
+        .sessionId(sessionId)
+        .deviceId(deviceId)
+        .build());
+  }
+
+  public void lastActive(String sessionId, long lastActive) {
+    if (!watched) {
+      return;
+    }
+    add("s:" + sessionId, SessionDelta.builder()
+        .type(SessionDelta.Type.LAST_ACTIVE)
+        .sessionId(sessionId)
+        .lastActive(lastActive)
+        .build());
+  }
+
+  public void granted(String deviceId, int seconds) {
+    add("d:" + deviceId, SessionDelta.builder()
+        .type(SessionDelta.Type.GRANTED).deviceId(deviceId).seconds(seconds).build());
+  }
+
+  public void blocked(String deviceId, int seconds) {
+    add("d:" + deviceId, SessionDelta.builder()
+        .type(SessionDelta.Type.BLOCKED).deviceId(deviceId).seconds(seconds).build());
+  }
+
+  /**
+   * Open a feed for a dashboard. The snapshot is written by the subscriber's own writer.
+   * @return the event stream
+   */
+  public SseEmitter subscribe() {
+    SseEmitter emitter = new SseEmitter(timeoutMillis);
+    Subscriber subscriber = new Subscriber(emitter);
+    emitter.onCompletion(subscriber::close);
+    emitter.onTimeout(subscriber::close);
+    emitter.onError(error -> subscriber.close());
+    subscribers.add(subscriber);
+    watchQuietly();
+    Thread.ofVirtual().name("session-feed").start(subscriber::run);
+    return emitter;
+  }
+
+  /**
+   * Publish the changes collected since the last call as one batch.
+   */
+  public synchronized void publish() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    List<Pending> batch = new ArrayList<>(pending.size());
+    for (String key : new ArrayList<>(pending.keySet())) {
+      Pending change = pending.remove(key);
+      if (change != null) {
+        batch.add(change);
+      }
+    }
+    batch.sort(Comparator.comparingLong(Pending::sequence));
+    String json = jsonMapper.writeValueAsString(batch.stream().map(Pending::delta).toList());
+    stringRedisTemplate.convertAndSend(CHANNEL, json);
+  }
+
+  @Override
+  public void onMessage(@NonNull Message message, byte @Nullable [] pattern) {
+    String json = new String(message.getBody(), StandardCharsets.UTF_8);
+    for (Subscriber subscriber : subscribers) {
+      subscriber.offer(json);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    publishScheduler.shutdownNow();
+    publishQuietly();
+    subscribers.forEach(Subscriber::end);
+  }
+
+  private void add(String key, SessionDelta delta) {
+    pending.merge(key, new Pending(sequence.incrementAndGet(), delta), SessionFeed::coalesce);
+  }
+
+  /**
+   * The later change wins, except that a lastActive change folds into a creation that has not
+   * been published yet.
+   */
+  private static Pending coalesce(Pending earlier, Pending later) {
+    SessionDelta previous = earlier.delta();
+    if (previous.getType() == SessionDelta.Type.CREATED && later.delta().getType() == SessionDelta.Type.LAST_ACTIVE) {
+      Session session = previous.getSession();
+      Session updated = Session.builder()
+          .id(session.getId())
+          .deviceName(session.getDeviceName())
+          .deviceId(session.getDeviceId())
+          .ipAddress(session.getIpAddress())
+          .nodeId(session.getNodeId())
+          .createdAt(session.getCreatedAt())
+          .lastActive(later.delta().getLastActive())
+          .build();
+      return new Pending(earlier.sequence(), previous.toBuilder().session(updated).build());
+    }
+    return later;
+  }
+
+  private void publishQuietly() {
+    watchQuietly();
+    try {
+      publish();
+    } catch (RuntimeException e) {
+      log.warn("Failed to publish session feed changes: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Renew the watch key if this node has subscribers, otherwise check whether another node does.
+   */
+  private void watchQuietly() {
+    try {
+      if (!subscribers.isEmpty()) {
+        stringRedisTemplate.opsForValue().set(WATCH_KEY, "1", watchTtl);
+        watched = true;
+      } else {
+        watched = Boolean.TRUE.equals(stringRedisTemplate.hasKey(WATCH_KEY));
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to check for session feed subscribers: {}", e.getMessage());
+    }
+  }
+
+  private final class Subscriber {
+    private final SseEmitter emitter;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(queueLimit);
+    private volatile boolean closed;
+    private volatile boolean ending;
+
+    private Subscriber(SseEmitter emitter) {
+      this.emitter = emitter;
+    }
+
+    private void offer(String json) {
+      if (!closed && !queue.offer(json)) {
+        slowDisconnects.increment();
+        log.debug("Disconnecting a session feed subscriber that fell {} batches behind", queueLimit);
+        end();
+      }
+    }
+
+    /**
+     * Stop delivering and have the writer complete the emitter. A full queue needs no wake-up,
+     * since its writer is busy sending.
+     */
+    private void end() {
+      ending = true;
+      close();
+      queue.offer(WAKE_UP);
+    }
+
+    private void close() {
+      closed = true;
+      subscribers.remove(this);
+    }
+
+    private void run() {
+      try {
+        sendSnapshot();
+        while (!closed) {
+          String json = queue.poll(keepaliveMillis, TimeUnit.MILLISECONDS);
+          if (closed) {
+            break;
+          }
+          if (json == null) {
+            emitter.send(SseEmitter.event().comment("keepalive"));
+          } else {
+            emitter.send(SseEmitter.event().name("delta").data(json));
+          }
+        }
+        if (ending) {
+          emitter.complete();
+        }
+      } catch (IOException | IllegalStateException e) {
+        log.debug("Session feed subscriber went away: {}", e.getMessage());
+        emitter.completeWithError(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        emitter.complete();
+      } finally {
+        close();
+      }
+    }
+
+    private void sendSnapshot() throws IOException {
+      String cursor = null;
+      do {
+        SessionPage page = sessionIndexRepository.findPage(cursor, SNAPSHOT_PAGE_SIZE);
+        emitter.send(SseEmitter.event().name("snapshot").data(jsonMapper.writeValueAsString(page.getItems())));
+        cursor = page.getNextCursor();
+      } while (cursor != null && !closed);
+      emitter.send(SseEmitter.event().name("ready").data(""));
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.cluster.NodeIdentity;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * One-time backfill of the createdAt listing index for sessions saved before it existed.
+ * <p>
+ * Runs in the background once the application is ready. The member set is walked with SSCAN
+ * and every session missing from the index is added with ZADD NX. A lease makes sure only one
+ * node runs it at a time and is only released by its holder, and a marker written on completion
+ * stops later starts from repeating it. A node that dies mid-run leaves no marker, so the next
+ * start picks the work up again.
+ */
+@Slf4j
+@Component
+public class SessionIndexBackfill {
+  static final String DONE_KEY = SessionIndexRepository.CREATED_INDEX_KEY + ":backfilled";
+  private static final String LEASE_KEY = SessionIndexRepository.CREATED_INDEX_KEY + ":backfill_lease";
+  private static final Duration LEASE = Duration.ofMinutes(10);
+  private static final int BATCH_SIZE = 500;
+
+  private static final RedisScript<Long> RELEASE = RedisScript.of("""
+      if redis.call('GET', KEYS[1]) == ARGV[1] then
+        return redis.call('DEL', KEYS[1])
+      end
+      return 0
+      """, Long.class);
+
+  private final SessionIndexRepository sessionIndexRepository;
+  private final StringRedisTemplate stringRedisTemplate;
+  private final NodeIdentity nodeIdentity;
+
+  public SessionIndexBackfill(SessionIndexRepository sessionIndexRepository,
+                              StringRedisTemplate stringRedisTemplate,
+                              NodeIdentity nodeIdentity) {
+    this.sessionIndexRepository = sessionIndexRepository;
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.nodeIdentity = nodeIdentity;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    Thread.ofVirtual().name("session-index-backfill").start(this::runQuietly);
+  }
+
+  /**
+   * Backfill the index unless it has been done already or another node is doing it.
+   * @return number of sessions added to the index
+   */
+  public int run() {
+    if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(DONE_KEY))
+        || !Boolean.TRUE.equals(
+            stringRedisTemplate.opsForValue().setIfAbsent(LEASE_KEY, nodeIdentity.getId(), LEASE))) {
+      return 0;
+    }
+    int[] added = {0};
+    try {
+      sessionIndexRepository.forEachIdBatch(BATCH_SIZE,
+          ids -> added[0] += sessionIndexRepository.addMissingToCreatedIndex(ids));
+      stringRedisTemplate.opsForValue().set(DONE_KEY, Long.toString(System.currentTimeMillis()));
+    } finally {
+      stringRedisTemplate.execute(RELEASE, List.of(LEASE_KEY), nodeIdentity.getId());
+    }
+    return added[0];
+  }
+
+  private void runQuietly() {
+    try {
+      int added = run();
+      if (added > 0) {
+        log.info("Added {} existing sessions to the listing index", added);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to backfill the session listing index: {}", e.getMessage());
+    }
+  }
+}
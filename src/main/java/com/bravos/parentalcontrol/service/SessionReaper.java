@@ -0,0 +1,248 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.cluster.NodeIdentity;
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository.IndexEntry;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository.ScanBatch;
+import com.bravos.parentalcontrol.websocket.WebSocketSessionManager;
+import io.lettuce.core.ScanCursor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes sessions left behind by nodes that died without closing their sockets.
+ * <p>
+ * Every node keeps {@code node:<nodeId>:alive} refreshed. One node at a time holds the reaper
+ * lease and, each tick, takes a single cursor step of at most SESSION_REAPER_BATCH_SIZE entries:
+ * first over the session member set, removing sessions whose hash has expired, whose owner is
+ * gone, or which claim this node but have no socket here (left over from before a restart),
+ * then over the deviceId index sets, dropping members whose session no longer exists. The
+ * cursor survives between ticks, so a pass over a large keyspace is spread out instead of run
+ * as one burst. A session whose socket is open on this node is never reaped, even if its hash
+ * has expired; it is cleaned up when the socket closes.
+ * <p>
+ * Only the node a session claims can tell that its socket is gone, so a lease holder cannot
+ * reap stale sessions of another live node. Once the application is ready, every node therefore
+ * takes one extra pass over the member set at the same pace, removing only the sessions that
+ * claim it and have no socket here, such as those left behind when it was killed and restarted
+ * under the same NODE_ID.
+ */
+@Slf4j
+@Component
+public class SessionReaper {
+  private static final String LEASE_KEY = "session_reaper:lease";
+  private static final int LEASE_TICKS = 5;
+
+  private static final RedisScript<Long> ACQUIRE = RedisScript.of("""
+      local owner = redis.call('GET', KEYS[1])
+      if owner and owner ~= ARGV[1] then
+        return 0
+      end
+      redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+      return 1
+      """, Long.class);
+
+  private enum Phase {
+    SESSION_SET, DEVICE_INDEX
+  }
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final SessionIndexRepository sessionIndexRepository;
+  private final NodeIdentity nodeIdentity;
+  private final WebSocketSessionManager webSocketSessionManager;
+  private final long tickMillis;
+  private final int batchSize;
+  private final Duration livenessTtl;
+  private final ScheduledExecutorService reaperScheduler = Executors.newSingleThreadScheduledExecutor();
+  private final Counter reapedSessions;
+  private final Counter reapedIndexEntries;
+
+  private Phase phase = Phase.SESSION_SET;
+  private ScanCursor cursor;
+  private volatile boolean reconciling;
+  private ScanCursor reconcileCursor;
+  private int reconciled;
+
+  public SessionReaper(StringRedisTemplate stringRedisTemplate,
+                       SessionIndexRepository sessionIndexRepository,
+                       NodeIdentity nodeIdentity,
+                       WebSocketSessionManager webSocketSessionManager,
+                       Environment environment,
+                       MeterRegistry meterRegistry) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.sessionIndexRepository = sessionIndexRepository;
+    this.nodeIdentity = nodeIdentity;
+    this.webSocketSessionManager = webSocketSessionManager;
+    this.tickMillis = environment.getProperty("SESSION_REAPER_TICK_MILLIS", Long.class, 1000L);
+    this.batchSize = environment.getProperty("SESSION_REAPER_BATCH_SIZE", Integer.class, 100);
+    this.livenessTtl = Duration.ofMillis(environment.getProperty("NODE_LIVENESS_TTL_MILLIS", Long.class, 30_000L));
+    this.reapedSessions = Counter.builder("session.reaped")
+        .description("Orphaned entries removed by the session reaper")
+        .tag("index", "sessions")
+        .register(meterRegistry);
+    this.reapedIndexEntries = Counter.builder("session.reaped")
+        .description("Orphaned entries removed by the session reaper")
+        .tag("index", "device_index")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    reaperScheduler.scheduleWithFixedDelay(this::tickQuietly, 0, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Start the pass that removes sessions this node left behind before a restart.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void reconcileLocal() {
+    reconciling = true;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    reaperScheduler.shutdownNow();
+  }
+
+  /**
+   * Refresh this node's liveness and, if it holds the lease, take one reaper step.
+   */
+  void tick() {
+    stringRedisTemplate.opsForValue().set(NodeIdentity.livenessKeyOf(nodeIdentity.getId()), "1", livenessTtl);
+    if (reconciling) {
+      reconcileStep();
+    }
+    Long acquired = stringRedisTemplate.execute(ACQUIRE, List.of(LEASE_KEY),
+        nodeIdentity.getId(), Long.toString(tickMillis * LEASE_TICKS));
+    if (acquired == null || acquired == 0) {
+      phase = Phase.SESSION_SET;
+      cursor = null;
+      return;
+    }
+    ScanBatch batch = switch (phase) {
+      case SESSION_SET -> {
+        ScanBatch ids = sessionIndexRepository.scanIds(cursor, batchSize);
+        reapedSessions.increment(reapSessions(ids.items()));
+        yield ids;
+      }
+      case DEVICE_INDEX -> {
+        ScanBatch keys = sessionIndexRepository.scanDeviceIndexKeys(cursor, batchSize);
+        reapedIndexEntries.increment(sessionIndexRepository.removeDanglingDeviceIndexEntries(keys.items()));
+        yield keys;
+      }
+    };
+    cursor = batch.next();
+    if (cursor == null) {
+      phase = phase == Phase.SESSION_SET ? Phase.DEVICE_INDEX : Phase.SESSION_SET;
+    }
+  }
+
+  private void reconcileStep() {
+    ScanBatch ids = sessionIndexRepository.scanIds(reconcileCursor, batchSize);
+    List<Session> stale = new ArrayList<>();
+    for (IndexEntry entry : sessionIndexRepository.findIndexEntries(ids.items())) {
+      if (!entry.expired() && isStaleLocal(entry)) {
+        stale.add(Session.builder().id(entry.sessionId()).deviceId(entry.deviceId()).build());
+      }
+    }
+    int removed = sessionIndexRepository.deleteAll(stale);
+    reapedSessions.increment(removed);
+    reconciled += removed;
+    reconcileCursor = ids.next();
+    if (reconcileCursor == null) {
+      reconciling = false;
+      if (reconciled > 0) {
+        log.info("Removed {} sessions left behind by a previous run of this node", reconciled);
+      }
+      reconciled = 0;
+    }
+  }
+
+  private int reapSessions(List<String> ids) {
+    List<IndexEntry> entries = sessionIndexRepository.findIndexEntries(ids);
+    Set<String> owners = new HashSet<>();
+    for (IndexEntry entry : entries) {
+      if (entry.nodeId() != null && !nodeIdentity.isLocal(entry.nodeId())) {
+        owners.add(entry.nodeId());
+      }
+    }
+    Set<String> deadOwners = findDead(owners);
+    List<Session> orphans = new ArrayList<>();
+    for (IndexEntry entry : entries) {
+      if (isOpenHere(entry)) {
+        continue;
+      }
+      if (entry.expired() || deadOwners.contains(entry.nodeId()) || isStaleLocal(entry)) {
+        orphans.add(Session.builder().id(entry.sessionId()).deviceId(entry.deviceId()).build());
+      }
+    }
+    if (orphans.isEmpty()) {
+      return 0;
+    }
+    sessionIndexRepository.deleteAll(orphans);
+    log.info("Reaped {} orphaned sessions", orphans.size());
+    return orphans.size();
+  }
+
+  private boolean isStaleLocal(IndexEntry entry) {
+    return nodeIdentity.isLocal(entry.nodeId()) && !isOpenHere(entry);
+  }
+
+  private boolean isOpenHere(IndexEntry entry) {
+    return webSocketSessionManager.get(entry.sessionId()) != null;
+  }
+
+  private Set<String> findDead(Set<String> nodeIds) {
+    Set<String> dead = new HashSet<>();
+    if (nodeIds.isEmpty()) {
+      return dead;
+    }
+    List<String> ordered = new ArrayList<>(nodeIds);
+    List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      checkLiveness(connection, ordered);
+      return null;
+    });
+    for (int i = 0; i < ordered.size(); i++) {
+      if (Boolean.FALSE.equals(exists.get(i))) {
+        dead.add(ordered.get(i));
+      }
+    }
+    return dead;
+  }
+
+  private void checkLiveness(RedisConnection connection, List<String> nodeIds) {
+    for (String nodeId : nodeIds) {
+      connection.keyCommands().exists(NodeIdentity.livenessKeyOf(nodeId).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private void tickQuietly() {
+    try {
+      tick();
+    } catch (RuntimeException e) {
+      log.warn("Session reaper step failed: {}", e.getMessage());
+    }
+  }
+}
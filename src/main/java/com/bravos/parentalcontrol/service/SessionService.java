@@ -1,26 +1,75 @@
 package com.bravos.parentalcontrol.service;
 
+import com.bravos.parentalcontrol.cluster.CommandRouter;
+import com.bravos.parentalcontrol.cluster.NodeIdentity;
 import com.bravos.parentalcontrol.dto.request.NewSessionRequest;
+import com.bravos.parentalcontrol.dto.response.AuditEvent;
+import com.bravos.parentalcontrol.dto.response.BulkDeleteResult;
+import com.bravos.parentalcontrol.dto.response.SessionPage;
 import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
 import com.bravos.parentalcontrol.repository.SessionRepository;
 import com.bravos.parentalcontrol.util.DateTimeHelper;
 import com.bravos.parentalcontrol.websocket.WebSocketSessionManager;
+import com.bravos.parentalcontrol.websocket.protocol.ServerCommand;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 public class SessionService {
+  public static final int MAX_PAGE_SIZE = 500;
+  private static final int DELETE_BATCH_SIZE = 500;
 
   private final SessionRepository sessionRepository;
+  private final SessionIndexRepository sessionIndexRepository;
   private final WebSocketSessionManager webSocketSessionManager;
+  private final CommandRouter commandRouter;
+  private final NodeIdentity nodeIdentity;
+  private final LastActiveWriter lastActiveWriter;
+  private final UsageLedger usageLedger;
+  private final AuditLog auditLog;
+  private final SessionFeed sessionFeed;
+  private final ExecutorService closeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+  private final long closeDeadlineNanos;
 
-  public SessionService(SessionRepository sessionRepository, WebSocketSessionManager webSocketSessionManager) {
+  public SessionService(SessionRepository sessionRepository,
+                        SessionIndexRepository sessionIndexRepository,
+                        WebSocketSessionManager webSocketSessionManager,
+                        CommandRouter commandRouter,
+                        NodeIdentity nodeIdentity,
+                        LastActiveWriter lastActiveWriter,
+                        UsageLedger usageLedger,
+                        AuditLog auditLog,
+                        SessionFeed sessionFeed,
+                        Environment environment) {
     this.sessionRepository = sessionRepository;
+    this.sessionIndexRepository = sessionIndexRepository;
     this.webSocketSessionManager = webSocketSessionManager;
+    this.commandRouter = commandRouter;
+    this.nodeIdentity = nodeIdentity;
+    this.lastActiveWriter = lastActiveWriter;
+    this.usageLedger = usageLedger;
+    this.auditLog = auditLog;
+    this.sessionFeed = sessionFeed;
+    this.closeDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(
+        environment.getProperty("SESSION_CLOSE_DEADLINE_MILLIS", Long.class, 5000L));
   }
 
   public Session createNewSession(NewSessionRequest request, WebSocketSession webSocketSession) {
@@ -30,9 +79,19 @@ public class SessionService {
         .deviceName(request.getDeviceName())
         .deviceId(request.getDeviceId())
         .ipAddress(request.getIpAddress())
+        .nodeId(nodeIdentity.getId())
         .createdAt(DateTimeHelper.currentTimeMillis())
         .build();
-    return sessionRepository.save(session);
+    Session saved = sessionRepository.save(session);
+    sessionIndexRepository.add(saved);
+    usageLedger.start(saved.getId(), saved.getDeviceId(), saved.getCreatedAt());
+    sessionFeed.created(saved);
+    String previousId = sessionIndexRepository.bindDevice(saved.getDeviceId(), saved.getId(), nodeIdentity.getId());
+    if (previousId != null && !previousId.equals(saved.getId())) {
+      sessionRepository.findById(previousId).ifPresent(previous ->
+          deleteSessions(List.of(previous), System.nanoTime() + closeDeadlineNanos));
+    }
+    return saved;
   }
 
   public List<Session> getAllSessions() {
@@ -41,22 +100,150 @@ public class SessionService {
     return sessions;
   }
 
+  /**
+   * Get one page of sessions, newest first.
+   * @param cursor cursor returned with the previous page, or null for the first page
+   * @param limit page size
+   * @return the page of sessions
+   */
+  public SessionPage getSessionsPage(String cursor, int limit) {
+    if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    return sessionIndexRepository.findPage(cursor, limit);
+  }
+
   public void deleteSession(String sessionId) {
-    webSocketSessionManager.remove(sessionId);
-    sessionRepository.deleteById(sessionId);
+    Session session = sessionRepository.findById(sessionId).orElse(null);
+    if (session == null) {
+      lastActiveWriter.discard(sessionId);
+      webSocketSessionManager.remove(sessionId);
+      sessionIndexRepository.remove(sessionId);
+      return;
+    }
+    deleteSessions(List.of(session), System.nanoTime() + closeDeadlineNanos);
+  }
+
+  /**
+   * Clean up after a socket closed on its own. Sessions whose socket was closed by a delete
+   * are no longer registered and have already been removed, so nothing is written twice.
+   * @param sessionId session identifier
+   * @param deviceId device the session belonged to
+   */
+  public void releaseSession(String sessionId, String deviceId) {
+    usageLedger.end(sessionId, DateTimeHelper.currentTimeMillis());
+    if (webSocketSessionManager.remove(sessionId)) {
+      lastActiveWriter.discard(sessionId);
+      sessionIndexRepository.remove(sessionId);
+      sessionIndexRepository.unbindDevice(deviceId, sessionId);
+      sessionRepository.deleteById(sessionId);
+      sessionFeed.closed(sessionId, deviceId);
+    }
   }
 
-  public void deleteAllSessions() {
-    List<Session> sessions = getAllSessions();
+  /**
+   * Delete every session. Sessions are processed in batches read with SSCAN; each batch is
+   * removed in one pipeline while its sockets are closed concurrently.
+   * @return how many sessions were removed and how many sockets failed to close in time
+   */
+  public BulkDeleteResult deleteAllSessions() {
+    long deadline = System.nanoTime() + closeDeadlineNanos;
+    List<BulkDeleteResult> results = new ArrayList<>();
+    sessionIndexRepository.forEachIdBatch(DELETE_BATCH_SIZE,
+        ids -> results.add(deleteSessions(findAllIncludingMissing(ids), deadline)));
+    return results.stream().reduce(new BulkDeleteResult(0, 0), BulkDeleteResult::plus);
+  }
+
+  /**
+   * Close sockets held by this node for a shutdown and remove their sessions in one pipeline.
+   * Sockets are closed with {@code 1012 Service Restart}.
+   * @param sessionIds sessions held by this node
+   * @return number of sessions removed from Redis
+   */
+  public int drainSessions(List<String> sessionIds) {
+    List<Session> sessions = findAllIncludingMissing(sessionIds);
     for (Session session : sessions) {
-      deleteSession(session.getId());
+      lastActiveWriter.discard(session.getId());
+      webSocketSessionManager.remove(session.getId(), CloseStatus.SERVICE_RESTARTED);
+      sessionFeed.closed(session.getId(), session.getDeviceId());
     }
+    return sessionIndexRepository.deleteAll(sessions);
   }
 
-  public void deleteSessionsByDeviceId(String deviceId) {
+  private List<Session> findAllIncludingMissing(List<String> ids) {
+    List<Session> sessions = sessionIndexRepository.findAllById(ids);
+    Set<String> found = new HashSet<>();
+    sessions.forEach(session -> found.add(session.getId()));
+    for (String id : ids) {
+      if (!found.contains(id)) {
+        sessions.add(Session.builder().id(id).build());
+      }
+    }
+    return sessions;
+  }
+
+  public BulkDeleteResult deleteSessionsByDeviceId(String deviceId) {
     List<Session> sessions = sessionRepository.findByDeviceId(deviceId);
+    return deleteSessions(sessions, System.nanoTime() + closeDeadlineNanos);
+  }
+
+  private BulkDeleteResult deleteSessions(List<Session> sessions, long deadline) {
+    if (sessions.isEmpty()) {
+      return new BulkDeleteResult(0, 0);
+    }
     for (Session session : sessions) {
-      deleteSession(session.getId());
+      lastActiveWriter.discard(session.getId());
+      auditLog.publish(AuditEvent.Type.SESSION_DELETED, session.getDeviceId(), session.getId(), null);
+      sessionFeed.closed(session.getId(), session.getDeviceId());
+    }
+    int failed = closeAll(sessions, deadline);
+    int removed = sessionIndexRepository.deleteAll(sessions);
+    return new BulkDeleteResult(removed, failed);
+  }
+
+  private int closeAll(List<Session> sessions, long deadline) {
+    List<Callable<Void>> tasks = new ArrayList<>(sessions.size());
+    for (Session session : sessions) {
+      tasks.add(() -> {
+        if (!webSocketSessionManager.remove(session.getId())) {
+          closeRemote(session);
+        }
+        return null;
+      });
+    }
+    List<Future<Void>> futures;
+    try {
+      futures = closeExecutor.invokeAll(tasks, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return sessions.size();
+    }
+    int failed = 0;
+    for (Future<Void> future : futures) {
+      if (future.isCancelled()) {
+        failed++;
+        continue;
+      }
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        failed++;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failed++;
+      }
+    }
+    return failed;
+  }
+
+  private void closeRemote(Session session) {
+    if (session.getNodeId() == null || nodeIdentity.isLocal(session.getNodeId())) {
+      return;
+    }
+    try {
+      commandRouter.close(session);
+    } catch (IllegalStateException e) {
+      log.debug("Skipping remote close for session {}: {}", session.getId(), e.getMessage());
     }
   }
 
@@ -64,14 +251,19 @@ public class SessionService {
     if (lastActiveTime == null) {
       lastActiveTime = DateTimeHelper.currentTimeMillis();
     }
-    Session session = sessionRepository.findById(sessionId).orElse(null);
-    if (session != null) {
-      session.setLastActive(lastActiveTime);
-      sessionRepository.save(session);
-    }
+    lastActiveWriter.record(sessionId, lastActiveTime);
+    usageLedger.heartbeat(sessionId, lastActiveTime);
+    sessionFeed.lastActive(sessionId, lastActiveTime);
   }
 
   public Session getSessionByDeviceId(String deviceId) {
+    String sessionId = sessionIndexRepository.findSessionIdByDevice(deviceId);
+    if (sessionId != null) {
+      Session session = sessionRepository.findById(sessionId).orElse(null);
+      if (session != null) {
+        return session;
+      }
+    }
     List<Session> sessions = sessionRepository.findByDeviceId(deviceId);
     if (sessions.isEmpty()) {
       return null;
@@ -79,8 +271,16 @@ public class SessionService {
     return sessions.getFirst();
   }
 
-  public void sendMessageToSession(String sessionId, String message) {
-    webSocketSessionManager.sendMessage(sessionId, message);
+  public Map<String, Session> getSessionsByDeviceIds(List<String> deviceIds) {
+    return sessionIndexRepository.findByDeviceIds(deviceIds);
+  }
+
+  public void sendMessageToSession(Session session, ServerCommand command) {
+    commandRouter.send(session, command);
   }
 
+  @PreDestroy
+  public void shutdownCloseExecutor() {
+    closeExecutor.shutdownNow();
+  }
 }
@@ -0,0 +1,256 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.dto.response.DeviceUsage;
+import com.bravos.parentalcontrol.repository.UsageLedgerRepository;
+import com.bravos.parentalcontrol.repository.UsageLedgerRepository.DeviceDay;
+import com.bravos.parentalcontrol.repository.UsageLedgerRepository.Usage;
+import com.bravos.parentalcontrol.util.DateTimeHelper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.jspecify.annotations.Nullable;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Screen-time ledger per device and day.
+ * <p>
+ * Active time is the time a device stays connected and answers heartbeats: each pong credits the
+ * seconds since the session's previous pong (or its connect), capped at USAGE_MAX_GAP_SECONDS, and
+ * split at midnight in USAGE_TIME_ZONE. A session stops earning active time once its device
+ * reports it is blocked, and starts again when a grant is sent to it. Granted time is credited on
+ * the day it is granted. Both are O(1) merges into a {@link WriteBehindBuffer}, flushed every
+ * USAGE_FLUSH_MILLIS as one pipeline of BITFIELD increments, so Redis write load follows the flush
+ * rate, not the pong rate.
+ */
+@Component
+public class UsageLedger {
+  public static final int MAX_DEVICES = 500;
+
+  public enum Period {
+    DAY, WEEK, MONTH
+  }
+
+  private record Activity(String deviceId, long lastSeenSeconds, boolean blocked) {
+  }
+
+  private final UsageLedgerRepository usageLedgerRepository;
+  private final ZoneId zone;
+  private final long maxGapSeconds;
+  private final Map<String, Activity> activities = new ConcurrentHashMap<>();
+  private final WriteBehindBuffer<DeviceDay, Usage> pending;
+
+  public UsageLedger(UsageLedgerRepository usageLedgerRepository,
+                     Environment environment,
+                     MeterRegistry meterRegistry) {
+    this.usageLedgerRepository = usageLedgerRepository;
+    String zoneId = environment.getProperty("USAGE_TIME_ZONE");
+    this.zone = zoneId == null || zoneId.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zoneId);
+    this.maxGapSeconds = environment.getProperty("USAGE_MAX_GAP_SECONDS", Long.class, 360L);
+    Counter dropped = Counter.builder("usage.dropped")
+        .description("Device-days of usage dropped after a failed flush")
+        .register(meterRegistry);
+    this.pending = new WriteBehindBuffer<>("usage", usageLedgerRepository::incrementAll, Usage::plus,
+        environment.getProperty("USAGE_MAX_PENDING", Integer.class, 100_000),
+        environment.getProperty("USAGE_FLUSH_MILLIS", Long.class, 10_000L),
+        dropped);
+    Gauge.builder("usage.pending", pending, WriteBehindBuffer::size)
+        .description("Device-days with usage waiting to be flushed")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Start counting active time for a newly connected session.
+   * @param sessionId session identifier
+   * @param deviceId device of the session
+   * @param now connect time in epoch milliseconds
+   */
+  public void start(String sessionId, String deviceId, long now) {
+    activities.put(sessionId, new Activity(deviceId, now / 1000, false));
+  }
+
+  /**
+   * Credit the time since the session's previous heartbeat. Nothing is credited while the session
+   * is blocked.
+   * @param sessionId session identifier
+   * @param now heartbeat time in epoch milliseconds
+   */
+  public void heartbeat(String sessionId, long now) {
+    advance(sessionId, now, null);
+  }
+
+  /**
+   * Credit the time up to the block and stop counting the session until it is unblocked.
+   * @param sessionId session identifier
+   * @param now block time in epoch milliseconds
+   */
+  public void block(String sessionId, long now) {
+    advance(sessionId, now, true);
+  }
+
+  /**
+   * Start counting a blocked session again from now. A session that was not blocked is credited
+   * as on a heartbeat.
+   * @param sessionId session identifier
+   * @param now grant time in epoch milliseconds
+   */
+  public void unblock(String sessionId, long now) {
+    advance(sessionId, now, false);
+  }
+
+  /**
+   * Credit the time since the session's last heartbeat and stop counting it.
+   * @param sessionId session identifier
+   * @param now close time in epoch milliseconds
+   */
+  public void end(String sessionId, long now) {
+    Activity previous = activities.remove(sessionId);
+    if (previous != null && !previous.blocked()) {
+      creditActive(previous, now / 1000);
+    }
+  }
+
+  /**
+   * Credit granted access to the device on the current day.
+   * @param deviceId device identifier
+   * @param seconds seconds granted
+   * @param now grant time in epoch milliseconds
+   */
+  public void recordGranted(String deviceId, long seconds, long now) {
+    if (seconds > 0) {
+      add(deviceId, dayOf(now / 1000), new Usage(0, seconds));
+    }
+  }
+
+  /**
+   * Total usage of several devices over the day, ISO week or calendar month containing a date.
+   * Totals include what this node has not flushed yet; other nodes' buffers show up once flushed.
+   * @param deviceIds device identifiers
+   * @param period DAY, WEEK or MONTH, case-insensitive
+   * @param date ISO date within the period, or null for today
+   * @return usage per device, in the order given
+   */
+  public List<DeviceUsage> getUsage(List<String> deviceIds, String period, @Nullable String date) {
+    if (deviceIds == null || deviceIds.isEmpty() || deviceIds.size() > MAX_DEVICES) {
+      throw new IllegalArgumentException("Between 1 and " + MAX_DEVICES + " device ids are required");
+    }
+    LocalDate day = parseDate(date);
+    Period parsed = parsePeriod(period);
+    LocalDate from = switch (parsed) {
+      case DAY -> day;
+      case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+      case MONTH -> day.withDayOfMonth(1);
+    };
+    LocalDate to = switch (parsed) {
+      case DAY -> day;
+      case WEEK -> from.plusDays(6);
+      case MONTH -> day.withDayOfMonth(day.lengthOfMonth());
+    };
+    Map<String, Usage> totals = usageLedgerRepository.sumAll(deviceIds, from, to);
+    List<DeviceUsage> usages = new ArrayList<>(totals.size());
+    totals.forEach((deviceId, stored) -> {
+      Usage total = stored.plus(pendingUsage(deviceId, from, to));
+      usages.add(DeviceUsage.builder()
+          .deviceId(deviceId)
+          .from(from.toString())
+          .to(to.toString())
+          .activeMinutes(total.activeSeconds() / 60)
+          .grantedMinutes(total.grantedSeconds() / 60)
+          .build());
+    });
+    return usages;
+  }
+
+  /**
+   * Write all buffered usage in one pipeline.
+   */
+  public void flush() {
+    pending.flush();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    pending.shutdown();
+  }
+
+  /**
+   * Move a session's activity to now and credit the time since its last heartbeat, unless it was
+   * blocked.
+   * @param blocked the session's new state, or null to keep it
+   */
+  private void advance(String sessionId, long now, @Nullable Boolean blocked) {
+    Activity previous;
+    do {
+      previous = activities.get(sessionId);
+      if (previous == null) {
+        return;
+      }
+    } while (!activities.replace(sessionId, previous, new Activity(previous.deviceId(), now / 1000,
+        blocked != null ? blocked : previous.blocked())));
+    if (!previous.blocked()) {
+      creditActive(previous, now / 1000);
+    }
+  }
+
+  private void creditActive(Activity previous, long nowSeconds) {
+    long start = Math.max(previous.lastSeenSeconds(), nowSeconds - maxGapSeconds);
+    while (start < nowSeconds) {
+      LocalDate day = dayOf(start);
+      long dayEnd = day.plusDays(1).atStartOfDay(zone).toEpochSecond();
+      long end = Math.min(nowSeconds, dayEnd);
+      add(previous.deviceId(), day, new Usage(end - start, 0));
+      start = end;
+    }
+  }
+
+  private void add(String deviceId, LocalDate day, Usage usage) {
+    pending.add(new DeviceDay(deviceId, day), usage);
+  }
+
+  private Usage pendingUsage(String deviceId, LocalDate from, LocalDate to) {
+    Usage total = Usage.NONE;
+    for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+      Usage usage = pending.get(new DeviceDay(deviceId, day));
+      if (usage != null) {
+        total = total.plus(usage);
+      }
+    }
+    return total;
+  }
+
+  private LocalDate dayOf(long epochSeconds) {
+    return LocalDate.ofInstant(Instant.ofEpochSecond(epochSeconds), zone);
+  }
+
+  private LocalDate parseDate(@Nullable String date) {
+    if (date == null || date.isBlank()) {
+      return dayOf(DateTimeHelper.currentTimeMillis() / 1000);
+    }
+    try {
+      return LocalDate.parse(date);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid date, expected yyyy-MM-dd: " + date);
+    }
+  }
+
+  private static Period parsePeriod(String period) {
+    try {
+      return Period.valueOf(period.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid period, expected DAY, WEEK or MONTH: " + period);
+    }
+  }
+}
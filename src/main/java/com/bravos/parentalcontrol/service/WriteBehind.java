@@ -0,0 +1,69 @@
+package com.bravos.parentalcontrol.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background writer of a write-behind buffer. The write runs on its own thread every period,
+ * early when the buffer asks for it, and once more on shutdown. Writes never overlap, and a write
+ * that throws is logged and left to the next run, so callers that fill the buffer never wait on
+ * Redis or see its errors.
+ */
+@Slf4j
+final class WriteBehind {
+  private final String name;
+  private final Runnable write;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final AtomicBoolean earlyFlushQueued = new AtomicBoolean();
+
+  /**
+   * @param name what is written, for the log
+   * @param flushMillis delay between two runs
+   * @param write drains the buffer into Redis
+   */
+  WriteBehind(String name, long flushMillis, Runnable write) {
+    this.name = name;
+    this.write = write;
+    scheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queue a run on the writer thread unless one is queued already.
+   */
+  void flushSoon() {
+    if (earlyFlushQueued.compareAndSet(false, true)) {
+      try {
+        scheduler.execute(() -> {
+          earlyFlushQueued.set(false);
+          flush();
+        });
+      } catch (RejectedExecutionException e) {
+        earlyFlushQueued.set(false);
+      }
+    }
+  }
+
+  /**
+   * Run the write now on the calling thread.
+   */
+  synchronized void flush() {
+    try {
+      write.run();
+    } catch (RuntimeException e) {
+      log.warn("Failed to write {}: {}", name, e.getMessage());
+    }
+  }
+
+  /**
+   * Stop the schedule and run the write one last time.
+   */
+  void shutdown() {
+    scheduler.shutdown();
+    flush();
+  }
+}
@@ -0,0 +1,110 @@
+package com.bravos.parentalcontrol.service;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Coalescing write-behind buffer. Values added for the same key are merged in memory and written
+ * as one batch per flush, so Redis write load follows the flush rate instead of the update rate.
+ * A buffer that reaches its limit flushes early on the writer thread rather than on the caller's.
+ * A batch that fails to write is put back as far as the buffer has room, and the rest is dropped
+ * and counted, so an outage never grows the buffer without bound.
+ * @param <K> what values are merged by
+ * @param <V> buffered value
+ */
+@Slf4j
+final class WriteBehindBuffer<K, V> {
+  private final String name;
+  private final Map<K, V> pending = new ConcurrentHashMap<>();
+  private final Consumer<Map<K, V>> write;
+  private final BinaryOperator<V> merge;
+  private final int maxPending;
+  private final Counter dropped;
+  private final WriteBehind writer;
+
+  /**
+   * @param name what is buffered, for the log
+   * @param write writes one batch, throwing if it could not
+   * @param merge combines a pending value with a newer one
+   * @param maxPending keys buffered before an early flush, and kept after a failed one
+   * @param flushMillis delay between two flushes
+   * @param dropped counts values dropped after a failed flush
+   */
+  WriteBehindBuffer(String name, Consumer<Map<K, V>> write, BinaryOperator<V> merge,
+                    int maxPending, long flushMillis, Counter dropped) {
+    this.name = name;
+    this.write = write;
+    this.merge = merge;
+    this.maxPending = maxPending;
+    this.dropped = dropped;
+    this.writer = new WriteBehind(name, flushMillis, this::writePending);
+  }
+
+  /**
+   * Merge a value into the buffer without blocking.
+   */
+  void add(K key, V value) {
+    pending.merge(key, value, merge);
+    if (pending.size() >= maxPending) {
+      writer.flushSoon();
+    }
+  }
+
+  @Nullable V get(K key) {
+    return pending.get(key);
+  }
+
+  void remove(K key) {
+    pending.remove(key);
+  }
+
+  int size() {
+    return pending.size();
+  }
+
+  /**
+   * Write everything buffered so far on the calling thread.
+   */
+  void flush() {
+    writer.flush();
+  }
+
+  void shutdown() {
+    writer.shutdown();
+  }
+
+  private void writePending() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    Map<K, V> batch = new HashMap<>(pending.size());
+    for (K key : new ArrayList<>(pending.keySet())) {
+      V value = pending.remove(key);
+      if (value != null) {
+        batch.put(key, value);
+      }
+    }
+    try {
+      write.accept(batch);
+    } catch (RuntimeException e) {
+      int lost = 0;
+      for (Map.Entry<K, V> entry : batch.entrySet()) {
+        if (pending.size() < maxPending || pending.containsKey(entry.getKey())) {
+          pending.merge(entry.getKey(), entry.getValue(), merge);
+        } else {
+          lost++;
+        }
+      }
+      dropped.increment(lost);
+      log.warn("Failed to write {} {}, dropped {}: {}", batch.size(), name, lost, e.getMessage());
+    }
+  }
+}
@@ -55,7 +55,11 @@ public class DateTimeHelper {
     return date.getTime();
   }
 
+  /**
+   * Current epoch milliseconds. Epoch time does not depend on a zone, so this reads the system
+   * clock directly and allocates nothing.
+   */
   public static long currentTimeMillis() {
-    return Instant.now().atZone(DEFAULT_ZONE).toInstant().toEpochMilli();
+    return System.currentTimeMillis();
   }
 }
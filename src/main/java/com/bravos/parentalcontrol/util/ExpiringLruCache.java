@@ -0,0 +1,68 @@
+package com.bravos.parentalcontrol.util;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded cache whose entries also expire at a per-entry deadline.
+ * <p>
+ * Backed by an access-ordered {@link LinkedHashMap} under the cache's monitor, so a read, an
+ * insert and the eviction of the least recently used entry at capacity are all O(1). Expired
+ * entries are dropped when they are read, or evicted in LRU order like any other entry.
+ */
+public final class ExpiringLruCache<K, V> {
+  private record Slot<V>(V value, long expiresAt) {
+  }
+
+  private final int maxEntries;
+  private final LinkedHashMap<K, Slot<V>> entries;
+
+  public ExpiringLruCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Slot<V>> eldest) {
+        return size() > ExpiringLruCache.this.maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param key cache key
+   * @param now current epoch milliseconds
+   * @return the cached value, or null if absent or expired
+   */
+  public synchronized @Nullable V get(K key, long now) {
+    Slot<V> slot = entries.get(key);
+    if (slot == null) {
+      return null;
+    }
+    if (slot.expiresAt() <= now) {
+      entries.remove(key);
+      return null;
+    }
+    return slot.value();
+  }
+
+  /**
+   * Insert or replace an entry, evicting the least recently used one at capacity.
+   * @param key cache key
+   * @param value value to cache
+   * @param expiresAt epoch milliseconds after which the entry is no longer served
+   */
+  public synchronized void put(K key, V value, long expiresAt) {
+    if (maxEntries > 0) {
+      entries.put(key, new Slot<>(value, expiresAt));
+    }
+  }
+
+  public synchronized void remove(K key) {
+    entries.remove(key);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+}
@@ -2,61 +2,72 @@ package com.bravos.parentalcontrol.util;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
+/**
+ * Lock-free Snowflake id generator.
+ * <p>
+ * The timestamp and sequence of the last issued id are packed into one {@link AtomicLong}, laid
+ * out exactly as in the id, so issuing an id is a single CAS. When the sequence runs out within
+ * a millisecond it carries into the timestamp, which may then run ahead of the wall clock by at
+ * most the clock tolerance before callers wait. A clock that moves back by no more than the
+ * tolerance is absorbed the same way; a larger regression is refused.
+ */
 public final class Snowflake {
+  public static final long DEFAULT_EPOCH = LocalDateTime.of(2025, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
   private static final long MACHINE_ID_BITS = 10;
   private static final long SEQUENCE_BITS = 12;
   private static final long TIME_STAMP_BITS = 41;
   private static final long MACHINE_ID_SHIFT = SEQUENCE_BITS + TIME_STAMP_BITS;
   private static final long TIMESTAMP_SHIFT = SEQUENCE_BITS;
-  private static final long DEFAULT_EPOCH = LocalDateTime.of(2025, 1, 1, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+  private static final long DEFAULT_CLOCK_TOLERANCE_MILLIS = 10;
   private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
-  private final long machineId;
+  private final long machineIdShifted;
   private final long epoch;
-  private long sequence = 0L;
-  private long lastTimestamp = -1L;
+  private final long clockToleranceMillis;
+  private final LongSupplier clock;
+  private final AtomicLong state = new AtomicLong();
 
   public Snowflake(long machineId) {
     this(machineId, DEFAULT_EPOCH);
   }
 
   public Snowflake(long machineId, long customEpoch) {
-    this.epoch = customEpoch;
+    this(machineId, customEpoch, DEFAULT_CLOCK_TOLERANCE_MILLIS);
+  }
+
+  public Snowflake(long machineId, long customEpoch, long clockToleranceMillis) {
+    this(machineId, customEpoch, clockToleranceMillis, DateTimeHelper::currentTimeMillis);
+  }
+
+  Snowflake(long machineId, long customEpoch, long clockToleranceMillis, LongSupplier clock) {
     if (machineId < 0 || ((machineId > (1L << MACHINE_ID_BITS) - 1))) {
       throw new IllegalArgumentException("Machine ID must be between 0 and " + ((1L << MACHINE_ID_BITS) - 1));
     }
-    this.machineId = machineId;
+    if (clockToleranceMillis < 0) {
+      throw new IllegalArgumentException("Clock tolerance must not be negative");
+    }
+    this.machineIdShifted = machineId << MACHINE_ID_SHIFT;
+    this.epoch = customEpoch;
+    this.clockToleranceMillis = clockToleranceMillis;
+    this.clock = clock;
   }
 
-  private long waitForNextMillis() {
-    long currentTimeMillis = DateTimeHelper.currentTimeMillis();
-    while (currentTimeMillis <= lastTimestamp) {
-      currentTimeMillis = DateTimeHelper.currentTimeMillis();
-    }
-    return currentTimeMillis;
+  public long next() {
+    return reserve(1);
   }
 
-  public synchronized long next() {
-    long currentTimestamp = DateTimeHelper.currentTimeMillis();
-    if (currentTimestamp < lastTimestamp) {
-      throw new IllegalStateException("Clock moved backwards. Refusing to generate id for " +
-          (lastTimestamp - currentTimestamp) + " milliseconds");
-    }
-    long timestamp = currentTimestamp - epoch;
-    if (currentTimestamp != lastTimestamp) {
-      sequence = 0L;
-      lastTimestamp = currentTimestamp;
-    } else if (sequence >= SEQUENCE_MASK) {
-      long nextMillis = waitForNextMillis();
-      timestamp = nextMillis - epoch;
-      sequence = 0L;
-      lastTimestamp = nextMillis;
-    } else {
-      ++sequence;
+  /**
+   * Reserve a contiguous range of ids with a single CAS.
+   * @param count number of ids, between 1 and 4096
+   * @return the first id of the range; the range is {@code first} to {@code first + count - 1}
+   */
+  public long nextBatch(int count) {
+    if (count < 1 || count > SEQUENCE_MASK + 1) {
+      throw new IllegalArgumentException("Batch size must be between 1 and " + (SEQUENCE_MASK + 1));
     }
-    long timestampShifted = timestamp << TIMESTAMP_SHIFT;
-    long machineIdShifted = machineId << MACHINE_ID_SHIFT;
-    return timestampShifted | machineIdShifted | sequence;
+    return reserve(count);
   }
 
   public long extractTimestamp(long id) {
@@ -68,4 +79,25 @@ public final class Snowflake {
     return (id >> MACHINE_ID_SHIFT) &
         ((1L << MACHINE_ID_BITS) - 1);
   }
+
+  private long reserve(int count) {
+    while (true) {
+      long current = state.get();
+      long now = clock.getAsLong() - epoch;
+      long regression = (current >>> TIMESTAMP_SHIFT) - now;
+      if (regression > clockToleranceMillis) {
+        throw new IllegalStateException("Clock moved backwards. Refusing to generate id for " +
+            regression + " milliseconds");
+      }
+      long first = Math.max(current + 1, now << TIMESTAMP_SHIFT);
+      long last = first + count - 1;
+      if ((last >>> TIMESTAMP_SHIFT) - now > clockToleranceMillis) {
+        Thread.onSpinWait();
+        continue;
+      }
+      if (state.compareAndSet(current, last)) {
+        return first | machineIdShifted;
+      }
+    }
+  }
 }
@@ -0,0 +1,103 @@
+package com.bravos.parentalcontrol.websocket;
+
+import com.bravos.parentalcontrol.service.SessionService;
+import com.bravos.parentalcontrol.websocket.interceptor.HandshakeAdmission;
+import com.bravos.parentalcontrol.websocket.protocol.ServerCommand;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Takes this node's devices off it gracefully during a rolling deploy.
+ * <p>
+ * On shutdown, handshakes are refused. This runs on the context-closed event, before the web
+ * server and the Redis connections begin to stop. Each device is sent
+ * {@code RECONNECT:<seconds>} with a random delay, so the fleet does not come back all at once.
+ * Sockets are then closed in batches of DRAIN_BATCH_SIZE, one batch every
+ * DRAIN_BATCH_INTERVAL_MILLIS, and each batch's sessions are removed from Redis in one pipeline.
+ * A batch is closed one interval after its hints were queued, so the hints are written first.
+ * If the drain is interrupted, the remaining batches are still hinted and closed, just without
+ * the pauses.
+ */
+@Slf4j
+@Component
+public class ConnectionDrainer {
+  private final WebSocketSessionManager webSocketSessionManager;
+  private final SessionService sessionService;
+  private final HandshakeAdmission handshakeAdmission;
+  private final int batchSize;
+  private final long batchIntervalMillis;
+  private final int reconnectMaxSeconds;
+
+  public ConnectionDrainer(WebSocketSessionManager webSocketSessionManager,
+                           SessionService sessionService,
+                           HandshakeAdmission handshakeAdmission,
+                           Environment environment) {
+    this.webSocketSessionManager = webSocketSessionManager;
+    this.sessionService = sessionService;
+    this.handshakeAdmission = handshakeAdmission;
+    this.batchSize = environment.getProperty("DRAIN_BATCH_SIZE", Integer.class, 200);
+    this.batchIntervalMillis = environment.getProperty("DRAIN_BATCH_INTERVAL_MILLIS", Long.class, 100L);
+    this.reconnectMaxSeconds = environment.getProperty("DRAIN_RECONNECT_MAX_SECONDS", Integer.class, 30);
+    if (batchSize <= 0) {
+      throw new IllegalStateException("DRAIN_BATCH_SIZE must be positive");
+    }
+    if (reconnectMaxSeconds <= 0) {
+      throw new IllegalStateException("DRAIN_RECONNECT_MAX_SECONDS must be positive");
+    }
+  }
+
+  @EventListener(ContextClosedEvent.class)
+  public void drainAll() {
+    handshakeAdmission.drain();
+    List<String> sessionIds = webSocketSessionManager.sessionIds();
+    log.info("Draining {} WebSocket sessions", sessionIds.size());
+    List<String> hinted = List.of();
+    int removed = 0;
+    boolean interrupted = false;
+    for (int from = 0; from < sessionIds.size(); from += batchSize) {
+      List<String> batch = sessionIds.subList(from, Math.min(from + batchSize, sessionIds.size()));
+      batch.forEach(this::hint);
+      removed += close(hinted);
+      hinted = batch;
+      interrupted = interrupted || !pause();
+    }
+    removed += close(hinted);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    log.info("Drained {} WebSocket sessions", removed);
+  }
+
+  private void hint(String sessionId) {
+    try {
+      webSocketSessionManager.sendMessage(sessionId,
+          ServerCommand.reconnect(1 + ThreadLocalRandom.current().nextInt(reconnectMaxSeconds)));
+    } catch (IllegalStateException e) {
+      log.debug("Skipping reconnect hint for session {}: {}", sessionId, e.getMessage());
+    }
+  }
+
+  private int close(List<String> sessionIds) {
+    try {
+      return sessionService.drainSessions(sessionIds);
+    } catch (RuntimeException e) {
+      log.warn("Failed to remove {} drained sessions: {}", sessionIds.size(), e.getMessage());
+      return 0;
+    }
+  }
+
+  private boolean pause() {
+    try {
+      Thread.sleep(batchIntervalMillis);
+      return true;
+    } catch (InterruptedException e) {
+      return false;
+    }
+  }
+}
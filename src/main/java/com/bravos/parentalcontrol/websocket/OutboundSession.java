@@ -0,0 +1,210 @@
+package com.bravos.parentalcontrol.websocket;
+
+import com.bravos.parentalcontrol.websocket.protocol.BinaryProtocol;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket session whose sends are queued and written by a single virtual-thread writer.
+ * Callers never block on the socket. Control commands are written before routine traffic
+ * such as pings, and a slow consumer is either shed or disconnected according to the policy.
+ * A write that is still in flight past the send-time limit closes the socket whatever the
+ * policy; the heartbeat engine checks for that before every ping.
+ */
+@Slf4j
+public class OutboundSession extends WebSocketSessionDecorator {
+  public enum SlowConsumerPolicy {
+    DROP,
+    DISCONNECT
+  }
+
+  private final Queue<WebSocketMessage<?>> controlQueue = new ConcurrentLinkedQueue<>();
+  private final Queue<WebSocketMessage<?>> routineQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger depth = new AtomicInteger();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final int queueLimit;
+  private final long sendTimeLimitNanos;
+  private final SlowConsumerPolicy policy;
+  private final Metrics metrics;
+  private final boolean binary;
+
+  private volatile long sendStartNanos;
+  private volatile Thread writer;
+  private volatile boolean terminated;
+
+  public OutboundSession(WebSocketSession delegate,
+                         int queueLimit,
+                         long sendTimeLimitMillis,
+                         SlowConsumerPolicy policy,
+                         Metrics metrics) {
+    super(delegate);
+    this.queueLimit = queueLimit;
+    this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMillis);
+    this.policy = policy;
+    this.metrics = metrics;
+    this.binary = BinaryProtocol.SUBPROTOCOL.equals(delegate.getAcceptedProtocol());
+  }
+
+  /**
+   * Queue a message. Pings and pongs are routine traffic; everything else is a control message.
+   */
+  @Override
+  public void sendMessage(WebSocketMessage<?> message) {
+    boolean routine = message instanceof PingMessage
+        || message instanceof PongMessage
+        || (message instanceof TextMessage text && "pong".equals(text.getPayload()))
+        || (message instanceof BinaryMessage frame && frame.getPayloadLength() == 1
+            && frame.getPayload().get(0) == BinaryProtocol.PONG);
+    enqueue(message, !routine);
+  }
+
+  /**
+   * Queue a message with an explicit priority.
+   * @param message message to send
+   * @param control true for commands that must overtake routine traffic
+   */
+  public void enqueue(WebSocketMessage<?> message, boolean control) {
+    if (terminated || !isOpen()) {
+      throw new IllegalStateException("WebSocket session is closed: " + getId());
+    }
+    if (isSlow() || depth.get() >= queueLimit) {
+      if (policy == SlowConsumerPolicy.DISCONNECT) {
+        terminate(CloseStatus.SESSION_NOT_RELIABLE);
+        throw new IllegalStateException("WebSocket session " + getId() + " is too slow and was disconnected");
+      }
+      if (!control || !evictRoutine()) {
+        metrics.dropped().increment();
+        return;
+      }
+    }
+    depth.incrementAndGet();
+    metrics.depth().incrementAndGet();
+    (control ? controlQueue : routineQueue).add(message);
+    scheduleDrain();
+  }
+
+  /**
+   * Whether the device negotiated the binary sub-protocol.
+   */
+  public boolean isBinary() {
+    return binary;
+  }
+
+  public int getQueueDepth() {
+    return depth.get();
+  }
+
+  /**
+   * Close the socket if its in-flight write has run past the send-time limit, and interrupt the
+   * writer that is stuck on it.
+   * @return true if the session was closed
+   */
+  public boolean closeIfStalled() {
+    if (terminated || !isSlow()) {
+      return false;
+    }
+    log.info("Write to session {} exceeded the send time limit, closing", getId());
+    Thread stalled = writer;
+    if (stalled != null) {
+      stalled.interrupt();
+    }
+    terminate(CloseStatus.SESSION_NOT_RELIABLE);
+    return true;
+  }
+
+  @Override
+  public void close(CloseStatus status) throws IOException {
+    clear();
+    super.close(status);
+  }
+
+  private boolean isSlow() {
+    long startedAt = sendStartNanos;
+    return startedAt != 0 && System.nanoTime() - startedAt > sendTimeLimitNanos;
+  }
+
+  private boolean evictRoutine() {
+    if (routineQueue.poll() == null) {
+      return false;
+    }
+    depth.decrementAndGet();
+    metrics.depth().decrementAndGet();
+    metrics.dropped().increment();
+    return true;
+  }
+
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      Thread.startVirtualThread(this::drain);
+    }
+  }
+
+  private void drain() {
+    do {
+      writer = Thread.currentThread();
+      WebSocketMessage<?> message;
+      while (!terminated && (message = next()) != null) {
+        depth.decrementAndGet();
+        metrics.depth().decrementAndGet();
+        long start = System.nanoTime();
+        sendStartNanos = start;
+        try {
+          getDelegate().sendMessage(message);
+        } catch (IOException | RuntimeException e) {
+          log.info("Send failed for session {}, closing: {}", getId(), e.getMessage());
+          terminate(CloseStatus.SERVER_ERROR);
+        } finally {
+          sendStartNanos = 0;
+          metrics.sendLatency().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+      }
+      writer = null;
+      draining.set(false);
+    } while (!terminated && depth.get() > 0 && draining.compareAndSet(false, true));
+  }
+
+  private WebSocketMessage<?> next() {
+    WebSocketMessage<?> message = controlQueue.poll();
+    return message != null ? message : routineQueue.poll();
+  }
+
+  private void terminate(CloseStatus status) {
+    if (terminated) {
+      return;
+    }
+    terminated = true;
+    metrics.disconnected().increment();
+    try {
+      close(status);
+    } catch (IOException e) {
+      log.warn("Error closing slow WebSocket session {}: {}", getId(), e.getMessage());
+    }
+  }
+
+  private void clear() {
+    int removed = 0;
+    while (controlQueue.poll() != null) removed++;
+    while (routineQueue.poll() != null) removed++;
+    if (removed > 0) {
+      depth.addAndGet(-removed);
+      metrics.depth().addAndGet(-removed);
+    }
+  }
+
+  /**
+   * Meters shared by every outbound session on this node.
+   */
+  public record Metrics(AtomicLong depth, Timer sendLatency, Counter dropped, Counter disconnected) {
+  }
+}
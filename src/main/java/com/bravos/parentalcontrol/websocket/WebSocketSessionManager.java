@@ -1,49 +1,117 @@
 package com.bravos.parentalcontrol.websocket;
 
+import com.bravos.parentalcontrol.websocket.protocol.ServerCommand;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Component
 public class WebSocketSessionManager {
-  private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+  private final Map<String, OutboundSession> sessions = new ConcurrentHashMap<>();
+  private final int queueLimit;
+  private final long sendTimeLimitMillis;
+  private final OutboundSession.SlowConsumerPolicy slowConsumerPolicy;
+  private final OutboundSession.Metrics metrics;
 
-  public void register(String sessionId, WebSocketSession session) {
-    sessions.put(sessionId, session);
+  public WebSocketSessionManager(Environment environment, MeterRegistry meterRegistry) {
+    this.queueLimit = environment.getProperty("WS_SEND_QUEUE_LIMIT", Integer.class, 256);
+    this.sendTimeLimitMillis = environment.getProperty("WS_SEND_TIME_LIMIT_MILLIS", Long.class, 10_000L);
+    this.slowConsumerPolicy = environment.getProperty("WS_SLOW_CONSUMER_POLICY",
+        OutboundSession.SlowConsumerPolicy.class, OutboundSession.SlowConsumerPolicy.DISCONNECT);
+    AtomicLong depth = new AtomicLong();
+    Gauge.builder("websocket.outbound.queue.depth", depth, AtomicLong::get)
+        .description("Messages waiting in outbound WebSocket queues")
+        .register(meterRegistry);
+    Gauge.builder("websocket.sessions.open", sessions, Map::size)
+        .description("WebSocket sessions held by this node")
+        .register(meterRegistry);
+    this.metrics = new OutboundSession.Metrics(
+        depth,
+        Timer.builder("websocket.outbound.send.latency")
+            .description("Time spent writing one message to a WebSocket")
+            .register(meterRegistry),
+        Counter.builder("websocket.outbound.dropped")
+            .description("Outbound messages dropped for slow consumers")
+            .register(meterRegistry),
+        Counter.builder("websocket.outbound.disconnected")
+            .description("WebSocket sessions disconnected as slow consumers or after a failed send")
+            .register(meterRegistry));
   }
 
-  public void remove(String sessionId) {
+  /**
+   * Register a socket and wrap it in an outbound queue. All sends must go through the returned session.
+   * @param sessionId session identifier
+   * @param session raw WebSocket session
+   * @return the queued session
+   */
+  public OutboundSession register(String sessionId, WebSocketSession session) {
+    OutboundSession outbound =
+        new OutboundSession(session, queueLimit, sendTimeLimitMillis, slowConsumerPolicy, metrics);
+    sessions.put(sessionId, outbound);
+    return outbound;
+  }
+
+  public boolean remove(String sessionId) {
+    return remove(sessionId, CloseStatus.NORMAL);
+  }
+
+  /**
+   * Unregister a socket and close it with the given status.
+   * @param sessionId session identifier
+   * @param status close status sent to the device
+   * @return false if the socket was not registered
+   */
+  public boolean remove(String sessionId, CloseStatus status) {
     WebSocketSession session = sessions.remove(sessionId);
-    if (session != null && session.isOpen()) {
+    if (session == null) {
+      return false;
+    }
+    if (session.isOpen()) {
       try {
-        session.close();
+        session.close(status);
       } catch (IOException e) {
         log.warn("Error closing WebSocket for session {}: {}", sessionId, e.getMessage());
       }
     }
+    return true;
   }
 
-  public WebSocketSession get(String sessionId) {
+  public OutboundSession get(String sessionId) {
     return sessions.get(sessionId);
   }
 
-  public void sendMessage(String sessionId, String message) {
-    WebSocketSession session = sessions.get(sessionId);
+  /**
+   * @return a snapshot of the ids of every socket held by this node
+   */
+  public List<String> sessionIds() {
+    return new ArrayList<>(sessions.keySet());
+  }
+
+  /**
+   * Queue a command for a socket held by this node, encoded for the protocol it negotiated.
+   * @param sessionId session identifier
+   * @param command command to send
+   */
+  public void sendMessage(String sessionId, ServerCommand command) {
+    OutboundSession session = sessions.get(sessionId);
     if (session == null || !session.isOpen()) {
       throw new IllegalStateException("WebSocket session is not open or does not exist for id: " + sessionId);
     }
-    try {
-      session.sendMessage(new TextMessage(message));
-    } catch (IOException e) {
-      log.error("Failed to send message to session {}: {}", sessionId, e.getMessage());
-      throw new RuntimeException("Failed to send message to session: " + e.getMessage(), e);
-    }
+    session.enqueue(command.toMessage(session.isBinary()), command.isControl());
   }
 
   public boolean isOpen(String sessionId) {
@@ -1,49 +1,128 @@
 package com.bravos.parentalcontrol.websocket.handler;
 
 import com.bravos.parentalcontrol.dto.request.NewSessionRequest;
+import com.bravos.parentalcontrol.dto.response.AuditEvent;
 import com.bravos.parentalcontrol.entity.Session;
 import com.bravos.parentalcontrol.service.AccessService;
+import com.bravos.parentalcontrol.service.AuditLog;
+import com.bravos.parentalcontrol.service.EnforcementScheduler;
 import com.bravos.parentalcontrol.service.SessionService;
+import com.bravos.parentalcontrol.service.UsageLedger;
 import com.bravos.parentalcontrol.util.DateTimeHelper;
-import jakarta.annotation.PreDestroy;
+import com.bravos.parentalcontrol.websocket.OutboundSession;
+import com.bravos.parentalcontrol.websocket.WebSocketSessionManager;
+import com.bravos.parentalcontrol.websocket.heartbeat.HeartbeatEngine;
+import com.bravos.parentalcontrol.websocket.heartbeat.HeartbeatState;
+import com.bravos.parentalcontrol.websocket.interceptor.HandshakeAdmission;
+import com.bravos.parentalcontrol.websocket.protocol.BinaryProtocol;
+import com.bravos.parentalcontrol.websocket.protocol.ServerCommand;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Handles device sockets. Devices speak the text protocol unless they negotiate
+ * {@link BinaryProtocol#SUBPROTOCOL}, whose frames are dispatched through an opcode table
+ * straight from the received buffer.
+ */
 @Slf4j
 @Component
-public class ControlHandler extends TextWebSocketHandler {
+public class ControlHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
+  private static final String PASSWORD = "PASSWORD";
+  private static final String PING = "PING";
+  private static final String BLOCKED = "BLOCKED";
+  private static final String UNKNOWN = "UNKNOWN";
+
   private final SessionService sessionService;
   private final AccessService accessService;
-  private final Map<String, ScheduledFuture<?>> pingTasks = new ConcurrentHashMap<>();
-  private final ScheduledExecutorService pingScheduler = Executors.newSingleThreadScheduledExecutor();
-  private final ExecutorService virtualExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory());
+  private final HeartbeatEngine heartbeatEngine;
+  private final WebSocketSessionManager webSocketSessionManager;
+  private final HandshakeAdmission handshakeAdmission;
+  private final EnforcementScheduler enforcementScheduler;
+  private final AuditLog auditLog;
+  private final UsageLedger usageLedger;
+  private final Map<String, Timer> commandTimers;
+  private final BinaryRoute[] binaryRoutes = new BinaryRoute[256];
 
-  public ControlHandler(SessionService sessionService, AccessService accessService) {
+  public ControlHandler(SessionService sessionService,
+                        AccessService accessService,
+                        HeartbeatEngine heartbeatEngine,
+                        WebSocketSessionManager webSocketSessionManager,
+                        HandshakeAdmission handshakeAdmission,
+                        EnforcementScheduler enforcementScheduler,
+                        AuditLog auditLog,
+                        UsageLedger usageLedger,
+                        MeterRegistry meterRegistry) {
     this.sessionService = sessionService;
     this.accessService = accessService;
+    this.heartbeatEngine = heartbeatEngine;
+    this.webSocketSessionManager = webSocketSessionManager;
+    this.handshakeAdmission = handshakeAdmission;
+    this.enforcementScheduler = enforcementScheduler;
+    this.auditLog = auditLog;
+    this.usageLedger = usageLedger;
+    this.commandTimers = Map.of(
+        PASSWORD, commandTimer(meterRegistry, PASSWORD),
+        PING, commandTimer(meterRegistry, PING),
+        BLOCKED, commandTimer(meterRegistry, BLOCKED),
+        UNKNOWN, commandTimer(meterRegistry, UNKNOWN));
+    route(BinaryProtocol.PING, PING, 1, (session, frame) -> reply(session, ServerCommand.PONG));
+    route(BinaryProtocol.PASSWORD, PASSWORD, 5,
+        (session, frame) -> checkPassword(session, Integer.toString(frame.getInt(frame.position() + 1))));
+    route(BinaryProtocol.BLOCKED, BLOCKED, 1, (session, frame) -> blockedHandler(session));
+  }
+
+  @Override
+  public @NonNull List<String> getSubProtocols() {
+    return List.of(BinaryProtocol.SUBPROTOCOL);
   }
 
   @Override
   protected void handleTextMessage(@NonNull WebSocketSession session,
                                    @NonNull TextMessage message) throws IOException {
+    long start = System.nanoTime();
     String content = message.getPayload();
+    String command;
     if (content.startsWith("PASSWORD:")) {
-      this.checkPasswordHandler(session, content);
+      command = PASSWORD;
+      this.checkPassword(session, content.substring(9));
     } else if (content.equalsIgnoreCase("ping")) {
-      session.sendMessage(new TextMessage("pong"));
+      command = PING;
+      reply(session, ServerCommand.PONG);
     } else if (content.startsWith("BLOCKED")) {
+      command = BLOCKED;
       this.blockedHandler(session);
     } else {
-      session.sendMessage(new TextMessage("UNKNOWN_COMMAND"));
+      command = UNKNOWN;
+      reply(session, ServerCommand.UNKNOWN_COMMAND);
     }
-    log.info("Received message from session {}: {}", session.getId(), content);
+    commandTimers.get(command).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    log.debug("Handled {} from session {}", command, session.getId());
+  }
+
+  @Override
+  protected void handleBinaryMessage(@NonNull WebSocketSession session,
+                                     @NonNull BinaryMessage message) throws IOException {
+    long start = System.nanoTime();
+    ByteBuffer frame = message.getPayload();
+    BinaryRoute route = frame.hasRemaining() ? binaryRoutes[frame.get(frame.position()) & 0xFF] : null;
+    if (route == null || frame.remaining() != route.length()) {
+      reply(session, ServerCommand.UNKNOWN_COMMAND);
+      commandTimers.get(UNKNOWN).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      return;
+    }
+    route.handler().handle(session, frame);
+    route.timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
   }
 
   @Override
@@ -54,81 +133,88 @@ public class ControlHandler extends TextWebSocketHandler {
   }
 
   @Override
-  public void afterConnectionEstablished(@NonNull WebSocketSession session) {
+  public void afterConnectionEstablished(@NonNull WebSocketSession session) throws IOException {
     NewSessionRequest request = NewSessionRequest.builder()
         .id(session.getId())
         .deviceId((String) session.getAttributes().get("deviceId"))
         .deviceName((String) session.getAttributes().get("deviceName"))
         .ipAddress((String) session.getAttributes().get("ipAddress"))
         .build();
-    Session newSession = sessionService.createNewSession(request, session);
+    Session newSession;
+    try {
+      newSession = sessionService.createNewSession(request, session);
+    } finally {
+      handshakeAdmission.release(session.getAttributes().get(HandshakeAdmission.PERMIT_ATTRIBUTE));
+    }
+    OutboundSession outbound = webSocketSessionManager.get(session.getId());
+    if (outbound != null) {
+      // gone already if the socket was closed or replaced while the session was being saved
+      heartbeatEngine.track(outbound, HeartbeatState.IDLE);
+    }
+    auditLog.publish(AuditEvent.Type.CONNECT, newSession.getDeviceId(), newSession.getId(),
+        "ip=" + newSession.getIpAddress());
+    ServerCommand enforcement = enforcementScheduler.currentCommand(newSession.getDeviceId());
+    if (enforcement != null) {
+      reply(session, enforcement);
+    }
     log.info("New session established: {}", newSession.getId());
   }
 
   @Override
   public void afterConnectionClosed(@NonNull WebSocketSession session,
                                     @NonNull CloseStatus status) {
-    ScheduledFuture<?> future = pingTasks.remove(session.getId());
-    if (future != null) {
-      future.cancel(true);
-    }
-    sessionService.deleteSession(session.getId());
+    handshakeAdmission.release(session.getAttributes().get(HandshakeAdmission.PERMIT_ATTRIBUTE));
+    heartbeatEngine.untrack(session.getId());
+    String deviceId = (String) session.getAttributes().get("deviceId");
+    sessionService.releaseSession(session.getId(), deviceId);
+    auditLog.publish(AuditEvent.Type.DISCONNECT, deviceId, session.getId(), "code=" + status.getCode());
     log.info("Session closed: {}", session.getId());
   }
 
-  private void checkPasswordHandler(WebSocketSession session, String content) throws IOException {
+  private void checkPassword(WebSocketSession session, String password) throws IOException {
     String sessionId = session.getId();
-    String password = content.substring(9);
-    Integer timeGranted = accessService.verifyAccessRequest(sessionId, password);
+    String deviceId = (String) session.getAttributes().get("deviceId");
+    Integer timeGranted = accessService.verifyAccessRequest(deviceId, password);
     if (timeGranted != null) {
-      session.sendMessage(new TextMessage("GRANTED:" + timeGranted));
-      ScheduledFuture<?> existing = pingTasks.remove(sessionId);
-      if (existing != null) {
-        existing.cancel(true);
-      }
-      ScheduledFuture<?> future = startPingTask(session);
-      pingTasks.put(sessionId, future);
+      reply(session, ServerCommand.granted(timeGranted));
+      heartbeatEngine.updateState(sessionId, HeartbeatState.GRANTED);
+      usageLedger.unblock(sessionId, DateTimeHelper.currentTimeMillis());
     } else {
-      session.sendMessage(new TextMessage("DENIED"));
+      reply(session, ServerCommand.DENIED);
     }
   }
 
-  private void blockedHandler(WebSocketSession session) {
-    String sessionId = session.getId();
-    ScheduledFuture<?> future = pingTasks.remove(sessionId);
-    if (future != null) {
-      future.cancel(true);
+  private void reply(WebSocketSession session, ServerCommand command) throws IOException {
+    OutboundSession outbound = webSocketSessionManager.get(session.getId());
+    if (outbound != null) {
+      outbound.enqueue(command.toMessage(outbound.isBinary()), command.isControl());
+    } else {
+      session.sendMessage(command.toMessage(BinaryProtocol.SUBPROTOCOL.equals(session.getAcceptedProtocol())));
     }
-    pingTasks.remove(sessionId);
   }
 
-  private ScheduledFuture<?> startPingTask(WebSocketSession session) {
-    return pingScheduler.scheduleAtFixedRate(() -> {
-      if (!session.isOpen()) {
-        ScheduledFuture<?> f = pingTasks.remove(session.getId());
-        if (f != null) f.cancel(false);
-        return;
-      }
-      virtualExecutor.execute(() -> {
-        try {
-          if (!session.isOpen()) return;
-          session.sendMessage(new PingMessage());
-        } catch (IOException e) {
-          log.info("Ping failed for session {}, cancelling task: {}", session.getId(), e.getMessage());
-          ScheduledFuture<?> f = pingTasks.remove(session.getId());
-          if (f != null) f.cancel(true);
-        } catch (Throwable t) {
-          log.warn("Unexpected error in ping task for session {}: {}", session.getId(), t.getMessage());
-          ScheduledFuture<?> f = pingTasks.remove(session.getId());
-          if (f != null) f.cancel(true);
-        }
-      });
-    }, 0, 60, TimeUnit.SECONDS);
+  private void blockedHandler(WebSocketSession session) {
+    heartbeatEngine.updateState(session.getId(), HeartbeatState.BLOCKED);
+    usageLedger.block(session.getId(), DateTimeHelper.currentTimeMillis());
+  }
+
+  private void route(byte opcode, String command, int length, FrameHandler handler) {
+    binaryRoutes[opcode & 0xFF] = new BinaryRoute(commandTimers.get(command), length, handler);
+  }
+
+  private static Timer commandTimer(MeterRegistry meterRegistry, String command) {
+    return Timer.builder("websocket.command")
+        .description("Handling time per WebSocket command type")
+        .tag("command", command)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+
+  @FunctionalInterface
+  private interface FrameHandler {
+    void handle(WebSocketSession session, ByteBuffer frame) throws IOException;
   }
 
-  @PreDestroy
-  public void shutdownScheduler() {
-    pingScheduler.shutdownNow();
-    virtualExecutor.shutdownNow();
+  private record BinaryRoute(Timer timer, int length, FrameHandler handler) {
   }
 }
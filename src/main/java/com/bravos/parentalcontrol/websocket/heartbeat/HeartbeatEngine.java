@@ -0,0 +1,312 @@
+package com.bravos.parentalcontrol.websocket.heartbeat;
+
+import com.bravos.parentalcontrol.websocket.OutboundSession;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends WebSocket pings to every tracked session from a hashed timing wheel.
+ * <p>
+ * A single ticker thread owns the wheel. Other threads only enqueue schedule and cancel
+ * requests, so both are O(1) and lock-free. Sessions that fall due in the same tick are
+ * pinged in batches on virtual threads, and every interval is jittered so sessions that
+ * connected together drift apart instead of pinging in bursts. Before each ping a session's
+ * in-flight write is checked against the send-time limit, so a socket stalled mid-write is
+ * closed within one ping interval.
+ */
+@Slf4j
+@Component
+public class HeartbeatEngine {
+  private static final int BATCH_SIZE = 256;
+
+  private final long tickNanos;
+  private final long tickMillis;
+  private final int mask;
+  private final Slot[] wheel;
+  private final Map<HeartbeatState, Long> intervalTicks;
+  private final double jitterRatio;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+  private final Queue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingPings = new AtomicInteger();
+  private final ExecutorService pingExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory());
+  private final Timer tickLag;
+  private final Thread ticker;
+
+  private volatile boolean running = true;
+  private volatile long lastTickLagNanos;
+  private long currentTick;
+
+  public HeartbeatEngine(Environment environment, MeterRegistry meterRegistry) {
+    this.tickMillis = environment.getProperty("HEARTBEAT_TICK_MILLIS", Long.class, 1000L);
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    int wheelSize = Integer.highestOneBit(
+        Math.max(2, environment.getProperty("HEARTBEAT_WHEEL_SIZE", Integer.class, 512)));
+    this.mask = wheelSize - 1;
+    this.wheel = new Slot[wheelSize];
+    for (int i = 0; i < wheelSize; i++) {
+      wheel[i] = new Slot();
+    }
+    this.intervalTicks = Map.of(
+        HeartbeatState.IDLE, toTicks(environment.getProperty("HEARTBEAT_IDLE_SECONDS", Long.class, 120L)),
+        HeartbeatState.GRANTED, toTicks(environment.getProperty("HEARTBEAT_GRANTED_SECONDS", Long.class, 60L)),
+        HeartbeatState.BLOCKED, toTicks(environment.getProperty("HEARTBEAT_BLOCKED_SECONDS", Long.class, 300L)));
+    this.jitterRatio = environment.getProperty("HEARTBEAT_JITTER_PERCENT", Integer.class, 10) / 100.0;
+    this.tickLag = Timer.builder("heartbeat.tick.lag")
+        .description("Delay between a heartbeat tick's deadline and its processing")
+        .register(meterRegistry);
+    Gauge.builder("heartbeat.sessions", entries, Map::size)
+        .description("Sessions tracked by the heartbeat engine")
+        .register(meterRegistry);
+    Gauge.builder("heartbeat.pings.pending", pendingPings, AtomicInteger::get)
+        .description("Pings that are due but not yet handed to their sockets")
+        .register(meterRegistry);
+    this.ticker = Thread.ofPlatform().name("heartbeat-ticker").daemon().unstarted(this::run);
+  }
+
+  @PostConstruct
+  public void start() {
+    ticker.start();
+  }
+
+  /**
+   * Start or reschedule heartbeats for a session in the given state.
+   * @param session WebSocket session to ping
+   * @param state heartbeat state that selects the interval
+   */
+  public void track(WebSocketSession session, HeartbeatState state) {
+    Entry entry = new Entry(session, state);
+    Entry previous = entries.put(session.getId(), entry);
+    if (previous != null) {
+      cancel(previous);
+    }
+    if (intervalTicks.get(state) > 0) {
+      pending.add(entry);
+    }
+  }
+
+  /**
+   * Move a tracked session to another heartbeat state.
+   * @param sessionId session identifier
+   * @param state new heartbeat state
+   */
+  public void updateState(String sessionId, HeartbeatState state) {
+    Entry entry = entries.get(sessionId);
+    if (entry != null && entry.state != state) {
+      track(entry.session, state);
+    }
+  }
+
+  /**
+   * Stop sending heartbeats to a session.
+   * @param sessionId session identifier
+   */
+  public void untrack(String sessionId) {
+    Entry entry = entries.remove(sessionId);
+    if (entry != null) {
+      cancel(entry);
+    }
+  }
+
+  public int getTrackedSessions() {
+    return entries.size();
+  }
+
+  public long getLastTickLagMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(lastTickLagNanos);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    running = false;
+    ticker.interrupt();
+    pingExecutor.shutdownNow();
+  }
+
+  private void cancel(Entry entry) {
+    entry.cancelled = true;
+    cancelled.add(entry);
+  }
+
+  private void run() {
+    long startTime = System.nanoTime();
+    while (running) {
+      long deadline = startTime + (currentTick + 1) * tickNanos;
+      long sleepNanos;
+      while ((sleepNanos = deadline - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(sleepNanos);
+        if (!running) {
+          return;
+        }
+      }
+      long lag = System.nanoTime() - deadline;
+      lastTickLagNanos = lag;
+      tickLag.record(lag, TimeUnit.NANOSECONDS);
+      try {
+        processCancelled();
+        transferPending();
+        expire(wheel[(int) (currentTick & mask)]);
+      } catch (RuntimeException e) {
+        log.error("Heartbeat tick {} failed: {}", currentTick, e.getMessage(), e);
+      }
+      currentTick++;
+    }
+  }
+
+  private void processCancelled() {
+    Entry entry;
+    while ((entry = cancelled.poll()) != null) {
+      if (entry.slot != null) {
+        entry.slot.remove(entry);
+      }
+    }
+  }
+
+  private void transferPending() {
+    Entry entry;
+    while ((entry = pending.poll()) != null) {
+      if (!entry.cancelled) {
+        long interval = intervalTicks.get(entry.state);
+        schedule(entry, ThreadLocalRandom.current().nextLong(1, interval + 1));
+      }
+    }
+  }
+
+  private void expire(Slot slot) {
+    List<Entry> due = new ArrayList<>();
+    Entry entry = slot.head;
+    while (entry != null) {
+      Entry next = entry.next;
+      if (entry.deadlineTick <= currentTick) {
+        slot.remove(entry);
+        if (!entry.cancelled) {
+          due.add(entry);
+        }
+      }
+      entry = next;
+    }
+    if (due.isEmpty()) {
+      return;
+    }
+    pendingPings.addAndGet(due.size());
+    for (int from = 0; from < due.size(); from += BATCH_SIZE) {
+      List<Entry> batch = due.subList(from, Math.min(due.size(), from + BATCH_SIZE));
+      pingExecutor.execute(() -> ping(batch));
+    }
+    for (Entry dueEntry : due) {
+      schedule(dueEntry, jittered(intervalTicks.get(dueEntry.state)));
+    }
+  }
+
+  private void schedule(Entry entry, long delayTicks) {
+    entry.deadlineTick = currentTick + Math.max(1, delayTicks);
+    wheel[(int) (entry.deadlineTick & mask)].add(entry);
+  }
+
+  private void ping(List<Entry> batch) {
+    for (Entry entry : batch) {
+      pendingPings.decrementAndGet();
+      WebSocketSession session = entry.session;
+      if (entry.cancelled) {
+        continue;
+      }
+      if (!session.isOpen()) {
+        untrack(session.getId());
+        continue;
+      }
+      if (session instanceof OutboundSession outbound && outbound.closeIfStalled()) {
+        untrack(session.getId());
+        continue;
+      }
+      try {
+        session.sendMessage(new PingMessage());
+      } catch (IOException e) {
+        log.info("Ping failed for session {}, untracking: {}", session.getId(), e.getMessage());
+        untrack(session.getId());
+      } catch (Throwable t) {
+        log.warn("Unexpected error pinging session {}: {}", session.getId(), t.getMessage());
+        untrack(session.getId());
+      }
+    }
+  }
+
+  private long jittered(long interval) {
+    long spread = (long) (interval * jitterRatio);
+    if (spread <= 0) {
+      return interval;
+    }
+    return interval + ThreadLocalRandom.current().nextLong(-spread, spread + 1);
+  }
+
+  private long toTicks(long seconds) {
+    if (seconds <= 0) {
+      return 0;
+    }
+    return Math.max(1, TimeUnit.SECONDS.toMillis(seconds) / tickMillis);
+  }
+
+  private static final class Entry {
+    final WebSocketSession session;
+    final HeartbeatState state;
+    volatile boolean cancelled;
+    long deadlineTick;
+    Slot slot;
+    Entry prev;
+    Entry next;
+
+    Entry(WebSocketSession session, HeartbeatState state) {
+      this.session = session;
+      this.state = state;
+    }
+  }
+
+  private static final class Slot {
+    Entry head;
+
+    void add(Entry entry) {
+      entry.slot = this;
+      entry.prev = null;
+      entry.next = head;
+      if (head != null) {
+        head.prev = entry;
+      }
+      head = entry;
+    }
+
+    void remove(Entry entry) {
+      if (entry.prev != null) {
+        entry.prev.next = entry.next;
+      } else {
+        head = entry.next;
+      }
+      if (entry.next != null) {
+        entry.next.prev = entry.prev;
+      }
+      entry.slot = null;
+      entry.prev = null;
+      entry.next = null;
+    }
+  }
+}
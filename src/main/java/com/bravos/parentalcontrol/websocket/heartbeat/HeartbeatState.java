@@ -0,0 +1,10 @@
+package com.bravos.parentalcontrol.websocket.heartbeat;
+
+/**
+ * Heartbeat class of a session. Each state has its own ping interval.
+ */
+public enum HeartbeatState {
+  IDLE,
+  GRANTED,
+  BLOCKED
+}
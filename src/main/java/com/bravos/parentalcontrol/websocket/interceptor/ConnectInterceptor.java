@@ -1,31 +1,38 @@
 package com.bravos.parentalcontrol.websocket.interceptor;
 
-import com.bravos.parentalcontrol.service.SessionService;
 import lombok.extern.slf4j.Slf4j;
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
 import java.util.Map;
 
+/**
+ * Validates device headers and applies admission control to handshakes. Session replacement
+ * happens when the new session is created, so this path does no Redis work.
+ */
 @Slf4j
 @Component
 public class ConnectInterceptor implements HandshakeInterceptor {
-  private final SessionService sessionService;
+  private final HandshakeAdmission handshakeAdmission;
 
-  public ConnectInterceptor(SessionService sessionService) {
-    this.sessionService = sessionService;
+  public ConnectInterceptor(HandshakeAdmission handshakeAdmission) {
+    this.handshakeAdmission = handshakeAdmission;
   }
 
   @Override
   public boolean beforeHandshake(@NonNull ServerHttpRequest request,
                                  @NonNull ServerHttpResponse response,
                                  @NonNull WebSocketHandler wsHandler,
-                                 @NonNull Map<String, Object> attributes) {
+                                 @NonNull Map<String, Object> attributes) throws InterruptedException {
     String deviceId = request.getHeaders().getFirst("X-Device-Id");
     String deviceName = request.getHeaders().getFirst("X-Device-Name");
     String ipAddress = request.getHeaders().getFirst("X-Real-IP");
@@ -34,7 +41,16 @@ public class ConnectInterceptor implements HandshakeInterceptor {
       return false;
     }
 
-    sessionService.deleteSessionsByDeviceId(deviceId);
+    Object permit = handshakeAdmission.tryAdmit();
+    if (permit == null) {
+      response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+      response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(handshakeAdmission.retryAfterSeconds()));
+      return false;
+    }
+    attributes.put(HandshakeAdmission.PERMIT_ATTRIBUTE, permit);
+    if (request instanceof ServletServerHttpRequest servletRequest) {
+      servletRequest.getServletRequest().setAttribute(HandshakeAdmission.PERMIT_ATTRIBUTE, permit);
+    }
 
     attributes.put("deviceId", deviceId);
     attributes.put("deviceName", deviceName);
@@ -48,6 +64,11 @@ public class ConnectInterceptor implements HandshakeInterceptor {
                              @NonNull ServerHttpResponse response,
                              @NonNull WebSocketHandler wsHandler,
                              @Nullable Exception exception) {
+    boolean rejected = response instanceof ServletServerHttpResponse servletResponse
+        && servletResponse.getServletResponse().getStatus() >= 400;
+    if ((exception != null || rejected) && request instanceof ServletServerHttpRequest servletRequest) {
+      handshakeAdmission.release(servletRequest.getServletRequest().getAttribute(HandshakeAdmission.PERMIT_ATTRIBUTE));
+    }
     if (exception != null) {
       log.error("Handshake error: {}", exception.getMessage());
     }
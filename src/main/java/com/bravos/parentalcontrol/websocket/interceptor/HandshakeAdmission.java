@@ -0,0 +1,80 @@
+package com.bravos.parentalcontrol.websocket.interceptor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits how many connections may be between handshake and session registration at once.
+ * A permit is taken in the handshake interceptor and stored in the request and session
+ * attributes; it is returned once the session is registered, or when the handshake or
+ * connection fails first. Once the node starts draining for shutdown, every handshake is refused.
+ */
+@Component
+public class HandshakeAdmission {
+  public static final String PERMIT_ATTRIBUTE = "handshakePermit";
+
+  private final Semaphore permits;
+  private final long acquireTimeoutMillis;
+  private final int retryAfterSeconds;
+  private final Counter rejected;
+
+  private volatile boolean draining;
+
+  public HandshakeAdmission(Environment environment, MeterRegistry meterRegistry) {
+    int maxConcurrent = environment.getProperty("HANDSHAKE_MAX_CONCURRENT", Integer.class, 64);
+    this.permits = new Semaphore(maxConcurrent);
+    this.acquireTimeoutMillis = environment.getProperty("HANDSHAKE_ACQUIRE_TIMEOUT_MILLIS", Long.class, 50L);
+    this.retryAfterSeconds = environment.getProperty("HANDSHAKE_RETRY_AFTER_SECONDS", Integer.class, 5);
+    this.rejected = Counter.builder("websocket.handshake.rejected")
+        .description("Handshakes refused by admission control")
+        .register(meterRegistry);
+    Gauge.builder("websocket.handshake.in_flight", permits, p -> maxConcurrent - p.availablePermits())
+        .description("Connections between handshake and session registration")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Try to admit a connection.
+   * @return a permit to store under {@link #PERMIT_ATTRIBUTE}, or null if the node is saturated
+   */
+  public Object tryAdmit() throws InterruptedException {
+    if (draining || !permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+      rejected.increment();
+      return null;
+    }
+    return new AtomicBoolean();
+  }
+
+  /**
+   * Refuse all further handshakes.
+   */
+  public void drain() {
+    draining = true;
+  }
+
+  /**
+   * Return a permit. Safe to call more than once and with null.
+   * @param permit permit returned by {@link #tryAdmit()}
+   */
+  public void release(Object permit) {
+    if (permit instanceof AtomicBoolean released && released.compareAndSet(false, true)) {
+      permits.release();
+    }
+  }
+
+  /**
+   * Suggested Retry-After for a rejected client, randomized so rejected devices do not return together.
+   * @return delay in seconds
+   */
+  public int retryAfterSeconds() {
+    return retryAfterSeconds + ThreadLocalRandom.current().nextInt(retryAfterSeconds + 1);
+  }
+}
@@ -0,0 +1,42 @@
+package com.bravos.parentalcontrol.websocket.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-layout binary frames of the {@value #SUBPROTOCOL} WebSocket sub-protocol. Every frame
+ * starts with a one-byte opcode; integer arguments are 32-bit big-endian.
+ * <pre>
+ * client -> server               server -> client
+ * 0x01 PING                      0x81 PONG
+ * 0x02 PASSWORD  int32 code      0x82 GRANTED  int32 seconds
+ * 0x03 BLOCKED                   0x83 DENIED
+ *                                0x84 BLOCK    int32 seconds
+ *                                0x85 UNKNOWN_COMMAND
+ *                                0x86 RECONNECT int32 seconds
+ * </pre>
+ */
+public final class BinaryProtocol {
+  public static final String SUBPROTOCOL = "parental-control.binary.v1";
+
+  public static final byte PING = 0x01;
+  public static final byte PASSWORD = 0x02;
+  public static final byte BLOCKED = 0x03;
+
+  public static final byte PONG = (byte) 0x81;
+  public static final byte GRANTED = (byte) 0x82;
+  public static final byte DENIED = (byte) 0x83;
+  public static final byte BLOCK = (byte) 0x84;
+  public static final byte UNKNOWN_COMMAND = (byte) 0x85;
+  public static final byte RECONNECT = (byte) 0x86;
+
+  private BinaryProtocol() {
+  }
+
+  public static ByteBuffer frame(byte opcode) {
+    return ByteBuffer.allocate(1).put(0, opcode);
+  }
+
+  public static ByteBuffer frame(byte opcode, int argument) {
+    return ByteBuffer.allocate(5).put(0, opcode).putInt(1, argument);
+  }
+}
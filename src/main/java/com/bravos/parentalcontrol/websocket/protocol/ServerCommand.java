@@ -0,0 +1,122 @@
+package com.bravos.parentalcontrol.websocket.protocol;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A command sent from the server to a device, independent of the wire protocol. Each command is
+ * encoded once for both protocols, so constant replies and group fan-outs reuse the same frames.
+ */
+public final class ServerCommand {
+  public enum Type {
+    PONG("pong", BinaryProtocol.PONG),
+    GRANTED("GRANTED:", BinaryProtocol.GRANTED),
+    DENIED("DENIED", BinaryProtocol.DENIED),
+    BLOCK("BLOCK:", BinaryProtocol.BLOCK),
+    UNKNOWN_COMMAND("UNKNOWN_COMMAND", BinaryProtocol.UNKNOWN_COMMAND),
+    RECONNECT("RECONNECT:", BinaryProtocol.RECONNECT);
+
+    final String text;
+    final byte opcode;
+
+    Type(String text, byte opcode) {
+      this.text = text;
+      this.opcode = opcode;
+    }
+
+    boolean hasSeconds() {
+      return text.endsWith(":");
+    }
+  }
+
+  public static final ServerCommand PONG = new ServerCommand(Type.PONG, 0);
+  public static final ServerCommand DENIED = new ServerCommand(Type.DENIED, 0);
+  public static final ServerCommand UNKNOWN_COMMAND = new ServerCommand(Type.UNKNOWN_COMMAND, 0);
+
+  private final Type type;
+  private final int seconds;
+  private final TextMessage textMessage;
+  private final ByteBuffer binaryFrame;
+
+  private ServerCommand(Type type, int seconds) {
+    this.type = type;
+    this.seconds = seconds;
+    this.textMessage = new TextMessage(toText());
+    this.binaryFrame = (type.hasSeconds()
+        ? BinaryProtocol.frame(type.opcode, seconds)
+        : BinaryProtocol.frame(type.opcode)).asReadOnlyBuffer();
+  }
+
+  public static ServerCommand granted(int seconds) {
+    return new ServerCommand(Type.GRANTED, seconds);
+  }
+
+  public static ServerCommand block(int seconds) {
+    return new ServerCommand(Type.BLOCK, seconds);
+  }
+
+  /**
+   * Ask a device to reconnect, to another node, once the given delay has passed.
+   * @param seconds delay before reconnecting
+   * @return the command
+   */
+  public static ServerCommand reconnect(int seconds) {
+    return new ServerCommand(Type.RECONNECT, seconds);
+  }
+
+  /**
+   * Parse the text form of a command, as produced by {@link #toText()}.
+   * @param text text form
+   * @return the command
+   * @throws IllegalArgumentException if the text is not a server command
+   */
+  public static ServerCommand parseText(String text) {
+    for (Type type : Type.values()) {
+      if (type.hasSeconds() && text.startsWith(type.text)) {
+        return new ServerCommand(type, Integer.parseInt(text, type.text.length(), text.length(), 10));
+      }
+    }
+    return switch (text) {
+      case "pong" -> PONG;
+      case "DENIED" -> DENIED;
+      case "UNKNOWN_COMMAND" -> UNKNOWN_COMMAND;
+      default -> throw new IllegalArgumentException("Unknown server command: " + text);
+    };
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getSeconds() {
+    return seconds;
+  }
+
+  /**
+   * Pongs are routine traffic; everything else must overtake it in the outbound queue.
+   */
+  public boolean isControl() {
+    return type != Type.PONG;
+  }
+
+  public String toText() {
+    return type.hasSeconds() ? type.text + seconds : type.text;
+  }
+
+  /**
+   * Encode the command for a socket.
+   * @param binary true if the socket negotiated {@link BinaryProtocol#SUBPROTOCOL}
+   * @return the frame to send
+   */
+  public WebSocketMessage<?> toMessage(boolean binary) {
+    return binary ? new BinaryMessage(binaryFrame.duplicate()) : textMessage;
+  }
+
+  @Override
+  public String toString() {
+    return toText();
+  }
+}
@@ -0,0 +1,61 @@
+package com.bravos.parentalcontrol;
+
+import com.bravos.parentalcontrol.support.LoadSimulator;
+import com.bravos.parentalcontrol.support.LoadSimulator.Operation;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * End-to-end load run: a fleet of simulated devices spread over two nodes sharing an embedded
+ * Redis, driven by concurrent parent clients. Run with {@code ./gradlew benchmarkTest}; the size
+ * of the run is set with the {@code load.*} system properties.
+ */
+@Tag("benchmark")
+class LoadSimulationBenchmarkTests {
+  private static final int DEVICES = Integer.getInteger("load.devices", 2000);
+  private static final int COMMANDS = Integer.getInteger("load.commands", 3000);
+  private static final int PARENTS = Integer.getInteger("load.parents", 32);
+  private static final int PING_ROUNDS = Integer.getInteger("load.pings", 3);
+  private static final String SECRET = "load-secret";
+
+  private static TestCluster cluster;
+  private static List<ConfigurableApplicationContext> nodes;
+
+  @BeforeAll
+  static void start() throws IOException {
+    cluster = new TestCluster();
+    String hash = "PARENTAL_CONTROL_PASSWORD_HASH=" + new BCryptPasswordEncoder().encode(SECRET);
+    nodes = List.of(
+        cluster.startNode("load-a", hash, "HEARTBEAT_IDLE_SECONDS=5"),
+        cluster.startNode("load-b", hash, "HEARTBEAT_IDLE_SECONDS=5"));
+  }
+
+  @AfterAll
+  static void stop() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void fleetUnderLoad() throws Exception {
+    LoadSimulator simulator = new LoadSimulator(nodes, SECRET);
+    simulator.connect(DEVICES);
+    simulator.ping(PING_ROUNDS);
+    simulator.drive(COMMANDS, PARENTS);
+    simulator.printReport();
+
+    assertEquals(DEVICES, simulator.connectedDevices());
+    for (Operation operation : Operation.values()) {
+      assertEquals(0, simulator.errors(operation), operation + " errors");
+    }
+  }
+}
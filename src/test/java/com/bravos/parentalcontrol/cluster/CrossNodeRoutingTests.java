@@ -0,0 +1,66 @@
+package com.bravos.parentalcontrol.cluster;
+
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.service.AccessService;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CrossNodeRoutingTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext nodeA;
+  private static ConfigurableApplicationContext nodeB;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    nodeA = cluster.startNode("node-a");
+    nodeB = cluster.startNode("node-b");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void grantIsDeliveredToSocketHeldByAnotherNode() throws Exception {
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocketSession client = TestCluster.connect(nodeA, "device-remote", received);
+    try {
+      Session session = TestCluster.awaitSession(nodeB, "device-remote");
+      assertEquals("node-a", session.getNodeId());
+
+      nodeB.getBean(AccessService.class).grantAccess("device-remote", 60);
+
+      assertEquals("GRANTED:60", received.poll(5, TimeUnit.SECONDS));
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  void grantToLocalSocketUsesDirectPath() throws Exception {
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocketSession client = TestCluster.connect(nodeB, "device-local", received);
+    try {
+      TestCluster.awaitSession(nodeB, "device-local");
+
+      nodeB.getBean(AccessService.class).grantAccess("device-local", 30);
+
+      assertEquals("GRANTED:30", received.poll(5, TimeUnit.SECONDS));
+    } finally {
+      client.close();
+    }
+  }
+}
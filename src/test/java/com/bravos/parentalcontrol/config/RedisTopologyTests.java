@@ -0,0 +1,191 @@
+package com.bravos.parentalcontrol.config;
+
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import com.bravos.parentalcontrol.service.AccessService;
+import com.bravos.parentalcontrol.service.SessionService;
+import com.bravos.parentalcontrol.support.TestCluster;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the service against local stand-ins for the Redis topologies it supports: a primary with
+ * a writable replica, and a three-shard cluster formed from embedded servers.
+ */
+class RedisTopologyTests {
+  private static final int CLUSTER_SHARDS = 3;
+
+  @Test
+  void listingIsReadFromReplicaAndBlockTimeFromPrimary() throws Exception {
+    try (TestCluster cluster = new TestCluster()) {
+      int replicaPort = freePort();
+      RedisServer replica = RedisServer.newRedisServer()
+          .port(replicaPort)
+          .setting("replicaof 127.0.0.1 " + cluster.getRedisPort())
+          .setting("replica-read-only no")
+          .build();
+      replica.start();
+      RedisClient client = RedisClient.create();
+      try (StatefulRedisConnection<String, String> connection =
+               client.connect(RedisURI.create("127.0.0.1", replicaPort))) {
+        RedisCommands<String, String> replicaCommands = connection.sync();
+        await(() -> replicaCommands.info("replication"), info -> info.contains("master_link_status:up"));
+
+        ConfigurableApplicationContext node = cluster.startNode("replica-reads",
+            "REDIS_READ_FROM=replica",
+            "REDIS_REPLICA_NODES=127.0.0.1:" + replicaPort);
+
+        // Written to the replica only, so they are visible solely through replica reads.
+        replicaCommands.zadd(SessionIndexRepository.CREATED_INDEX_KEY, 1, "replica-only");
+        replicaCommands.hset("session:replica-only", "id", "replica-only");
+        replicaCommands.hset("session:replica-only", "deviceId", "replica-device");
+        replicaCommands.hset("session:replica-only", "createdAt", "1");
+        replicaCommands.set("block_device:{replica-device}", Long.toString(System.currentTimeMillis() + 60_000));
+
+        List<Session> page = node.getBean(SessionService.class).getSessionsPage(null, 10).getItems();
+        assertEquals(List.of("replica-only"), page.stream().map(Session::getId).toList());
+        assertNull(node.getBean(AccessService.class).getRemainingBlockTime("replica-device"));
+
+        assertTrue(node.getBean(SessionIndexRepository.class).findAllById(List.of("replica-only")).isEmpty());
+      } finally {
+        client.shutdown();
+        replica.stop();
+      }
+    }
+  }
+
+  @Test
+  void serviceRunsAgainstCluster() throws Exception {
+    Path configDir = Files.createTempDirectory("redis-cluster");
+    List<RedisServer> shards = new ArrayList<>();
+    List<String> nodes = new ArrayList<>();
+    RedisClient client = RedisClient.create();
+    try (TestCluster cluster = new TestCluster()) {
+      for (int i = 0; i < CLUSTER_SHARDS; i++) {
+        int port = freePort();
+        RedisServer shard = RedisServer.newRedisServer()
+            .port(port)
+            .setting("cluster-enabled yes")
+            .setting("cluster-config-file " + configDir.resolve("nodes-" + port + ".conf"))
+            .setting("cluster-node-timeout 2000")
+            .build();
+        shard.start();
+        shards.add(shard);
+        nodes.add("127.0.0.1:" + port);
+      }
+      formCluster(client, nodes);
+
+      ConfigurableApplicationContext node = cluster.startNode("cluster-node",
+          "REDIS_MODE=CLUSTER",
+          "REDIS_CLUSTER_NODES=" + String.join(",", nodes));
+      AccessService accessService = node.getBean(AccessService.class);
+
+      BlockingQueue<String> received = new LinkedBlockingQueue<>();
+      WebSocketSession device = TestCluster.connect(node, "device-cluster", received);
+      try {
+        TestCluster.awaitSession(node, "device-cluster");
+
+        String code = accessService.generateAccessCode("device-cluster", 120);
+        device.sendMessage(new TextMessage("PASSWORD:" + code));
+        String granted = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(granted);
+        assertTrue(granted.startsWith("GRANTED:"), granted);
+
+        accessService.blockAfterTime("device-cluster", 1);
+        assertEquals("BLOCK:1", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("BLOCK:0", received.poll(5, TimeUnit.SECONDS));
+
+        List<Session> page = node.getBean(SessionService.class).getSessionsPage(null, 10).getItems();
+        assertEquals(List.of("device-cluster"), page.stream().map(Session::getDeviceId).toList());
+
+        StringRedisTemplate redis = node.getBean(StringRedisTemplate.class);
+        assertTrue(redis.hasKey("device_session:{device-cluster}"));
+        int slot = SlotHash.getSlot("device_session:{device-cluster}");
+        assertEquals(slot, SlotHash.getSlot("block_device:{device-cluster}"));
+        assertEquals(slot, SlotHash.getSlot("time_grant:{device-cluster}:" + code));
+      } finally {
+        device.close();
+      }
+    } finally {
+      client.shutdown();
+      for (RedisServer shard : shards) {
+        shard.stop();
+      }
+    }
+  }
+
+  /**
+   * Split the slots evenly across the servers, introduce them to each other and wait until every
+   * one of them reports a healthy cluster.
+   */
+  private static void formCluster(RedisClient client, List<String> nodes) throws InterruptedException {
+    List<StatefulRedisConnection<String, String>> connections = new ArrayList<>();
+    try {
+      for (String node : nodes) {
+        connections.add(client.connect(RedisURI.create("redis://" + node)));
+      }
+      int slotsPerShard = (SlotHash.SLOT_COUNT + nodes.size() - 1) / nodes.size();
+      for (int i = 0; i < nodes.size(); i++) {
+        int from = i * slotsPerShard;
+        int to = Math.min(from + slotsPerShard, SlotHash.SLOT_COUNT);
+        RedisCommands<String, String> commands = connections.get(i).sync();
+        commands.clusterAddSlots(IntStream.range(from, to).toArray());
+        if (i > 0) {
+          String first = nodes.getFirst();
+          commands.clusterMeet(first.substring(0, first.indexOf(':')),
+              Integer.parseInt(first.substring(first.indexOf(':') + 1)));
+        }
+      }
+      for (StatefulRedisConnection<String, String> connection : connections) {
+        await(() -> connection.sync().clusterInfo(), info ->
+            info.contains("cluster_state:ok") && info.contains("cluster_known_nodes:" + nodes.size()));
+      }
+    } finally {
+      connections.forEach(StatefulRedisConnection::close);
+    }
+  }
+
+  private static void await(Supplier<String> probe, Predicate<String> ready) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (System.currentTimeMillis() < deadline) {
+      if (ready.test(probe.get())) {
+        return;
+      }
+      Thread.sleep(100);
+    }
+    throw new AssertionError("Redis stand-in did not become ready");
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
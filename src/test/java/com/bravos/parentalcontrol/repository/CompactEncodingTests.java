@@ -0,0 +1,113 @@
+package com.bravos.parentalcontrol.repository;
+
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactEncodingTests {
+  private static final int SAMPLE = 1000;
+
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+  private static StringRedisTemplate stringRedisTemplate;
+  private static RedisTemplate<Object, Object> legacyTemplate;
+
+  @BeforeAll
+  @SuppressWarnings("unchecked")
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    // Sessions saved here have no socket; keep the reaper from collecting them mid-test.
+    node = cluster.startNode("encoding", "SESSION_REAPER_TICK_MILLIS=3600000");
+    stringRedisTemplate = node.getBean(StringRedisTemplate.class);
+    legacyTemplate = (RedisTemplate<Object, Object>) node.getBean("redisTemplate");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void sessionHashHasNoTypeField() {
+    Session session = newSession(UUID.randomUUID().toString());
+    node.getBean(SessionRepository.class).save(session);
+
+    Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries("session:" + session.getId());
+    assertFalse(fields.containsKey("_class"));
+    assertEquals("device-1", fields.get("deviceId"));
+    assertEquals("device-1",
+        node.getBean(SessionRepository.class).findById(session.getId()).orElseThrow().getDeviceId());
+  }
+
+  /**
+   * Prints Redis memory per key for the legacy and compact formats.
+   * Run with {@code ./gradlew benchmarkTest}.
+   */
+  @Test
+  @Tag("benchmark")
+  void reportMemoryPerKey() {
+    long deadline = System.currentTimeMillis() + 600_000;
+    long legacyBlock = 0;
+    long compactBlock = 0;
+    long legacySession = 0;
+    long compactSession = 0;
+    SessionRepository sessionRepository = node.getBean(SessionRepository.class);
+    for (int i = 0; i < SAMPLE; i++) {
+      String legacyKey = "block_device:legacy-" + i;
+      legacyTemplate.opsForValue().set(legacyKey, deadline, Duration.ofMinutes(10));
+      legacyBlock += memoryUsage(RedisSerializer.java().serialize(legacyKey));
+
+      String compactKey = "block_device:{compact-" + i + "}";
+      stringRedisTemplate.opsForValue().set(compactKey, Long.toString(deadline), Duration.ofMinutes(10));
+      compactBlock += memoryUsage(compactKey.getBytes(StandardCharsets.UTF_8));
+
+      Session session = newSession(UUID.randomUUID().toString());
+      sessionRepository.save(session);
+      String sessionKey = "session:" + session.getId();
+      compactSession += memoryUsage(sessionKey.getBytes(StandardCharsets.UTF_8));
+      stringRedisTemplate.opsForHash().put(sessionKey, "_class", Session.class.getName());
+      legacySession += memoryUsage(sessionKey.getBytes(StandardCharsets.UTF_8));
+    }
+    System.out.printf("block_device: %d -> %d bytes per key%n", legacyBlock / SAMPLE, compactBlock / SAMPLE);
+    System.out.printf("session hash: %d -> %d bytes per key%n", legacySession / SAMPLE, compactSession / SAMPLE);
+    assertTrue(compactBlock < legacyBlock);
+    assertTrue(compactSession < legacySession);
+  }
+
+  private static long memoryUsage(byte[] key) {
+    Object usage = stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+        connection.execute("MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8), key));
+    return usage instanceof Long bytes ? bytes : 0;
+  }
+
+  private static Session newSession(String id) {
+    long now = System.currentTimeMillis();
+    return Session.builder()
+        .id(id)
+        .deviceId("device-1")
+        .deviceName("Test device")
+        .ipAddress("127.0.0.1")
+        .nodeId("encoding")
+        .createdAt(now)
+        .lastActive(now)
+        .build();
+  }
+}
@@ -0,0 +1,86 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures access code generation and redemption under concurrent load and checks that every
+ * code can be redeemed exactly once. Run with {@code ./gradlew benchmarkTest}.
+ */
+@Tag("benchmark")
+class AccessCodeBenchmarkTests {
+  private static final int DEVICES = 200;
+  private static final int CODES_PER_DEVICE = 50;
+
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+
+  @BeforeAll
+  static void start() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("codes");
+  }
+
+  @AfterAll
+  static void stop() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void generateAndRedeemConcurrently() throws Exception {
+    AccessService accessService = node.getBean(AccessService.class);
+    int total = DEVICES * CODES_PER_DEVICE;
+
+    List<Future<String>> generated = new ArrayList<>(total);
+    long start = System.nanoTime();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < total; i++) {
+        String deviceId = "bench-" + (i % DEVICES);
+        generated.add(executor.submit(() -> accessService.generateAccessCode(deviceId, 600)));
+      }
+    }
+    report("generate", total, System.nanoTime() - start);
+
+    AtomicInteger redeemed = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+    start = System.nanoTime();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < total; i++) {
+        String deviceId = "bench-" + (i % DEVICES);
+        String code = generated.get(i).get();
+        for (int attempt = 0; attempt < 2; attempt++) {
+          executor.submit(() -> {
+            if (accessService.verifyAccessRequest(deviceId, code) != null) {
+              redeemed.incrementAndGet();
+            } else {
+              rejected.incrementAndGet();
+            }
+          });
+        }
+      }
+    }
+    report("redeem", total * 2, System.nanoTime() - start);
+
+    assertEquals(total, redeemed.get());
+    assertEquals(total, rejected.get());
+  }
+
+  private static void report(String label, int operations, long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    System.out.printf("%s: %d operations in %.2f s (%.0f ops/s)%n", label, operations, seconds, operations / seconds);
+  }
+}
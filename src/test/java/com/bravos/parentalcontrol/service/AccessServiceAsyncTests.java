@@ -0,0 +1,106 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessServiceAsyncTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext nodeA;
+  private static ConfigurableApplicationContext nodeB;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    nodeA = cluster.startNode("async-a");
+    nodeB = cluster.startNode("async-b");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void blockAndGrantAreRoutedToRemoteDevice() throws Exception {
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocketSession client = TestCluster.connect(nodeA, "device-async", received);
+    try {
+      TestCluster.awaitSession(nodeB, "device-async");
+
+      nodeB.getBean(AccessService.class).blockAfterTimeAsync("device-async", 30).get(5, TimeUnit.SECONDS);
+      assertEquals("BLOCK:30", received.poll(5, TimeUnit.SECONDS));
+      Long remaining = nodeA.getBean(AccessService.class).getRemainingBlockTimeAsync("device-async")
+          .get(5, TimeUnit.SECONDS);
+      assertNotNull(remaining);
+      assertTrue(remaining > 25 && remaining <= 30, "remaining " + remaining);
+
+      nodeB.getBean(AccessService.class).grantAccessAsync("device-async", 60).get(5, TimeUnit.SECONDS);
+      assertEquals("GRANTED:60", received.poll(5, TimeUnit.SECONDS));
+
+      String code = nodeB.getBean(AccessService.class).generateAccessCodeAsync("device-async", 60)
+          .get(5, TimeUnit.SECONDS);
+      assertNotNull(nodeA.getBean(AccessService.class).verifyAccessRequest("device-async", code));
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  void blockOfOfflineDeviceLeavesNothingBehind() {
+    ExecutionException failure = assertThrows(ExecutionException.class, () ->
+        nodeA.getBean(AccessService.class).blockAfterTimeAsync("device-offline", 30).get(5, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+
+    StringRedisTemplate redis = nodeA.getBean(StringRedisTemplate.class);
+    assertFalse(redis.hasKey("block_device:{device-offline}"));
+    assertFalse(redis.opsForHash().hasKey("{enforcement}:deadline", "device-offline"));
+    assertNull(redis.opsForZSet().score("{enforcement}:due", "device-offline"));
+  }
+
+  @Test
+  void blockOfDeviceOnUnreachableNodeIsKeptForReconnect() throws Exception {
+    StringRedisTemplate redis = nodeA.getBean(StringRedisTemplate.class);
+    redis.opsForValue().set("device_session:{device-stranded}", "session-stranded|node-gone");
+
+    nodeA.getBean(AccessService.class).blockAfterTimeAsync("device-stranded", 30).get(5, TimeUnit.SECONDS);
+
+    assertTrue(redis.hasKey("block_device:{device-stranded}"));
+    assertTrue(redis.opsForHash().hasKey("{enforcement}:deadline", "device-stranded"));
+  }
+
+  @Test
+  void pointerWithoutNodeCountsAsNoSession() {
+    StringRedisTemplate redis = nodeA.getBean(StringRedisTemplate.class);
+    redis.opsForValue().set("device_session:{device-malformed}", "session-malformed");
+
+    ExecutionException failure = assertThrows(ExecutionException.class, () ->
+        nodeA.getBean(AccessService.class).grantAccessAsync("device-malformed", 30).get(5, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+  }
+
+  @Test
+  void groupCommandsRejectNonPositiveDurations() {
+    AccessService accessService = nodeA.getBean(AccessService.class);
+    assertThrows(IllegalArgumentException.class, () -> accessService.grantGroup("group-any", 0));
+    assertThrows(IllegalArgumentException.class, () -> accessService.blockGroup("group-any", -5));
+  }
+}
@@ -0,0 +1,134 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.dto.response.AuditEvent;
+import com.bravos.parentalcontrol.dto.response.AuditPage;
+import com.bravos.parentalcontrol.repository.AuditRepository;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("audit", "AUDIT_FLUSH_MILLIS=50");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void deviceEventsArePagedInOrder() throws Exception {
+    long start = System.currentTimeMillis();
+    WebSocketSession client = TestCluster.connect(node, "device-audit", new LinkedBlockingQueue<>());
+    TestCluster.awaitSession(node, "device-audit");
+    AccessService accessService = node.getBean(AccessService.class);
+    accessService.grantAccessAsync("device-audit", 60).get(5, TimeUnit.SECONDS);
+    accessService.blockAfterTimeAsync("device-audit", 30).get(5, TimeUnit.SECONDS);
+    accessService.generateAccessCodeAsync("device-audit", 60).get(5, TimeUnit.SECONDS);
+    assertNull(accessService.verifyAccessRequest("device-audit", "000000"));
+    client.close();
+
+    List<AuditEvent.Type> expected = List.of(AuditEvent.Type.CONNECT, AuditEvent.Type.GRANT,
+        AuditEvent.Type.BLOCK, AuditEvent.Type.CODE_GENERATED, AuditEvent.Type.CODE_REJECTED,
+        AuditEvent.Type.DISCONNECT);
+    AuditLog auditLog = node.getBean(AuditLog.class);
+    List<AuditEvent> events = readAll(auditLog, start);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline && events.size() < expected.size()) {
+      Thread.sleep(50);
+      events = readAll(auditLog, start);
+    }
+
+    assertEquals(expected, events.stream().map(AuditEvent::getType).toList());
+    assertEquals("seconds=60", events.get(1).getDetail());
+    assertEquals("audit", events.get(1).getNodeId());
+    assertEquals(events.getFirst().getSessionId(), events.getLast().getSessionId());
+    assertTrue(events.getFirst().getAt() >= start);
+    assertEquals(0, auditLog.droppedEvents());
+    assertTrue(auditLog.getEvents("device-audit", 0L, start - 1, null, 10).getItems().isEmpty());
+  }
+
+  @Test
+  void eventsAreFoundByTheTimeTheyHappenedNotTheTimeTheyWereWritten() {
+    AuditRepository auditRepository = node.getBean(AuditRepository.class);
+    auditRepository.appendAll(List.of(event("seconds=1", 1_700_000_000_000L), event("seconds=2", 1_700_000_060_000L)));
+    auditRepository.appendAll(List.of(event("seconds=3", 1_700_000_030_000L)));
+
+    AuditLog auditLog = node.getBean(AuditLog.class);
+    List<AuditEvent> first =
+        auditLog.getEvents("device-late", 1_700_000_000_000L, 1_700_000_000_000L, null, 10).getItems();
+    assertEquals(List.of("seconds=1"), first.stream().map(AuditEvent::getDetail).toList());
+    assertEquals("1700000000000-0", first.getFirst().getId());
+    List<AuditEvent> all =
+        auditLog.getEvents("device-late", 1_699_999_999_999L, 1_700_000_060_000L, null, 10).getItems();
+    assertEquals(List.of("seconds=1", "seconds=2", "seconds=3"), all.stream().map(AuditEvent::getDetail).toList());
+    assertEquals("1700000060000-1", all.getLast().getId());
+    assertEquals(1_700_000_030_000L, all.getLast().getAt());
+  }
+
+  @Test
+  void invalidQueriesAreRejected() {
+    AuditLog auditLog = node.getBean(AuditLog.class);
+    assertThrows(IllegalArgumentException.class, () -> auditLog.getEvents("d", null, null, null, 0));
+    assertThrows(IllegalArgumentException.class, () -> auditLog.getEvents("d", 10L, 5L, null, 10));
+    assertThrows(IllegalArgumentException.class, () -> auditLog.getEvents("d", null, null, "abc", 10));
+  }
+
+  @Test
+  void fullBufferDropsInsteadOfBlocking() {
+    ConfigurableApplicationContext small = cluster.startNode("audit-small",
+        "AUDIT_BUFFER_SIZE=2",
+        "AUDIT_FLUSH_MILLIS=3600000");
+    AuditLog auditLog = small.getBean(AuditLog.class);
+    long dropped = auditLog.droppedEvents();
+    for (int i = 0; i < 5; i++) {
+      auditLog.publish(AuditEvent.Type.GRANT, "device-dropped", null, "seconds=" + i);
+    }
+
+    assertEquals(dropped + 3, auditLog.droppedEvents());
+    auditLog.flush();
+    List<AuditEvent> written = auditLog.getEvents("device-dropped", null, null, null, 10).getItems();
+    assertEquals(List.of("seconds=0", "seconds=1"), written.stream().map(AuditEvent::getDetail).toList());
+  }
+
+  private static AuditEvent event(String detail, long at) {
+    return AuditEvent.builder()
+        .type(AuditEvent.Type.GRANT)
+        .deviceId("device-late")
+        .nodeId("audit")
+        .detail(detail)
+        .at(at)
+        .build();
+  }
+
+  private static List<AuditEvent> readAll(AuditLog auditLog, long from) {
+    List<AuditEvent> events = new ArrayList<>();
+    String cursor = null;
+    do {
+      AuditPage page = auditLog.getEvents("device-audit", from, null, cursor, 2);
+      events.addAll(page.getItems());
+      cursor = page.getNextCursor();
+    } while (cursor != null);
+    return events;
+  }
+}
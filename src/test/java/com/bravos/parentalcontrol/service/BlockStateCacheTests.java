@@ -0,0 +1,61 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockStateCacheTests {
+  private static final long PROPAGATION_BOUND_MILLIS = 1000;
+
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext nodeA;
+  private static ConfigurableApplicationContext nodeB;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    nodeA = cluster.startNode("node-a");
+    // A TTL far beyond the bound, so only the invalidation can make the block visible in time.
+    nodeB = cluster.startNode("node-b", "BLOCK_CACHE_TTL_MILLIS=600000");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void blockSetOnOneNodeIsSeenOnAnotherWithinBound() throws Exception {
+    WebSocketSession client = TestCluster.connect(nodeA, "device-cached", new LinkedBlockingQueue<>());
+    try {
+      TestCluster.awaitSession(nodeA, "device-cached");
+      AccessService accessOnB = nodeB.getBean(AccessService.class);
+      assertNull(accessOnB.getRemainingBlockTime("device-cached"));
+      assertNull(accessOnB.getRemainingBlockTime("device-cached"));
+      assertTrue(nodeB.getBean(BlockStateCache.class).hitRatio() > 0);
+
+      nodeA.getBean(AccessService.class).blockAfterTime("device-cached", 120);
+
+      long start = System.currentTimeMillis();
+      Long remaining = accessOnB.getRemainingBlockTime("device-cached");
+      while (remaining == null && System.currentTimeMillis() - start < PROPAGATION_BOUND_MILLIS) {
+        Thread.sleep(10);
+        remaining = accessOnB.getRemainingBlockTime("device-cached");
+      }
+      assertNotNull(remaining, "Block was not visible on node-b within " + PROPAGATION_BOUND_MILLIS + " ms");
+      assertTrue(remaining > 100 && remaining <= 120);
+    } finally {
+      client.close();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnforcementSchedulerTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext nodeA;
+  private static ConfigurableApplicationContext nodeB;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    nodeA = cluster.startNode("node-a");
+    nodeB = cluster.startNode("node-b");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void deadlineIsEnforcedAndResentOnReconnect() throws Exception {
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocketSession client = TestCluster.connect(nodeA, "device-deadline", received);
+    TestCluster.awaitSession(nodeB, "device-deadline");
+
+    nodeB.getBean(AccessService.class).blockAfterTime("device-deadline", 1);
+
+    assertEquals("BLOCK:1", received.poll(5, TimeUnit.SECONDS));
+    assertEquals("BLOCK:0", received.poll(5, TimeUnit.SECONDS));
+    client.close();
+
+    BlockingQueue<String> afterReconnect = new LinkedBlockingQueue<>();
+    WebSocketSession reconnected = TestCluster.connect(nodeB, "device-deadline", afterReconnect);
+    try {
+      assertEquals("BLOCK:0", afterReconnect.poll(5, TimeUnit.SECONDS));
+    } finally {
+      reconnected.close();
+    }
+  }
+
+  @Test
+  void pendingDeadlineIsResentOnReconnect() throws Exception {
+    WebSocketSession client = TestCluster.connect(nodeA, "device-pending", new LinkedBlockingQueue<>());
+    TestCluster.awaitSession(nodeA, "device-pending");
+    nodeA.getBean(AccessService.class).blockAfterTime("device-pending", 600);
+    client.close();
+
+    BlockingQueue<String> afterReconnect = new LinkedBlockingQueue<>();
+    WebSocketSession reconnected = TestCluster.connect(nodeB, "device-pending", afterReconnect);
+    try {
+      String command = afterReconnect.poll(5, TimeUnit.SECONDS);
+      int seconds = Integer.parseInt(command.substring("BLOCK:".length()));
+      assertTrue(seconds > 590 && seconds <= 600, command);
+    } finally {
+      reconnected.close();
+    }
+  }
+
+  @Test
+  void enforcedBlocksPastRetentionAreTrimmed() throws Exception {
+    StringRedisTemplate redis = nodeA.getBean(StringRedisTemplate.class);
+    redis.opsForZSet().add("{enforcement}:enforced_at", "device-forgotten", 1);
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (redis.opsForZSet().score("{enforcement}:enforced_at", "device-forgotten") != null
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertNull(redis.opsForZSet().score("{enforcement}:enforced_at", "device-forgotten"));
+    assertNull(nodeA.getBean(EnforcementScheduler.class).currentCommand("device-forgotten"));
+  }
+}
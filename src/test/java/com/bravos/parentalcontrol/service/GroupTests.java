@@ -0,0 +1,120 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.dto.response.DeviceDelivery;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext nodeA;
+  private static ConfigurableApplicationContext nodeB;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    nodeA = cluster.startNode("group-a");
+    nodeB = cluster.startNode("group-b");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void membershipCanBeEditedAndEmptyGroupsAreRejected() {
+    GroupService groups = nodeA.getBean(GroupService.class);
+    assertEquals(2, groups.addDevices("group-edit", List.of("device-one", "device-two")));
+    assertEquals(1, groups.addDevices("group-edit", List.of("device-two", "device-three")));
+    assertTrue(groups.getGroups().contains("group-edit"));
+
+    groups.removeDevice("group-edit", "device-one");
+    assertEquals(List.of("device-three", "device-two"), groups.getDevices("group-edit").stream().sorted().toList());
+
+    groups.deleteGroup("group-edit");
+    assertFalse(groups.getGroups().contains("group-edit"));
+    assertThrows(IllegalArgumentException.class, () -> groups.getDevices("group-edit"));
+    assertThrows(IllegalArgumentException.class, () -> groups.addDevices("group-edit", List.of()));
+  }
+
+  @Test
+  void blockReachesConnectedMembersOnEveryNode() throws Exception {
+    BlockingQueue<String> receivedA = new LinkedBlockingQueue<>();
+    BlockingQueue<String> receivedB = new LinkedBlockingQueue<>();
+    WebSocketSession clientA = TestCluster.connect(nodeA, "device-class-a", receivedA);
+    WebSocketSession clientB = TestCluster.connect(nodeB, "device-class-b", receivedB);
+    try {
+      TestCluster.awaitSession(nodeA, "device-class-a");
+      TestCluster.awaitSession(nodeA, "device-class-b");
+      nodeA.getBean(GroupService.class)
+          .addDevices("group-class", List.of("device-class-a", "device-class-b", "device-class-absent"));
+      AccessService accessA = nodeA.getBean(AccessService.class);
+      AccessService accessB = nodeB.getBean(AccessService.class);
+      assertNull(accessB.getRemainingBlockTime("device-class-b"));
+
+      Map<String, DeviceDelivery.Status> statuses = statuses(accessA.blockGroup("group-class", 30));
+      assertEquals(DeviceDelivery.Status.DELIVERED, statuses.get("device-class-a"));
+      assertEquals(DeviceDelivery.Status.DELIVERED, statuses.get("device-class-b"));
+      assertEquals(DeviceDelivery.Status.NO_SESSION, statuses.get("device-class-absent"));
+      assertEquals("BLOCK:30", receivedA.poll(5, TimeUnit.SECONDS));
+      assertEquals("BLOCK:30", receivedB.poll(5, TimeUnit.SECONDS));
+
+      StringRedisTemplate redis = nodeA.getBean(StringRedisTemplate.class);
+      assertTrue(redis.hasKey("block_device:{device-class-b}"));
+      assertFalse(redis.hasKey("block_device:{device-class-absent}"));
+      long deadline = System.currentTimeMillis() + 5000;
+      while (System.currentTimeMillis() < deadline && accessB.getRemainingBlockTime("device-class-b") == null) {
+        Thread.sleep(50);
+      }
+      assertNotNull(accessB.getRemainingBlockTime("device-class-b"), "stale near-cache entry on the other node");
+    } finally {
+      clientA.close();
+      clientB.close();
+    }
+  }
+
+  @Test
+  void grantLiftsEnforcementOfOfflineMembers() throws Exception {
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocketSession client = TestCluster.connect(nodeA, "device-home-online", received);
+    try {
+      TestCluster.awaitSession(nodeA, "device-home-online");
+      nodeA.getBean(GroupService.class).addDevices("group-home", List.of("device-home-online", "device-home-offline"));
+      StringRedisTemplate redis = nodeA.getBean(StringRedisTemplate.class);
+      redis.opsForZSet().add("{enforcement}:enforced_at", "device-home-offline", System.currentTimeMillis());
+
+      Map<String, DeviceDelivery.Status> statuses =
+          statuses(nodeA.getBean(AccessService.class).grantGroup("group-home", 60));
+      assertEquals(DeviceDelivery.Status.DELIVERED, statuses.get("device-home-online"));
+      assertEquals(DeviceDelivery.Status.NO_SESSION, statuses.get("device-home-offline"));
+      assertEquals("GRANTED:60", received.poll(5, TimeUnit.SECONDS));
+      assertNull(redis.opsForZSet().score("{enforcement}:enforced_at", "device-home-offline"));
+    } finally {
+      client.close();
+    }
+  }
+
+  private static Map<String, DeviceDelivery.Status> statuses(List<DeviceDelivery> deliveries) {
+    return deliveries.stream().collect(Collectors.toMap(DeviceDelivery::getDeviceId, DeviceDelivery::getStatus));
+  }
+}
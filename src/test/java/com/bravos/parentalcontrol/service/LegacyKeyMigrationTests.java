@@ -0,0 +1,62 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.repository.BlockDeadlineRepository;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LegacyKeyMigrationTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+  private static StringRedisTemplate redis;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("migration");
+    redis = node.getBean(StringRedisTemplate.class);
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void legacyKeysAreMigratedOnce() throws InterruptedException {
+    long wait = System.currentTimeMillis() + 5000;
+    while (!Boolean.TRUE.equals(redis.hasKey(LegacyKeyMigration.DONE_KEY)) && System.currentTimeMillis() < wait) {
+      Thread.sleep(20);
+    }
+    RedisTemplate<Object, Object> legacyTemplate = (RedisTemplate<Object, Object>) node.getBean("redisTemplate");
+    long deadline = System.currentTimeMillis() + 120_000;
+    legacyTemplate.opsForValue().set("block_device:legacy-device", deadline, Duration.ofMinutes(2));
+    legacyTemplate.opsForValue().set("block_device:expired-device", 1L, Duration.ofMinutes(2));
+    BlockDeadlineRepository blockDeadlineRepository = node.getBean(BlockDeadlineRepository.class);
+    assertNull(blockDeadlineRepository.find("legacy-device"));
+
+    LegacyKeyMigration migration = node.getBean(LegacyKeyMigration.class);
+    assertEquals(0, migration.run());
+    redis.delete(LegacyKeyMigration.DONE_KEY);
+    assertEquals(2, migration.run());
+
+    assertEquals(deadline, blockDeadlineRepository.find("legacy-device"));
+    Long blockTtl = redis.getExpire("block_device:{legacy-device}");
+    assertTrue(blockTtl != null && blockTtl > 0 && blockTtl <= 120, "ttl " + blockTtl);
+    assertNull(legacyTemplate.opsForValue().get("block_device:legacy-device"));
+    assertNull(legacyTemplate.opsForValue().get("block_device:expired-device"));
+    assertNull(blockDeadlineRepository.find("expired-device"));
+  }
+}
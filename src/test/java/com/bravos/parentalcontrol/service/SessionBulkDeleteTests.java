@@ -0,0 +1,119 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.dto.response.BulkDeleteResult;
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import com.bravos.parentalcontrol.repository.SessionRepository;
+import com.bravos.parentalcontrol.support.TestCluster;
+import com.bravos.parentalcontrol.websocket.WebSocketSessionManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SessionBulkDeleteTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("bulk", "SESSION_CLOSE_DEADLINE_MILLIS=300");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void deleteByDeviceCountsRemovedSessions() throws Exception {
+    WebSocketSession client = TestCluster.connect(node, "device-bulk-single", new LinkedBlockingQueue<>());
+    TestCluster.awaitSession(node, "device-bulk-single");
+    SessionService sessionService = node.getBean(SessionService.class);
+
+    BulkDeleteResult result = sessionService.deleteSessionsByDeviceId("device-bulk-single");
+    assertEquals(1, result.getRemoved());
+    assertEquals(0, result.getFailed());
+    assertEquals(0, sessionService.deleteSessionsByDeviceId("device-bulk-unknown").getRemoved());
+    awaitClosed(client);
+  }
+
+  @Test
+  void deleteAllStopsWaitingForSocketsAtTheDeadline() throws Exception {
+    List<WebSocketSession> clients = List.of(
+        TestCluster.connect(node, "device-bulk-0", new LinkedBlockingQueue<>()),
+        TestCluster.connect(node, "device-bulk-1", new LinkedBlockingQueue<>()));
+    TestCluster.awaitSession(node, "device-bulk-0");
+    TestCluster.awaitSession(node, "device-bulk-1");
+    store("hung-session", "device-bulk-hung");
+    node.getBean(WebSocketSessionManager.class).register("hung-session", hangingSocket());
+    store("gone-session", "device-bulk-gone");
+    node.getBean(StringRedisTemplate.class).delete("session:gone-session");
+
+    long start = System.currentTimeMillis();
+    BulkDeleteResult result = node.getBean(SessionService.class).deleteAllSessions();
+    long elapsed = System.currentTimeMillis() - start;
+
+    // the hash-less member is cleaned up too but only deleted hashes are counted
+    assertEquals(3, result.getRemoved());
+    assertEquals(1, result.getFailed());
+    assertTrue(elapsed < 3000, "took " + elapsed + " ms");
+    StringRedisTemplate redis = node.getBean(StringRedisTemplate.class);
+    assertEquals(0, redis.opsForSet().size("session"));
+    assertEquals(0, redis.opsForZSet().size(SessionIndexRepository.CREATED_INDEX_KEY));
+    for (WebSocketSession client : clients) {
+      awaitClosed(client);
+    }
+  }
+
+  private static void store(String id, String deviceId) {
+    long now = System.currentTimeMillis();
+    Session session = node.getBean(SessionRepository.class).save(Session.builder()
+        .id(id)
+        .deviceId(deviceId)
+        .deviceName("Bulk")
+        .ipAddress("127.0.0.1")
+        .nodeId("bulk")
+        .createdAt(now)
+        .lastActive(now)
+        .build());
+    SessionIndexRepository index = node.getBean(SessionIndexRepository.class);
+    index.add(session);
+    index.bindDevice(deviceId, id, "bulk");
+  }
+
+  private static WebSocketSession hangingSocket() throws IOException {
+    WebSocketSession socket = mock(WebSocketSession.class);
+    when(socket.getId()).thenReturn("hung-session");
+    when(socket.isOpen()).thenReturn(true);
+    doAnswer(invocation -> {
+      Thread.sleep(10_000);
+      return null;
+    }).when(socket).close(any(CloseStatus.class));
+    return socket;
+  }
+
+  private static void awaitClosed(WebSocketSession client) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline && client.isOpen()) {
+      Thread.sleep(50);
+    }
+    assertFalse(client.isOpen());
+  }
+}
@@ -0,0 +1,121 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class SessionFeedTests {
+  private static final String SECRET = "feed-secret";
+
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext nodeA;
+  private static ConfigurableApplicationContext nodeB;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    String hash = "PARENTAL_CONTROL_PASSWORD_HASH=" + new BCryptPasswordEncoder().encode(SECRET);
+    nodeA = cluster.startNode("feed-a", hash, "FEED_COALESCE_MILLIS=50");
+    nodeB = cluster.startNode("feed-b", hash, "FEED_COALESCE_MILLIS=50");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void feedSendsSnapshotThenDeltasFromAnyNode() throws Exception {
+    WebSocketSession before = TestCluster.connect(nodeB, "device-before", new LinkedBlockingQueue<>());
+    TestCluster.awaitSession(nodeB, "device-before");
+    BlockingQueue<String[]> events = new LinkedBlockingQueue<>();
+    HttpResponse<Stream<String>> response = subscribe(nodeA, events);
+    try {
+      assertEquals(200, response.statusCode());
+      String[] snapshot = await(events, event -> event[0].equals("snapshot"));
+      assertTrue(snapshot[1].contains("\"deviceId\":\"device-before\""), snapshot[1]);
+      await(events, event -> event[0].equals("ready"));
+
+      WebSocketSession client = TestCluster.connect(nodeB, "device-feed", new LinkedBlockingQueue<>());
+      Session session = TestCluster.awaitSession(nodeB, "device-feed");
+      await(events, delta("\"type\":\"CREATED\"", "\"sessionId\":\"" + session.getId() + "\""));
+
+      nodeA.getBean(AccessService.class).grantAccessAsync("device-feed", 60).get(5, TimeUnit.SECONDS);
+      await(events, delta("\"type\":\"GRANTED\"", "\"deviceId\":\"device-feed\"", "\"seconds\":60"));
+
+      client.close();
+      await(events, delta("\"type\":\"CLOSED\"", "\"sessionId\":\"" + session.getId() + "\""));
+
+      SessionFeed feed = nodeB.getBean(SessionFeed.class);
+      feed.created(Session.builder().id("coalesced").deviceId("device-coalesced").createdAt(1L).build());
+      feed.lastActive("coalesced", 12345L);
+      feed.publish();
+      String[] coalesced = await(events, delta("\"sessionId\":\"coalesced\""));
+      assertTrue(coalesced[1].contains("\"lastActive\":12345"), coalesced[1]);
+      assertFalse(coalesced[1].contains("LAST_ACTIVE"), coalesced[1]);
+    } finally {
+      response.body().close();
+      before.close();
+    }
+  }
+
+  private static HttpResponse<Stream<String>> subscribe(ConfigurableApplicationContext node,
+                                                        BlockingQueue<String[]> events) throws Exception {
+    HttpRequest request = HttpRequest.newBuilder()
+        .uri(URI.create("http://localhost:" + node.getEnvironment().getProperty("local.server.port")
+            + "/sessions/feed"))
+        .header("Authorization", SECRET)
+        .header("Accept", "text/event-stream")
+        .GET()
+        .build();
+    HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+        .send(request, HttpResponse.BodyHandlers.ofLines());
+    Thread.ofVirtual().start(() -> {
+      String[] name = {"message"};
+      response.body().forEach(line -> {
+        if (line.startsWith("event:")) {
+          name[0] = line.substring("event:".length()).trim();
+        } else if (line.startsWith("data:")) {
+          events.add(new String[]{name[0], line.substring("data:".length())});
+        }
+      });
+    });
+    return response;
+  }
+
+  private static Predicate<String[]> delta(String... fragments) {
+    return event -> event[0].equals("delta") && Stream.of(fragments).allMatch(event[1]::contains);
+  }
+
+  private static String[] await(BlockingQueue<String[]> events, Predicate<String[]> match) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline) {
+      String[] event = events.poll(100, TimeUnit.MILLISECONDS);
+      if (event != null && match.test(event)) {
+        return event;
+      }
+    }
+    return fail("no matching feed event");
+  }
+}
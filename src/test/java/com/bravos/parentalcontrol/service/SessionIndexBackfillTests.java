@@ -0,0 +1,72 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import com.bravos.parentalcontrol.repository.SessionRepository;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionIndexBackfillTests {
+  private static final String SECRET = "backfill-secret";
+
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("backfill",
+        "PARENTAL_CONTROL_PASSWORD_HASH=" + new BCryptPasswordEncoder().encode(SECRET));
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void sessionsSavedBeforeTheIndexAreBackfilledOnceAndListed() throws Exception {
+    StringRedisTemplate redis = node.getBean(StringRedisTemplate.class);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!Boolean.TRUE.equals(redis.hasKey(SessionIndexBackfill.DONE_KEY)) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    node.getBean(SessionRepository.class).save(Session.builder()
+        .id("legacy-session")
+        .deviceId("device-legacy")
+        .createdAt(1_700_000_000_000L)
+        .build());
+    redis.delete(SessionIndexBackfill.DONE_KEY);
+
+    SessionIndexBackfill backfill = node.getBean(SessionIndexBackfill.class);
+    assertEquals(1, backfill.run());
+    assertNotNull(redis.opsForZSet().score(SessionIndexRepository.CREATED_INDEX_KEY, "legacy-session"));
+    assertEquals(0, backfill.run());
+
+    HttpRequest request = HttpRequest.newBuilder()
+        .uri(URI.create("http://localhost:" + node.getEnvironment().getProperty("local.server.port") + "/sessions"))
+        .header("Authorization", SECRET)
+        .GET()
+        .build();
+    HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    assertEquals(200, response.statusCode());
+    assertTrue(response.body().startsWith("{\"success\":true"), response.body());
+    assertTrue(response.body().contains("\"id\":\"legacy-session\""), response.body());
+    assertTrue(response.body().endsWith("]}"), response.body());
+  }
+}
@@ -0,0 +1,143 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.repository.SessionIndexRepository;
+import com.bravos.parentalcontrol.repository.SessionRepository;
+import com.bravos.parentalcontrol.support.TestCluster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionReaperTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("reaper",
+        "SESSION_REAPER_TICK_MILLIS=100",
+        "SESSION_REAPER_BATCH_SIZE=2");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void orphansAreReapedAndLiveSessionsKept() throws Exception {
+    WebSocketSession client = TestCluster.connect(node, "device-live", new LinkedBlockingQueue<>());
+    try {
+      Session live = TestCluster.awaitSession(node, "device-live");
+      StringRedisTemplate redis = node.getBean(StringRedisTemplate.class);
+      Long ttl = redis.getExpire("session:" + live.getId());
+      assertNotNull(ttl);
+      assertTrue(ttl > 0, "ttl " + ttl);
+
+      Session crashed = store("crashed-session", "device-crashed", "crashed-node");
+      Session expired = store("expired-session", "device-expired", "reaper");
+      redis.delete("session:" + expired.getId());
+      redis.opsForSet().add("session:deviceId:device-ghost", "ghost-session");
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (System.currentTimeMillis() < deadline && !reaped(redis, crashed, expired)) {
+        Thread.sleep(100);
+      }
+      assertTrue(reaped(redis, crashed, expired), "orphans left in Redis");
+      assertEquals(live.getId(), node.getBean(SessionService.class).getSessionByDeviceId("device-live").getId());
+      assertTrue(node.getBean(MeterRegistry.class).find("session.reaped").counters().stream()
+          .mapToDouble(Counter::count).sum() >= 3);
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  void sessionsLeftByThisNodeAreReconciledWithoutTheLease() throws Exception {
+    StringRedisTemplate redis = node.getBean(StringRedisTemplate.class);
+    redis.opsForValue().set("session_reaper:lease", "other-node", Duration.ofMinutes(1));
+    try {
+      Session stale = store("stale-session", "device-stale", "reaper");
+      node.getBean(SessionReaper.class).reconcileLocal();
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (System.currentTimeMillis() < deadline && !reaped(redis, stale)) {
+        Thread.sleep(100);
+      }
+      assertTrue(reaped(redis, stale), "stale session left in Redis");
+      assertNull(node.getBean(SessionIndexRepository.class).findSessionIdByDevice("device-stale"));
+    } finally {
+      redis.delete("session_reaper:lease");
+    }
+  }
+
+  @Test
+  void expiredSessionWithASocketOpenHereIsKept() throws Exception {
+    WebSocketSession client = TestCluster.connect(node, "device-lapsed", new LinkedBlockingQueue<>());
+    try {
+      Session lapsed = TestCluster.awaitSession(node, "device-lapsed");
+      StringRedisTemplate redis = node.getBean(StringRedisTemplate.class);
+      redis.delete("session:" + lapsed.getId());
+      Session expired = store("lapsed-marker-session", "device-lapsed-marker", "reaper");
+      redis.delete("session:" + expired.getId());
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (System.currentTimeMillis() < deadline && !reaped(redis, expired)) {
+        Thread.sleep(100);
+      }
+      assertTrue(reaped(redis, expired), "orphan left in Redis");
+      Thread.sleep(2000);
+      assertTrue(client.isOpen());
+      assertTrue(redis.opsForSet().isMember("session", lapsed.getId()));
+      assertEquals(lapsed.getId(),
+          node.getBean(SessionIndexRepository.class).findSessionIdByDevice("device-lapsed"));
+    } finally {
+      client.close();
+    }
+  }
+
+  private static Session store(String id, String deviceId, String nodeId) {
+    long now = System.currentTimeMillis();
+    Session session = node.getBean(SessionRepository.class).save(Session.builder()
+        .id(id)
+        .deviceId(deviceId)
+        .deviceName("Orphan")
+        .ipAddress("127.0.0.1")
+        .nodeId(nodeId)
+        .createdAt(now)
+        .lastActive(now)
+        .build());
+    SessionIndexRepository index = node.getBean(SessionIndexRepository.class);
+    index.add(session);
+    index.bindDevice(deviceId, id, nodeId);
+    return session;
+  }
+
+  private static boolean reaped(StringRedisTemplate redis, Session... sessions) {
+    for (Session session : sessions) {
+      if (redis.hasKey("session:" + session.getId())
+          || redis.opsForSet().isMember("session", session.getId())
+          || redis.opsForZSet().score(SessionIndexRepository.CREATED_INDEX_KEY, session.getId()) != null
+          || redis.hasKey("session:deviceId:" + session.getDeviceId())
+          || redis.hasKey(SessionIndexRepository.deviceKey(session.getDeviceId()))) {
+        return false;
+      }
+    }
+    return !redis.hasKey("session:deviceId:device-ghost");
+  }
+}
@@ -0,0 +1,145 @@
+package com.bravos.parentalcontrol.service;
+
+import com.bravos.parentalcontrol.dto.response.DeviceUsage;
+import com.bravos.parentalcontrol.repository.UsageLedgerRepository;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UsageLedgerTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+  private static UsageLedger ledger;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("usage",
+        "USAGE_TIME_ZONE=UTC",
+        "USAGE_MAX_GAP_SECONDS=360",
+        "USAGE_FLUSH_MILLIS=3600000");
+    ledger = node.getBean(UsageLedger.class);
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void activeAndGrantedTimeAreAggregatedPerPeriod() {
+    ledger.recordGranted("device-usage", 600, at("2026-03-09T12:00:00Z"));
+    ledger.recordGranted("device-usage", 1200, at("2026-03-10T12:00:00Z"));
+    ledger.recordGranted("device-usage", 300, at("2026-03-16T12:00:00Z"));
+    ledger.start("usage-session", "device-usage", at("2026-03-09T23:58:30Z"));
+    ledger.heartbeat("usage-session", at("2026-03-10T00:01:30Z"));
+    ledger.heartbeat("usage-session", at("2026-03-10T00:04:30Z"));
+    ledger.heartbeat("usage-session", at("2026-03-10T02:00:00Z"));
+    ledger.end("usage-session", at("2026-03-10T02:01:00Z"));
+    ledger.flush();
+
+    List<String> devices = List.of("device-usage", "device-idle");
+    DeviceUsage day = ledger.getUsage(devices, "day", "2026-03-10").getFirst();
+    // 90 s after midnight, 180 s, 360 s capped from a long gap, 60 s until close
+    assertEquals(11, day.getActiveMinutes());
+    assertEquals(20, day.getGrantedMinutes());
+
+    List<DeviceUsage> week = ledger.getUsage(devices, "WEEK", "2026-03-12");
+    assertEquals("2026-03-09", week.getFirst().getFrom());
+    assertEquals("2026-03-15", week.getFirst().getTo());
+    assertEquals(13, week.getFirst().getActiveMinutes());
+    assertEquals(30, week.getFirst().getGrantedMinutes());
+    assertEquals(0, week.get(1).getActiveMinutes());
+    assertEquals(0, week.get(1).getGrantedMinutes());
+
+    DeviceUsage month = ledger.getUsage(devices, "month", "2026-03-31").getFirst();
+    assertEquals(35, month.getGrantedMinutes());
+  }
+
+  @Test
+  void weekSpanningNewYearReadsBothYears() {
+    ledger.recordGranted("device-new-year", 60, at("2025-12-31T10:00:00Z"));
+    ledger.recordGranted("device-new-year", 120, at("2026-01-02T10:00:00Z"));
+    ledger.flush();
+
+    DeviceUsage week = ledger.getUsage(List.of("device-new-year"), "week", "2026-01-01").getFirst();
+    assertEquals("2025-12-29", week.getFrom());
+    assertEquals(3, week.getGrantedMinutes());
+  }
+
+  @Test
+  void blockedSessionEarnsNoActiveTime() {
+    ledger.start("blocked-session", "device-blocked", at("2026-04-01T10:00:00Z"));
+    ledger.heartbeat("blocked-session", at("2026-04-01T10:02:00Z"));
+    ledger.block("blocked-session", at("2026-04-01T10:03:00Z"));
+    ledger.heartbeat("blocked-session", at("2026-04-01T10:05:00Z"));
+    ledger.heartbeat("blocked-session", at("2026-04-01T10:09:00Z"));
+    ledger.unblock("blocked-session", at("2026-04-01T10:10:00Z"));
+    ledger.heartbeat("blocked-session", at("2026-04-01T10:12:00Z"));
+    ledger.block("blocked-session", at("2026-04-01T10:13:00Z"));
+    ledger.end("blocked-session", at("2026-04-01T10:20:00Z"));
+    ledger.flush();
+
+    // 3 minutes before the first block, 3 between the grant and the second block
+    assertEquals(6, ledger.getUsage(List.of("device-blocked"), "day", "2026-04-01").getFirst().getActiveMinutes());
+  }
+
+  @Test
+  void unflushedUsageIsIncluded() {
+    ledger.recordGranted("device-pending", 240, at("2026-05-05T10:00:00Z"));
+
+    assertEquals(4, ledger.getUsage(List.of("device-pending"), "day", "2026-05-05").getFirst().getGrantedMinutes());
+  }
+
+  @Test
+  void invalidQueriesAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> ledger.getUsage(List.of(), "day", null));
+    assertThrows(IllegalArgumentException.class, () -> ledger.getUsage(List.of("d"), "year", null));
+    assertThrows(IllegalArgumentException.class, () -> ledger.getUsage(List.of("d"), "day", "10/03/2026"));
+  }
+
+  @Test
+  void deviceYearStaysWithinAFewKilobytes() {
+    LocalDate day = LocalDate.of(2024, 1, 1);
+    while (day.getYear() == 2024) {
+      long noon = day.atTime(12, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+      ledger.recordGranted("device-full-year", 2_000_000, noon);
+      ledger.start("full-year-session", "device-full-year", noon);
+      ledger.end("full-year-session", noon + 300_000);
+      day = day.plusDays(1);
+    }
+    ledger.flush();
+
+    DeviceUsage year = ledger.getUsage(List.of("device-full-year"), "month", "2024-12-15").getFirst();
+    assertEquals(31 * 5, year.getActiveMinutes());
+    assertEquals(31 * ((1 << 20) - 1) / 60, year.getGrantedMinutes());
+    long bytes = memoryUsage(UsageLedgerRepository.key("device-full-year", 2024));
+    System.out.printf("usage ledger: %d bytes per device-year%n", bytes);
+    assertTrue(bytes > 0 && bytes < 4096, bytes + " bytes");
+  }
+
+  private static long at(String instant) {
+    return Instant.parse(instant).toEpochMilli();
+  }
+
+  private static long memoryUsage(byte[] key) {
+    Object usage = node.getBean(StringRedisTemplate.class).execute((RedisCallback<Object>) connection ->
+        connection.execute("MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8), key));
+    return usage instanceof Long bytes ? bytes : 0;
+  }
+}
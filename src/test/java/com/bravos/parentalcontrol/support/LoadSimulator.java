@@ -0,0 +1,327 @@
+package com.bravos.parentalcontrol.support;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Simulates a fleet of devices and a parent app against running nodes. Devices connect to
+ * {@code /ws/control} with the usual headers, exchange {@code ping}/{@code pong} and redeem access
+ * codes; WebSocket ping frames from the heartbeat are answered by the client container. Parent
+ * drivers call {@code /access/*} and {@code /sessions} on any node, and the latency of a command
+ * is measured from the moment it is sent until the device receives the push.
+ */
+public class LoadSimulator {
+  public static final int GRANT_SECONDS = 600;
+  public static final int BLOCK_SECONDS = 3600;
+
+  private static final int MAX_CONNECT_ATTEMPTS = 50;
+  private static final long TIMEOUT_MILLIS = 10_000;
+  private static final int SESSIONS_PAGE_SIZE = 100;
+  private static final Pattern CODE = Pattern.compile("\"data\":\"(\\d+)\"");
+
+  public enum Operation {
+    PING, GRANT, BLOCK, GENERATE_CODE, REDEEM, LIST_SESSIONS
+  }
+
+  private final List<ConfigurableApplicationContext> nodes;
+  private final String secret;
+  private final StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+  private final List<Device> devices = new ArrayList<>();
+  private final Map<Operation, Latencies> latencies = new EnumMap<>(Operation.class);
+  private final AtomicInteger connectRetries = new AtomicInteger();
+  private final AtomicInteger connectErrors = new AtomicInteger();
+
+  private long connectNanos;
+  private long heapPerConnection;
+
+  /**
+   * @param nodes  nodes to spread devices and parent requests across
+   * @param secret plain secret accepted by the nodes' {@code AuthFilter}
+   */
+  public LoadSimulator(List<ConfigurableApplicationContext> nodes, String secret) {
+    this.nodes = nodes;
+    this.secret = secret;
+    for (Operation operation : Operation.values()) {
+      latencies.put(operation, new Latencies());
+    }
+  }
+
+  /**
+   * Connect {@code count} devices at once, round-robin over the nodes, and wait until every session
+   * is registered. Heap growth is measured across the whole step.
+   */
+  public void connect(int count) throws InterruptedException {
+    long heapBefore = usedHeap();
+    List<Future<Device>> futures = new ArrayList<>(count);
+    long start = System.nanoTime();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < count; i++) {
+        Device device = new Device("sim-" + i, nodes.get(i % nodes.size()));
+        futures.add(executor.submit(() -> device.connect()));
+      }
+    }
+    connectNanos = System.nanoTime() - start;
+    for (Future<Device> future : futures) {
+      try {
+        devices.add(future.get());
+      } catch (ExecutionException e) {
+        connectErrors.incrementAndGet();
+      }
+    }
+    heapPerConnection = (usedHeap() - heapBefore) / Math.max(1, devices.size());
+  }
+
+  /**
+   * Have every device send {@code rounds} text pings and wait for each {@code pong}.
+   */
+  public void ping(int rounds) throws InterruptedException {
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (Device device : devices) {
+        executor.submit(() -> {
+          for (int i = 0; i < rounds; i++) {
+            device.roundTrip(Operation.PING, "pong", () -> device.send("ping"));
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Issue {@code commands} parent commands from {@code parents} concurrent drivers. Commands cycle
+   * through grant, block and code redemption; every tenth command also lists a page of sessions.
+   * REST calls go to a different node than the one holding the device whenever there is more than one.
+   */
+  public void drive(int commands, int parents) throws InterruptedException {
+    AtomicInteger next = new AtomicInteger();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int p = 0; p < parents; p++) {
+        executor.submit(() -> {
+          for (int i = next.getAndIncrement(); i < commands; i = next.getAndIncrement()) {
+            command(i);
+          }
+        });
+      }
+    }
+  }
+
+  private void command(int i) {
+    Device device = devices.get(i % devices.size());
+    ConfigurableApplicationContext node = nodes.get((nodes.indexOf(device.node) + 1) % nodes.size());
+    if (i % 10 == 0) {
+      timed(Operation.LIST_SESSIONS, () -> get(node, "/sessions?limit=" + SESSIONS_PAGE_SIZE));
+    }
+    device.lock.lock();
+    try {
+      switch (i % 3) {
+        case 0 -> device.roundTrip(Operation.GRANT, "GRANTED:" + GRANT_SECONDS,
+            () -> post(node, "/access/grant", device.id, GRANT_SECONDS));
+        case 1 -> device.roundTrip(Operation.BLOCK, "BLOCK:" + BLOCK_SECONDS,
+            () -> post(node, "/access/block", device.id, BLOCK_SECONDS));
+        default -> {
+          String[] code = new String[1];
+          boolean generated = timed(Operation.GENERATE_CODE,
+              () -> code[0] = extractCode(post(node, "/access/generate-code", device.id, GRANT_SECONDS)));
+          if (generated) {
+            device.roundTrip(Operation.REDEEM, "GRANTED:", () -> device.send("PASSWORD:" + code[0]));
+          }
+        }
+      }
+    } finally {
+      device.lock.unlock();
+    }
+  }
+
+  public int connectedDevices() {
+    return devices.size();
+  }
+
+  public int errors(Operation operation) {
+    return latencies.get(operation).errors.get();
+  }
+
+  /**
+   * Print connect rate, heap per connection and, per operation, latency percentiles and error rate.
+   */
+  public void printReport() {
+    double connectSeconds = connectNanos / 1e9;
+    System.out.printf("connect: %d devices in %.2f s (%.0f/s), %d retry-later responses, %d failed%n",
+        devices.size(), connectSeconds, devices.size() / connectSeconds, connectRetries.get(), connectErrors.get());
+    System.out.printf("heap: %d bytes per connection (client and server ends)%n", heapPerConnection);
+    System.out.printf("%-14s %8s %9s %9s %9s %9s %8s%n",
+        "operation", "count", "p50 ms", "p95 ms", "p99 ms", "max ms", "errors");
+    latencies.forEach((operation, samples) -> samples.print(operation));
+  }
+
+  private String post(ConfigurableApplicationContext node, String path, String deviceId, int seconds) throws Exception {
+    String body = "{\"deviceId\":\"" + deviceId + "\",\"seconds\":" + seconds + "}";
+    return send(HttpRequest.newBuilder(uri(node, path))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body)));
+  }
+
+  private String get(ConfigurableApplicationContext node, String path) throws Exception {
+    return send(HttpRequest.newBuilder(uri(node, path)).GET());
+  }
+
+  private String send(HttpRequest.Builder request) throws Exception {
+    HttpResponse<String> response = httpClient.send(request
+            .header("Authorization", secret)
+            .timeout(Duration.ofMillis(TIMEOUT_MILLIS))
+            .build(),
+        HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+    }
+    return response.body();
+  }
+
+  private static URI uri(ConfigurableApplicationContext node, String path) {
+    return URI.create("http://localhost:" + node.getEnvironment().getProperty("local.server.port") + path);
+  }
+
+  private static String extractCode(String body) throws IOException {
+    Matcher matcher = CODE.matcher(body);
+    if (!matcher.find()) {
+      throw new IOException("No code in response: " + body);
+    }
+    return matcher.group(1);
+  }
+
+  private boolean timed(Operation operation, Action action) {
+    long start = System.nanoTime();
+    try {
+      action.run();
+      latencies.get(operation).record(System.nanoTime() - start);
+      return true;
+    } catch (Exception e) {
+      latencies.get(operation).errors.incrementAndGet();
+      return false;
+    }
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    System.gc();
+    Thread.sleep(200);
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  @FunctionalInterface
+  private interface Action {
+    void run() throws Exception;
+  }
+
+  private record Expectation(String prefix, CompletableFuture<Void> delivered) {
+  }
+
+  private final class Device extends TextWebSocketHandler {
+    private final String id;
+    private final ConfigurableApplicationContext node;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicReference<Expectation> expected = new AtomicReference<>();
+    private WebSocketSession session;
+
+    private Device(String id, ConfigurableApplicationContext node) {
+      this.id = id;
+      this.node = node;
+    }
+
+    private Device connect() throws Exception {
+      for (int attempt = 1; ; attempt++) {
+        try {
+          session = webSocketClient.execute(this, TestCluster.deviceHeaders(id), TestCluster.controlEndpoint(node))
+              .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+          break;
+        } catch (ExecutionException e) {
+          if (attempt >= MAX_CONNECT_ATTEMPTS) {
+            throw e;
+          }
+          connectRetries.incrementAndGet();
+          Thread.sleep(ThreadLocalRandom.current().nextLong(20, 100));
+        }
+      }
+      TestCluster.awaitSession(node, id);
+      return this;
+    }
+
+    private void send(String text) throws IOException {
+      session.sendMessage(new TextMessage(text));
+    }
+
+    /**
+     * Run an action and wait until this device receives a message starting with {@code prefix}.
+     */
+    private void roundTrip(Operation operation, String prefix, Action action) {
+      Expectation expectation = new Expectation(prefix, new CompletableFuture<>());
+      expected.set(expectation);
+      timed(operation, () -> {
+        action.run();
+        expectation.delivered().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      });
+      expected.compareAndSet(expectation, null);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+      Expectation expectation = expected.get();
+      if (expectation != null && message.getPayload().startsWith(expectation.prefix())
+          && expected.compareAndSet(expectation, null)) {
+        expectation.delivered().complete(null);
+      }
+    }
+  }
+
+  private static final class Latencies {
+    private final List<Long> samples = new ArrayList<>();
+    private final AtomicInteger errors = new AtomicInteger();
+
+    private synchronized void record(long nanos) {
+      samples.add(nanos);
+    }
+
+    private synchronized void print(Operation operation) {
+      long[] sorted = samples.stream().mapToLong(Long::longValue).toArray();
+      Arrays.sort(sorted);
+      int total = sorted.length + errors.get();
+      System.out.printf("%-14s %8d %9.2f %9.2f %9.2f %9.2f %7.2f%%%n", operation, sorted.length,
+          percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0),
+          total == 0 ? 0.0 : 100.0 * errors.get() / total);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(quantile * sorted.length) - 1;
+      return sorted[Math.max(0, index)] / 1e6;
+    }
+  }
+}
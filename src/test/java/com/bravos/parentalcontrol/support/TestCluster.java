@@ -0,0 +1,138 @@
+package com.bravos.parentalcontrol.support;
+
+import com.bravos.parentalcontrol.ParentalControlApplication;
+import com.bravos.parentalcontrol.entity.Session;
+import com.bravos.parentalcontrol.service.SessionService;
+import com.bravos.parentalcontrol.websocket.protocol.BinaryProtocol;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An embedded Redis plus any number of application nodes pointed at it, for integration tests.
+ */
+public class TestCluster implements AutoCloseable {
+  private final RedisServer redisServer;
+  private final int redisPort;
+  private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+  public TestCluster() throws IOException {
+    this.redisPort = freePort();
+    this.redisServer = new RedisServer(redisPort);
+    redisServer.start();
+  }
+
+  public int getRedisPort() {
+    return redisPort;
+  }
+
+  public ConfigurableApplicationContext startNode(String nodeId, String... properties) {
+    List<String> all = new ArrayList<>(List.of(
+        "server.port=0",
+        "NODE_ID=" + nodeId,
+        "REDIS_HOST=localhost",
+        "REDIS_PORT=" + redisPort));
+    all.addAll(List.of(properties));
+    ConfigurableApplicationContext node = new SpringApplicationBuilder(ParentalControlApplication.class)
+        .properties(all.toArray(String[]::new))
+        .run();
+    nodes.add(node);
+    return node;
+  }
+
+  public static URI controlEndpoint(ConfigurableApplicationContext node) {
+    return URI.create("ws://localhost:" + node.getEnvironment().getProperty("local.server.port") + "/ws/control");
+  }
+
+  public static WebSocketHttpHeaders deviceHeaders(String deviceId) {
+    WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+    headers.add("X-Device-Id", deviceId);
+    headers.add("X-Device-Name", "Test " + deviceId);
+    headers.add("X-Real-IP", "127.0.0.1");
+    return headers;
+  }
+
+  /**
+   * Connect a device to a node and collect every text message it receives.
+   */
+  public static WebSocketSession connect(ConfigurableApplicationContext node,
+                                         String deviceId,
+                                         Queue<String> received) throws Exception {
+    TextWebSocketHandler handler = new TextWebSocketHandler() {
+      @Override
+      protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        received.add(message.getPayload());
+      }
+    };
+    return new StandardWebSocketClient()
+        .execute(handler, deviceHeaders(deviceId), controlEndpoint(node))
+        .get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Connect a device over the binary sub-protocol and collect every frame it receives.
+   */
+  public static WebSocketSession connectBinary(ConfigurableApplicationContext node,
+                                               String deviceId,
+                                               Queue<ByteBuffer> received) throws Exception {
+    AbstractWebSocketHandler handler = new AbstractWebSocketHandler() {
+      @Override
+      protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        ByteBuffer payload = message.getPayload();
+        ByteBuffer copy = ByteBuffer.allocate(payload.remaining()).put(payload.duplicate()).flip();
+        received.add(copy);
+      }
+    };
+    WebSocketHttpHeaders headers = deviceHeaders(deviceId);
+    headers.setSecWebSocketProtocol(BinaryProtocol.SUBPROTOCOL);
+    return new StandardWebSocketClient()
+        .execute(handler, headers, controlEndpoint(node))
+        .get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Wait until a device's session is visible through the given node.
+   */
+  public static Session awaitSession(ConfigurableApplicationContext node, String deviceId) throws InterruptedException {
+    SessionService sessionService = node.getBean(SessionService.class);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline) {
+      Session session = sessionService.getSessionByDeviceId(deviceId);
+      if (session != null) {
+        return session;
+      }
+      Thread.sleep(50);
+    }
+    throw new AssertionError("Session for " + deviceId + " was not registered");
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (ConfigurableApplicationContext node : nodes) {
+      node.close();
+    }
+    redisServer.stop();
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.bravos.parentalcontrol.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExpiringLruCacheTests {
+  @Test
+  void evictsLeastRecentlyUsedAtCapacity() {
+    ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(2);
+    cache.put("a", 1, 1000);
+    cache.put("b", 2, 1000);
+    assertEquals(1, cache.get("a", 0));
+    cache.put("c", 3, 1000);
+
+    assertEquals(2, cache.size());
+    assertNull(cache.get("b", 0));
+    assertEquals(1, cache.get("a", 0));
+    assertEquals(3, cache.get("c", 0));
+  }
+
+  @Test
+  void expiredEntriesAreNotServed() {
+    ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(10);
+    cache.put("a", 1, 100);
+    assertEquals(1, cache.get("a", 99));
+    assertNull(cache.get("a", 100));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void zeroCapacityCachesNothing() {
+    ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(0);
+    cache.put("a", 1, 1000);
+    assertNull(cache.get("a", 0));
+  }
+}
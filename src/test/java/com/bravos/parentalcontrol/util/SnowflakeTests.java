@@ -0,0 +1,91 @@
+package com.bravos.parentalcontrol.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeTests {
+  @Test
+  void idsAreUniqueUnderContention() throws Exception {
+    Snowflake snowflake = new Snowflake(7);
+    List<Future<long[]>> futures = new ArrayList<>();
+    try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+      for (int t = 0; t < 8; t++) {
+        futures.add(executor.submit(() -> {
+          long[] ids = new long[20_000];
+          for (int i = 0; i < ids.length; i++) {
+            ids[i] = snowflake.next();
+          }
+          return ids;
+        }));
+      }
+    }
+    Set<Long> seen = new HashSet<>();
+    for (Future<long[]> future : futures) {
+      long previous = Long.MIN_VALUE;
+      for (long id : future.get()) {
+        assertTrue(id > previous);
+        assertTrue(seen.add(id));
+        assertEquals(7, snowflake.extractMachineId(id));
+        previous = id;
+      }
+    }
+  }
+
+  @Test
+  void batchReservesContiguousRange() {
+    AtomicLong clock = new AtomicLong(Snowflake.DEFAULT_EPOCH + 1000);
+    Snowflake snowflake = new Snowflake(3, Snowflake.DEFAULT_EPOCH, 10, clock::get);
+
+    long first = snowflake.nextBatch(100);
+    long next = snowflake.next();
+
+    assertEquals(first + 100, next);
+    assertEquals(clock.get(), snowflake.extractTimestamp(first));
+    assertEquals(3, snowflake.extractMachineId(first + 99));
+  }
+
+  @Test
+  void sequenceOverflowCarriesIntoTimestampWithinTolerance() {
+    AtomicLong clock = new AtomicLong(Snowflake.DEFAULT_EPOCH + 1000);
+    Snowflake snowflake = new Snowflake(0, Snowflake.DEFAULT_EPOCH, 10, clock::get);
+
+    snowflake.nextBatch(4096);
+    long carried = snowflake.next();
+
+    assertEquals(clock.get() + 1, snowflake.extractTimestamp(carried));
+  }
+
+  @Test
+  void smallClockRegressionIsAbsorbed() {
+    AtomicLong clock = new AtomicLong(Snowflake.DEFAULT_EPOCH + 1000);
+    Snowflake snowflake = new Snowflake(0, Snowflake.DEFAULT_EPOCH, 10, clock::get);
+    long before = snowflake.next();
+
+    clock.addAndGet(-5);
+
+    assertTrue(snowflake.next() > before);
+  }
+
+  @Test
+  void largeClockRegressionIsRefused() {
+    AtomicLong clock = new AtomicLong(Snowflake.DEFAULT_EPOCH + 1000);
+    Snowflake snowflake = new Snowflake(0, Snowflake.DEFAULT_EPOCH, 10, clock::get);
+    snowflake.next();
+
+    clock.addAndGet(-50);
+
+    assertThrows(IllegalStateException.class, snowflake::next);
+  }
+}
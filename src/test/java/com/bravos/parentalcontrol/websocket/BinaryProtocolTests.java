@@ -0,0 +1,90 @@
+package com.bravos.parentalcontrol.websocket;
+
+import com.bravos.parentalcontrol.service.AccessService;
+import com.bravos.parentalcontrol.support.TestCluster;
+import com.bravos.parentalcontrol.websocket.protocol.BinaryProtocol;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryProtocolTests {
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("binary");
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void binaryClientIsAnsweredWithFrames() throws Exception {
+    BlockingQueue<ByteBuffer> received = new LinkedBlockingQueue<>();
+    WebSocketSession client = TestCluster.connectBinary(node, "device-binary", received);
+    try {
+      assertEquals(BinaryProtocol.SUBPROTOCOL, client.getAcceptedProtocol());
+      TestCluster.awaitSession(node, "device-binary");
+
+      client.sendMessage(new BinaryMessage(new byte[]{BinaryProtocol.PING}));
+      assertEquals(BinaryProtocol.PONG, poll(received).get(0));
+
+      String code = node.getBean(AccessService.class).generateAccessCode("device-binary", 120);
+      client.sendMessage(new BinaryMessage(BinaryProtocol.frame(BinaryProtocol.PASSWORD, Integer.parseInt(code))));
+      ByteBuffer granted = poll(received);
+      assertEquals(5, granted.remaining());
+      assertEquals(BinaryProtocol.GRANTED, granted.get(0));
+      assertTrue(granted.getInt(1) > 100 && granted.getInt(1) <= 120);
+
+      client.sendMessage(new BinaryMessage(BinaryProtocol.frame(BinaryProtocol.PASSWORD, Integer.parseInt(code))));
+      assertEquals(BinaryProtocol.DENIED, poll(received).get(0));
+
+      node.getBean(AccessService.class).grantAccess("device-binary", 60);
+      ByteBuffer pushed = poll(received);
+      assertEquals(BinaryProtocol.GRANTED, pushed.get(0));
+      assertEquals(60, pushed.getInt(1));
+
+      client.sendMessage(new BinaryMessage(new byte[]{0x7F}));
+      assertEquals(BinaryProtocol.UNKNOWN_COMMAND, poll(received).get(0));
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  void textClientKeepsTextProtocol() throws Exception {
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocketSession client = TestCluster.connect(node, "device-text", received);
+    try {
+      TestCluster.awaitSession(node, "device-text");
+      client.sendMessage(new TextMessage("ping"));
+      assertEquals("pong", received.poll(5, TimeUnit.SECONDS));
+    } finally {
+      client.close();
+    }
+  }
+
+  private static ByteBuffer poll(BlockingQueue<ByteBuffer> received) throws InterruptedException {
+    ByteBuffer frame = received.poll(5, TimeUnit.SECONDS);
+    assertNotNull(frame, "No frame received");
+    return frame;
+  }
+}
@@ -0,0 +1,73 @@
+package com.bravos.parentalcontrol.websocket;
+
+import com.bravos.parentalcontrol.service.SessionService;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionDrainTests {
+  private static final int DEVICES = 3;
+
+  private static TestCluster cluster;
+
+  @BeforeAll
+  static void startCluster() throws IOException {
+    cluster = new TestCluster();
+  }
+
+  @AfterAll
+  static void stopCluster() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void drainHintsDevicesAndRemovesTheirSessions() throws Exception {
+    ConfigurableApplicationContext node = cluster.startNode("drain",
+        "DRAIN_BATCH_SIZE=2",
+        "DRAIN_BATCH_INTERVAL_MILLIS=50",
+        "DRAIN_RECONNECT_MAX_SECONDS=5");
+    List<BlockingQueue<String>> inboxes = new ArrayList<>();
+    List<WebSocketSession> clients = new ArrayList<>();
+    for (int i = 0; i < DEVICES; i++) {
+      BlockingQueue<String> received = new LinkedBlockingQueue<>();
+      inboxes.add(received);
+      clients.add(TestCluster.connect(node, "device-drain-" + i, received));
+      TestCluster.awaitSession(node, "device-drain-" + i);
+    }
+
+    node.getBean(ConnectionDrainer.class).drainAll();
+
+    for (int i = 0; i < DEVICES; i++) {
+      String hint = inboxes.get(i).poll(5, TimeUnit.SECONDS);
+      assertNotNull(hint);
+      assertTrue(hint.startsWith("RECONNECT:"), hint);
+      int seconds = Integer.parseInt(hint.substring("RECONNECT:".length()));
+      assertTrue(seconds >= 1 && seconds <= 5, hint);
+      assertNull(node.getBean(SessionService.class).getSessionByDeviceId("device-drain-" + i));
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline && clients.stream().anyMatch(WebSocketSession::isOpen)) {
+      Thread.sleep(50);
+    }
+    assertFalse(clients.stream().anyMatch(WebSocketSession::isOpen));
+    assertThrows(ExecutionException.class,
+        () -> TestCluster.connect(node, "device-late", new LinkedBlockingQueue<>()));
+  }
+}
@@ -0,0 +1,103 @@
+package com.bravos.parentalcontrol.websocket;
+
+import com.bravos.parentalcontrol.repository.SessionRepository;
+import com.bravos.parentalcontrol.support.TestCluster;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures handshake throughput when every device reconnects at once. Run with
+ * {@code ./gradlew benchmarkTest}; it is excluded from the regular test task.
+ */
+@Tag("benchmark")
+class HandshakeStormBenchmarkTests {
+  private static final int DEVICES = Integer.getInteger("storm.devices", 1000);
+  private static final int MAX_ATTEMPTS = 50;
+
+  private static TestCluster cluster;
+  private static ConfigurableApplicationContext node;
+  private static URI endpoint;
+
+  @BeforeAll
+  static void start() throws IOException {
+    cluster = new TestCluster();
+    node = cluster.startNode("storm");
+    endpoint = TestCluster.controlEndpoint(node);
+  }
+
+  @AfterAll
+  static void stop() throws IOException {
+    if (cluster != null) cluster.close();
+  }
+
+  @Test
+  void reconnectStorm() throws Exception {
+    List<WebSocketSession> first = storm("initial connect");
+    List<WebSocketSession> second = storm("reconnect storm");
+    SessionRepository sessionRepository = node.getBean(SessionRepository.class);
+    for (int i = 0; i < DEVICES; i += Math.max(1, DEVICES / 20)) {
+      assertEquals(1, sessionRepository.findByDeviceId("storm-" + i).size(), "stale session left for storm-" + i);
+    }
+    for (WebSocketSession session : first) {
+      if (session.isOpen()) session.close();
+    }
+    for (WebSocketSession session : second) {
+      if (session.isOpen()) session.close();
+    }
+  }
+
+  private List<WebSocketSession> storm(String label) throws Exception {
+    StandardWebSocketClient client = new StandardWebSocketClient();
+    AtomicInteger rejections = new AtomicInteger();
+    List<Future<WebSocketSession>> futures = new ArrayList<>(DEVICES);
+    long start = System.nanoTime();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < DEVICES; i++) {
+        String deviceId = "storm-" + i;
+        futures.add(executor.submit(() -> connect(client, deviceId, rejections)));
+      }
+    }
+    long elapsedNanos = System.nanoTime() - start;
+    List<WebSocketSession> sessions = new ArrayList<>(DEVICES);
+    for (Future<WebSocketSession> future : futures) {
+      sessions.add(future.get());
+    }
+    double seconds = elapsedNanos / 1e9;
+    System.out.printf("%s: %d devices in %.2f s (%.0f handshakes/s), %d retry-later responses%n",
+        label, DEVICES, seconds, DEVICES / seconds, rejections.get());
+    return sessions;
+  }
+
+  private static WebSocketSession connect(StandardWebSocketClient client,
+                                          String deviceId,
+                                          AtomicInteger rejections) throws Exception {
+    WebSocketHttpHeaders headers = TestCluster.deviceHeaders(deviceId);
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return client.execute(new TextWebSocketHandler(), headers, endpoint).get(10, TimeUnit.SECONDS);
+      } catch (ExecutionException e) {
+        if (attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+        rejections.incrementAndGet();
+        Thread.sleep(ThreadLocalRandom.current().nextLong(20, 100));
+      }
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.bravos.parentalcontrol.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundSessionTests {
+  private final Queue<Object> sent = new ConcurrentLinkedQueue<>();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final CountDownLatch writing = new CountDownLatch(1);
+  private final AtomicBoolean writerInterrupted = new AtomicBoolean();
+  private WebSocketSession delegate;
+  private OutboundSession.Metrics metrics;
+
+  @BeforeEach
+  void blockingSocket() throws IOException {
+    delegate = mock(WebSocketSession.class);
+    when(delegate.getId()).thenReturn("outbound");
+    when(delegate.isOpen()).thenReturn(true);
+    doAnswer(invocation -> {
+      WebSocketMessage<?> message = invocation.getArgument(0);
+      sent.add(message.getPayload());
+      writing.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        writerInterrupted.set(true);
+      }
+      return null;
+    }).when(delegate).sendMessage(any());
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    metrics = new OutboundSession.Metrics(new AtomicLong(), Timer.builder("send").register(registry),
+        Counter.builder("dropped").register(registry), Counter.builder("disconnected").register(registry));
+  }
+
+  @Test
+  void controlMessagesOvertakeQueuedPings() throws Exception {
+    OutboundSession session = session(16, 10_000, OutboundSession.SlowConsumerPolicy.DROP);
+    session.sendMessage(new TextMessage("first"));
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+    session.sendMessage(new PingMessage());
+    session.sendMessage(new TextMessage("pong"));
+    session.sendMessage(new TextMessage("BLOCK:30"));
+    assertEquals(3, session.getQueueDepth());
+
+    release.countDown();
+    verify(delegate, timeout(5000).times(4)).sendMessage(any());
+    List<Object> order = List.copyOf(sent);
+    assertEquals("first", order.get(0));
+    assertEquals("BLOCK:30", order.get(1));
+    assertEquals(0, session.getQueueDepth());
+    assertEquals(0, metrics.depth().get());
+  }
+
+  @Test
+  void dropPolicyShedsRoutineTrafficFirst() throws Exception {
+    OutboundSession session = session(2, 10_000, OutboundSession.SlowConsumerPolicy.DROP);
+    session.sendMessage(new TextMessage("first"));
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+    session.sendMessage(new PingMessage());
+    session.sendMessage(new PingMessage());
+    session.sendMessage(new PingMessage());
+    assertEquals(1, metrics.dropped().count());
+
+    session.sendMessage(new TextMessage("GRANTED:60"));
+    assertEquals(2, metrics.dropped().count());
+    assertEquals(2, session.getQueueDepth());
+    session.sendMessage(new TextMessage("GRANTED:120"));
+    session.sendMessage(new TextMessage("GRANTED:180"));
+    assertEquals(4, metrics.dropped().count());
+    assertEquals(2, session.getQueueDepth());
+    verify(delegate, never()).close(any());
+
+    release.countDown();
+    verify(delegate, timeout(5000).times(3)).sendMessage(any());
+    assertTrue(sent.containsAll(List.of("GRANTED:60", "GRANTED:120")));
+  }
+
+  @Test
+  void disconnectPolicyClosesAFullQueue() throws Exception {
+    OutboundSession session = session(1, 10_000, OutboundSession.SlowConsumerPolicy.DISCONNECT);
+    session.sendMessage(new TextMessage("first"));
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+    session.sendMessage(new TextMessage("queued"));
+
+    assertThrows(IllegalStateException.class, () -> session.sendMessage(new TextMessage("overflow")));
+    verify(delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+    assertEquals(1, metrics.disconnected().count());
+    assertEquals(0, session.getQueueDepth());
+    assertThrows(IllegalStateException.class, () -> session.sendMessage(new TextMessage("after")));
+    release.countDown();
+  }
+
+  @Test
+  void stalledWriteIsClosedAndInterrupted() throws Exception {
+    OutboundSession session = session(16, 50, OutboundSession.SlowConsumerPolicy.DROP);
+    assertFalse(session.closeIfStalled());
+    session.sendMessage(new TextMessage("stuck"));
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+    Thread.sleep(100);
+
+    assertTrue(session.closeIfStalled());
+    verify(delegate).close(CloseStatus.SESSION_NOT_RELIABLE);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline && !writerInterrupted.get()) {
+      Thread.sleep(10);
+    }
+    assertTrue(writerInterrupted.get(), "stuck writer was not interrupted");
+    assertFalse(session.closeIfStalled());
+  }
+
+  private OutboundSession session(int queueLimit, long sendTimeLimitMillis, OutboundSession.SlowConsumerPolicy policy) {
+    return new OutboundSession(delegate, queueLimit, sendTimeLimitMillis, policy, metrics);
+  }
+}
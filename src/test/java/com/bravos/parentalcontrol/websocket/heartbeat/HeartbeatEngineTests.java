@@ -0,0 +1,141 @@
+package com.bravos.parentalcontrol.websocket.heartbeat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HeartbeatEngineTests {
+  private HeartbeatEngine engine;
+
+  @BeforeEach
+  void startEngine() {
+    MockEnvironment environment = new MockEnvironment()
+        .withProperty("HEARTBEAT_TICK_MILLIS", "10")
+        .withProperty("HEARTBEAT_IDLE_SECONDS", "1")
+        .withProperty("HEARTBEAT_GRANTED_SECONDS", "2")
+        .withProperty("HEARTBEAT_BLOCKED_SECONDS", "0")
+        .withProperty("HEARTBEAT_JITTER_PERCENT", "20");
+    engine = new HeartbeatEngine(environment, new SimpleMeterRegistry());
+    engine.start();
+  }
+
+  @AfterEach
+  void stopEngine() {
+    engine.shutdown();
+  }
+
+  @Test
+  void trackedSessionIsPingedEveryInterval() throws IOException {
+    WebSocketSession session = session("ping-session");
+    engine.track(session, HeartbeatState.IDLE);
+
+    verify(session, timeout(3500).atLeast(3)).sendMessage(any(PingMessage.class));
+    assertEquals(1, engine.getTrackedSessions());
+  }
+
+  @Test
+  void untrackedSessionIsNeverPinged() throws IOException {
+    WebSocketSession session = session("cancelled-session");
+    engine.track(session, HeartbeatState.IDLE);
+    engine.untrack("cancelled-session");
+
+    verify(session, after(1500).never()).sendMessage(any(PingMessage.class));
+    assertEquals(0, engine.getTrackedSessions());
+  }
+
+  @Test
+  void stateWithoutIntervalStopsPings() throws Exception {
+    AtomicInteger pings = new AtomicInteger();
+    WebSocketSession session = session("blocked-session");
+    doAnswer(invocation -> pings.incrementAndGet()).when(session).sendMessage(any(PingMessage.class));
+    engine.track(session, HeartbeatState.IDLE);
+    verify(session, timeout(1500)).sendMessage(any(PingMessage.class));
+
+    engine.updateState("blocked-session", HeartbeatState.BLOCKED);
+    Thread.sleep(100);
+    int pingsWhenBlocked = pings.get();
+    Thread.sleep(1500);
+    assertEquals(pingsWhenBlocked, pings.get());
+    assertEquals(1, engine.getTrackedSessions());
+  }
+
+  @Test
+  void closedSessionIsUntracked() throws IOException {
+    WebSocketSession session = session("closed-session");
+    when(session.isOpen()).thenReturn(false);
+    engine.track(session, HeartbeatState.IDLE);
+
+    long deadline = System.currentTimeMillis() + 2000;
+    while (System.currentTimeMillis() < deadline && engine.getTrackedSessions() > 0) {
+      Thread.onSpinWait();
+    }
+    assertEquals(0, engine.getTrackedSessions());
+    verify(session, never()).sendMessage(any(PingMessage.class));
+  }
+
+  @Test
+  void sessionsConnectedTogetherDriftApart() throws IOException {
+    long start = System.nanoTime();
+    List<Queue<Long>> pingTimes = new ArrayList<>();
+    List<WebSocketSession> sessions = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      Queue<Long> times = new ConcurrentLinkedQueue<>();
+      WebSocketSession session = session("burst-" + i);
+      doAnswer(invocation -> times.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)))
+          .when(session).sendMessage(any(PingMessage.class));
+      pingTimes.add(times);
+      sessions.add(session);
+      engine.track(session, HeartbeatState.IDLE);
+    }
+    for (WebSocketSession session : sessions) {
+      verify(session, timeout(4000).atLeast(2)).sendMessage(any(PingMessage.class));
+    }
+
+    long[] buckets = new long[10];
+    long shortestGap = Long.MAX_VALUE;
+    long longestGap = 0;
+    for (Queue<Long> times : pingTimes) {
+      long first = times.poll();
+      long gap = times.poll() - first;
+      buckets[(int) Math.min(9, first / 100)]++;
+      shortestGap = Math.min(shortestGap, gap);
+      longestGap = Math.max(longestGap, gap);
+    }
+    // first pings are spread over one interval, later ones are jittered by up to 20%
+    for (int i = 0; i < buckets.length; i++) {
+      assertTrue(buckets[i] < 80, "burst of " + buckets[i] + " pings in bucket " + i);
+    }
+    assertTrue(longestGap - shortestGap > 100, "gaps from " + shortestGap + " to " + longestGap + " ms");
+    assertTrue(shortestGap >= 700 && longestGap <= 1400, "gaps from " + shortestGap + " to " + longestGap + " ms");
+  }
+
+  private static WebSocketSession session(String id) {
+    WebSocketSession session = mock(WebSocketSession.class);
+    when(session.getId()).thenReturn(id);
+    when(session.isOpen()).thenReturn(true);
+    return session;
+  }
+}